@@ -0,0 +1,75 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.resteasy.util.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the base64 decoding of file contents read from GitHub and the encoding
+ * of the contents saved by {@link GithubUrlConnection}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Base64Benchmark {
+
+  /**
+   * The Contents API response whose content is used.
+   */
+  @Param({"contents-1k.json", "contents-64k.json", "contents-1m.json"})
+  public String payload;
+
+  /**
+   * The base64 encoded content, with the line breaks sent by GitHub.
+   */
+  private String encoded;
+
+  /**
+   * The decoded content.
+   */
+  private byte[] decoded;
+
+  /**
+   * Loads the payload.
+   *
+   * @throws IOException If the fixture is missing.
+   */
+  @Setup
+  public void setup() throws IOException {
+    encoded = GithubUtil.parseGithubResult(new String(Fixtures.load(payload), "UTF-8")).content;
+    decoded = Base64.decode(encoded);
+  }
+
+  /**
+   * Decoding a file read from GitHub.
+   *
+   * @throws IOException Never.
+   */
+  @Benchmark
+  public byte[] decode() throws IOException {
+    return Base64.decode(encoded);
+  }
+
+  /**
+   * Encoding a file to be saved on GitHub.
+   */
+  @Benchmark
+  public String encode() {
+    return Base64.encodeBytes(decoded);
+  }
+}
@@ -0,0 +1,45 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Loads the recorded GitHub API responses used by the benchmarks.
+ */
+class Fixtures {
+
+  /**
+   * Private constructor.
+   */
+  private Fixtures() {
+  }
+
+  /**
+   * Loads a fixture. Fixtures larger than a few hundred KB are checked in gzipped,
+   * with a ".gz" suffix which must be omitted here.
+   *
+   * @param name The name of the fixture, like "contents-1k.json".
+   *
+   * @return The content of the fixture.
+   *
+   * @throws IOException If the fixture does not exist.
+   */
+  static byte[] load(String name) throws IOException {
+    InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+    if (in == null) {
+      InputStream gzipped = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".gz");
+      if (gzipped == null) {
+        throw new IOException("Missing fixture: " + name);
+      }
+      in = new GZIPInputStream(gzipped);
+    }
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.oxygenxml.examples.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parsing of Contents API responses by {@link GithubUtil}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GithubJsonBenchmark {
+
+  /**
+   * The Contents API response to parse.
+   */
+  @Param({"contents-1k.json", "contents-64k.json", "contents-1m.json"})
+  public String payload;
+
+  /**
+   * The response bytes.
+   */
+  private byte[] json;
+
+  /**
+   * The response as a String.
+   */
+  private String jsonString;
+
+  /**
+   * Loads the payload.
+   *
+   * @throws IOException If the fixture is missing.
+   */
+  @Setup
+  public void setup() throws IOException {
+    json = Fixtures.load(payload);
+    jsonString = new String(json, "UTF-8");
+  }
+
+  /**
+   * Parsing the response into an untyped map.
+   */
+  @Benchmark
+  public HashMap<String, Object> parseJSON() {
+    return GithubUtil.parseJSON(jsonString);
+  }
+
+  /**
+   * Parsing the response from a String into a typed result.
+   */
+  @Benchmark
+  public GithubApiResult parseGithubResultString() {
+    return GithubUtil.parseGithubResult(jsonString);
+  }
+
+  /**
+   * Parsing the response from a stream into a typed result.
+   *
+   * @throws IOException Never.
+   */
+  @Benchmark
+  public GithubApiResult parseGithubResultStream() throws IOException {
+    return GithubUtil.parseGithubResult(new ByteArrayInputStream(json));
+  }
+
+  /**
+   * Reading the response stream into a String, as the pre-save existence check used to do.
+   */
+  @Benchmark
+  public String inputStreamToString() {
+    return GithubUtil.inputStreamToString(new ByteArrayInputStream(json));
+  }
+}
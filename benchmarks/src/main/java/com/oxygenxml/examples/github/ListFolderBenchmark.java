@@ -0,0 +1,64 @@
+package com.oxygenxml.examples.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.sync.net.protocol.FolderEntryDescriptor;
+
+/**
+ * Measures the mapping of directory listings to folder entries done by
+ * {@link GithubUrlConnection#listFolder()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListFolderBenchmark {
+
+  /**
+   * The directory listing to map.
+   */
+  @Param({"listing-50.json", "listing-1000.json"})
+  public String payload;
+
+  /**
+   * The listing bytes.
+   */
+  private byte[] json;
+
+  /**
+   * Loads the payload.
+   *
+   * @throws IOException If the fixture is missing.
+   */
+  @Setup
+  public void setup() throws IOException {
+    json = Fixtures.load(payload);
+  }
+
+  /**
+   * Mapping the listing.
+   *
+   * @throws IOException Never.
+   */
+  @Benchmark
+  public List<FolderEntryDescriptor> parseFolderEntries() throws IOException {
+    return GithubUrlConnection.parseFolderEntries(new ByteArrayInputStream(json));
+  }
+}
@@ -0,0 +1,53 @@
+package com.oxygenxml.examples.github;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the assembly of the Contents API url done by
+ * {@link GithubUrlStreamHandler#openConnectionInContext}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlAssemblyBenchmark {
+
+  /**
+   * The path of the github url.
+   */
+  @Param({
+    "/oxygenxml/userguide/master/topic.dita",
+    "/oxygenxml/userguide/master/DITA/topics/installation/windows/install-windows-64bit.dita"})
+  public String urlPathPart;
+
+  /**
+   * Configures the OAuth application, so that its credentials are appended to the url.
+   */
+  @Setup
+  public void setup() {
+    GitHubOauthServlet.clientId = "0123456789abcdef0123";
+    GitHubOauthServlet.clientSecret = "0123456789abcdef0123456789abcdef01234567";
+  }
+
+  /**
+   * Building the url.
+   */
+  @Benchmark
+  public String getApiUrlString() {
+    return GithubUrlStreamHandler.getApiUrlString(urlPathPart);
+  }
+}
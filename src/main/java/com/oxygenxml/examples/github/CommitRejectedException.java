@@ -0,0 +1,24 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+
+/**
+ * Thrown when GitHub rejects a commit which would be rejected again if it was retried, for example because
+ * the file changed since it was read.
+ */
+public class CommitRejectedException extends IOException {
+
+  /**
+   * Serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor.
+   *
+   * @param message The reason of the rejection.
+   */
+  public CommitRejectedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,246 @@
+package com.oxygenxml.examples.github;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the access tokens in a folder, which can be shared by the nodes of a cluster.
+ *
+ * Every session has a file named after a SHA-256 hash of its id, so the session ids are not exposed.
+ * The last modification time of the file is the last time the session was used, and files of sessions 
+ * unused for longer than the idle time are deleted.
+ *
+ * Each node remembers the tokens it read for a few seconds, so a token revoked on another node 
+ * may still be used here for that long.
+ *
+ * Since the files hold the tokens of the users, the folder and the files can only be accessed by the 
+ * owner of the process.
+ */
+public class FileTokenStore implements TokenStore {
+
+  /**
+   * The number of seconds for which a token read from its file is remembered.
+   */
+  private static final long LOCAL_CACHE_SECONDS = 30;
+
+  /**
+   * The number of milliseconds after which the last usage time of a session is updated.
+   */
+  private static final long TOUCH_INTERVAL_MS = 60 * 1000;
+
+  /**
+   * The number of milliseconds between two deletions of the expired files.
+   */
+  private static final long SWEEP_INTERVAL_MS = 3600 * 1000;
+
+  /**
+   * The suffix of the files being written.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(FileTokenStore.class.getName());
+
+  /**
+   * The folder of the token files.
+   */
+  private final File folder;
+
+  /**
+   * The number of milliseconds after which the token of an unused session is discarded.
+   */
+  private final long idleMillis;
+
+  /**
+   * A map of <sessionId, access_token> read recently from the files.
+   */
+  private final Cache<String, String> localTokens = CacheBuilder.newBuilder()
+      .concurrencyLevel(16)
+      .maximumSize(100000)
+      .expireAfterWrite(LOCAL_CACHE_SECONDS, TimeUnit.SECONDS)
+      .build();
+
+  /**
+   * The last time when the expired files were deleted.
+   */
+  private final AtomicLong lastSweep = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param folder The folder of the token files. It is created if it does not exist.
+   * @param idleSeconds The number of seconds after which the token of an unused session is discarded.
+   *
+   * @throws IOException If the folder could not be created.
+   */
+  public FileTokenStore(File folder, long idleSeconds) throws IOException {
+    GithubUtil.createPrivateFolder(folder);
+    this.folder = folder;
+    this.idleMillis = TimeUnit.SECONDS.toMillis(idleSeconds);
+  }
+
+  public String getIfPresent(String sessionId) {
+    String accessToken = localTokens.getIfPresent(sessionId);
+    if (accessToken == null) {
+      accessToken = readToken(getFile(sessionId));
+      if (accessToken != null) {
+        localTokens.put(sessionId, accessToken);
+      }
+    }
+    return accessToken;
+  }
+
+  public void put(String sessionId, String accessToken) {
+    File file = getFile(sessionId);
+    // The credentials are sent on every page load, usually with the token which is already stored.
+    if (accessToken.equals(readToken(file))) {
+      localTokens.put(sessionId, accessToken);
+      sweepIfNeeded();
+      return;
+    }
+    // The token is written to a temporary file first, so that other nodes never read a partial token.
+    File tempFile = new File(folder, file.getName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+    try {
+      OutputStream out = GithubUtil.createPrivateFile(tempFile);
+      try {
+        out.write(accessToken.getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      // The previous token is replaced atomically, the other nodes never see the session without a token.
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      localTokens.put(sessionId, accessToken);
+    } catch (IOException e) {
+      tempFile.delete();
+      logger.error("Could not store the access token: " + e.getMessage());
+      // The token is kept on this node at least.
+      localTokens.put(sessionId, accessToken);
+    }
+    sweepIfNeeded();
+  }
+
+  public void invalidate(String sessionId) {
+    getFile(sessionId).delete();
+    localTokens.invalidate(sessionId);
+  }
+
+  public void invalidateAll() {
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (isTokenFile(file)) {
+          file.delete();
+        }
+      }
+    }
+    localTokens.invalidateAll();
+  }
+
+  /**
+   * Reads a token file, deleting it if the session was not used for too long.
+   *
+   * @param file The token file.
+   *
+   * @return The token or <code>null</code> if there is no valid token in the file.
+   */
+  private String readToken(File file) {
+    long now = System.currentTimeMillis();
+    long lastModified = file.lastModified();
+    if (lastModified == 0) {
+      // The file does not exist.
+      return null;
+    }
+    if (now - lastModified > idleMillis) {
+      file.delete();
+      return null;
+    }
+
+    String accessToken;
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        accessToken = IOUtils.toString(in, "UTF-8");
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // Deleted by another node in the meantime.
+      return null;
+    }
+
+    if (now - lastModified > TOUCH_INTERVAL_MS) {
+      // Record that the session is still used.
+      file.setLastModified(now);
+    }
+    return accessToken.isEmpty() ? null : accessToken;
+  }
+
+  /**
+   * Deletes the files of the expired sessions, if this was not done recently.
+   */
+  private void sweepIfNeeded() {
+    long now = System.currentTimeMillis();
+    long last = lastSweep.get();
+    if (now - last < SWEEP_INTERVAL_MS || !lastSweep.compareAndSet(last, now)) {
+      return;
+    }
+    File[] files = folder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if ((isTokenFile(file) || file.getName().endsWith(TEMP_SUFFIX)) && now - file.lastModified() > idleMillis) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param file A file from the folder of the store.
+   *
+   * @return <code>true</code> if the file holds a token.
+   */
+  private static boolean isTokenFile(File file) {
+    return file.getName().matches("[0-9a-f]{64}");
+  }
+
+  /**
+   * @param sessionId The id of the session.
+   *
+   * @return The file holding the token of the session.
+   */
+  private File getFile(String sessionId) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(sessionId.getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return new File(folder, hex.toString());
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 is available on all the platforms.
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is available on all the platforms.
+      throw new IllegalStateException(e);
+    }
+  }
+}
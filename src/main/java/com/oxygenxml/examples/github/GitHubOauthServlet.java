@@ -1,13 +1,20 @@
 package com.oxygenxml.examples.github;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -17,11 +24,11 @@ import javax.servlet.http.HttpSession;
 import org.apache.log4j.Logger;
 
 import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
-import ro.sync.exml.workspace.api.PluginWorkspaceProvider;
-import ro.sync.merge.MergeConflictResolutionMethods;
 import ro.sync.merge.MergeResult;
 import ro.sync.merge.MergeResult.ResultType;
 
+import com.oxygenxml.examples.github.GithubMergeCache.CachedMerge;
+
 /**
  * Servlet used to for the GitHub OAuth flow. 
  */
@@ -32,6 +39,11 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
    */
   private static final String MERGE_RESULT_HEADER = "OXY-Merge-Result";
 
+  /**
+   * The length of the shortest response which is gzipped, shorter responses are not worth compressing.
+   */
+  private static final int MIN_GZIP_RESPONSE_LENGTH = 1024;
+
   /**
    * Constant for the github oauth client id key
    */
@@ -92,6 +104,52 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
         clientSecret = properties.getProperty("client_secret", null);
         apiUrl = properties.getProperty("api_url", null);
         
+        GitHubPlugin.configureTokenStore(
+            properties.getProperty("token_store", "memory"),
+            properties.getProperty("token_store_dir", null),
+            GithubUtil.getLongProperty(properties, "token_store_max_sessions", InMemoryTokenStore.DEFAULT_MAX_SESSIONS),
+            GithubUtil.getLongProperty(properties, "token_store_idle_seconds", InMemoryTokenStore.DEFAULT_IDLE_SECONDS),
+            GithubUtil.getLongProperty(properties, "token_store_concurrency_level", InMemoryTokenStore.DEFAULT_CONCURRENCY_LEVEL));
+        GithubContentCache.configure(
+            GithubUtil.getLongProperty(properties, "content_cache_max_bytes", GithubContentCache.DEFAULT_MAX_BYTES),
+            GithubUtil.getLongProperty(properties, "content_cache_max_entry_bytes", GithubContentCache.DEFAULT_MAX_ENTRY_BYTES));
+        GithubTokenValidator.configure(
+            GithubUtil.getLongProperty(properties, "token_validity_ttl_seconds", GithubTokenValidator.DEFAULT_TTL_SECONDS),
+            GithubUtil.getLongProperty(properties, "token_validity_max_age_seconds", GithubTokenValidator.DEFAULT_MAX_AGE_SECONDS));
+        GithubHttpClient.configure(
+            GithubUtil.getLongProperty(properties, "http_connect_timeout_ms", GithubHttpClient.DEFAULT_CONNECT_TIMEOUT_MS),
+            GithubUtil.getLongProperty(properties, "http_read_timeout_ms", GithubHttpClient.DEFAULT_READ_TIMEOUT_MS));
+        GithubRateLimitGovernor.configure(
+            GithubUtil.getLongProperty(properties, "rate_limit_reserve_percent", GithubRateLimitGovernor.DEFAULT_RESERVE_PERCENT),
+            GithubUtil.getLongProperty(properties, "rate_limit_max_wait_ms", GithubRateLimitGovernor.DEFAULT_MAX_WAIT_MS));
+        GithubUrlConnection.configureSaves(
+            GithubUtil.getLongProperty(properties, "save_memory_threshold_bytes", GithubUrlConnection.DEFAULT_SAVE_MEMORY_THRESHOLD));
+        GithubCommitEngine.configure(
+            GithubUtil.getLongProperty(properties, "commit_threads", GithubCommitEngine.DEFAULT_THREADS));
+        String saveJournalDir = properties.getProperty("save_journal_dir", null);
+        GithubSaveJournal.configure(saveJournalDir != null ? new File(saveJournalDir) : null,
+            GithubUtil.getLongProperty(properties, "save_journal_flush_delay_ms", GithubSaveJournal.DEFAULT_FLUSH_DELAY_MS));
+        GithubDiskBlobStore.configure(
+            properties.getProperty("disk_blob_cache_dir", null),
+            GithubUtil.getLongProperty(properties, "disk_blob_cache_max_bytes", GithubDiskBlobStore.DEFAULT_MAX_BYTES));
+        GithubRefResolver.configure(
+            GithubUtil.getLongProperty(properties, "ref_cache_ttl_ms", GithubRefResolver.DEFAULT_TTL_MS));
+        GithubTreeIndex.configure(
+            GithubUtil.getLongProperty(properties, "tree_index_max_entries", GithubTreeIndex.DEFAULT_MAX_ENTRIES));
+        GithubMissingPaths.configure(
+            GithubUtil.getLongProperty(properties, "missing_path_ttl_seconds", GithubMissingPaths.DEFAULT_TTL_SECONDS));
+        GithubPrefetcher.configure(
+            GithubUtil.getLongProperty(properties, "prefetch_threads", GithubPrefetcher.DEFAULT_THREADS));
+        GithubGraphqlReader.configure(properties.getProperty("graphql_url", null));
+        GithubWebhookServlet.configure(properties.getProperty("webhook_secret", null));
+        GithubMergeExecutor.configure(
+            GithubUtil.getLongProperty(properties, "merge_threads", GithubMergeExecutor.getDefaultThreads()),
+            GithubUtil.getLongProperty(properties, "merge_memory_budget_mb", GithubMergeExecutor.getDefaultMemoryBudgetMb()),
+            GithubUtil.getLongProperty(properties, "merge_queue_timeout_ms", GithubMergeExecutor.DEFAULT_QUEUE_TIMEOUT_MS));
+        GithubMergeCache.configure(
+            GithubUtil.getLongProperty(properties, "merge_cache_max_chars", GithubMergeCache.DEFAULT_MAX_CHARS));
+        GithubBlobs.configure(
+            GithubUtil.getLongProperty(properties, "blob_cache_max_chars", GithubBlobs.DEFAULT_MAX_CHARS));
       } catch (IOException e) {
         logger.warn("Could not read the github-plugin.properties file. The user must set the client_id and client_secret from the admin page.");
       }
@@ -167,53 +225,169 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
   
   /**
    * Returns a string representing the "threewaymerge" result of three strings sent from the client.
+   * The ancestor and the right documents can be sent as references to GitHub blobs or files.
    * @param httpRequest The HTTP request object
    * @param httpResponse The HTTP response object
    * @throws IOException
    */
   private void handleGithubMergeCommit(HttpServletRequest httpRequest,
       HttpServletResponse httpResponse) throws IOException, ServletException {
-    // Getting the request body
-    String requestBodyString = GithubUtil.inputStreamToString(httpRequest.getInputStream());
-    HashMap<String, Object> requestBody = GithubUtil.parseJSON(requestBodyString);
+    // Parsing the request body as it is received, the documents are decoded only once.
+    HashMap<String, Object> requestBody;
+    try {
+      requestBody = GithubUtil.parseJSONObject(getRequestBody(httpRequest));
+    } catch (IOException e) {
+      // Not a JSON object, or a body which is not valid gzip.
+      httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
     
-    String ancestor = (String) requestBody.get("ancestor");
-    String left = (String) requestBody.get("left");
-    String right = (String) requestBody.get("right");
+    Object leftValue = requestBody.get("left");
+    String left = leftValue instanceof String ? (String) leftValue : null;
+    // The ancestor and the latest version are usually referenced, they are already on GitHub.
+    String ancestor;
+    String right;
+    try {
+      String accessToken = GitHubPlugin.accessTokens.getIfPresent(httpRequest.getSession().getId());
+      ancestor = readMergeInput(requestBody.get("ancestor"), accessToken);
+      right = readMergeInput(requestBody.get("right"), accessToken);
+    } catch (RateLimitExceededException e) {
+      httpResponse.setHeader("Retry-After", 
+          String.valueOf(Math.max(1, (e.getRetryAt() - System.currentTimeMillis()) / 1000)));
+      httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+      return;
+    } catch (IOException e) {
+      // The client will send the documents instead.
+      httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+      return;
+    }
     
     if (ancestor != null && !ancestor.isEmpty() &&
         left != null && !left.isEmpty() &&
         right != null && !right.isEmpty()) {
       
-      try {
-        MergeResult mergeResult = PluginWorkspaceProvider.getPluginWorkspace()
-            .getXMLUtilAccess()
-            .threeWayAutoMerge(ancestor, left, right, MergeConflictResolutionMethods.USE_LEFT);
-        
-        String mergedString = mergeResult.getMergedString();
-        
-        ResultType resultType = mergeResult.getResultType();
-        
-        if (resultType == ResultType.CLEAN) {
-          httpResponse.setHeader(MERGE_RESULT_HEADER, "CLEAN");
-        } else if (resultType == ResultType.WITH_CONFLICTS) {
-          httpResponse.setHeader(MERGE_RESULT_HEADER, "WITH_CONFLICTS");
-        } else if (resultType == ResultType.FAILED) {
-          httpResponse.setHeader(MERGE_RESULT_HEADER, "FAILED");
+      String mergeKey = GithubMergeCache.getKey(ancestor, left, right);
+      CachedMerge cachedMerge = GithubMergeCache.get(mergeKey);
+      String mergedString;
+      ResultType resultType;
+      if (cachedMerge != null) {
+        mergedString = cachedMerge.merged;
+        resultType = cachedMerge.resultType;
+      } else {
+        MergeResult mergeResult;
+        try {
+          mergeResult = GithubMergeExecutor.merge(ancestor, left, right);
+        } catch (MergeRejectedException e) {
+          if (e.getRetryAfterSeconds() != -1) {
+            httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+          } else {
+            httpResponse.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+          }
+          return;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ServletException("Interrupted while waiting for the auto-merge.");
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof OutOfMemoryError) {
+            throw new ServletException("Out of memory, cannot auto-merge!");
+          }
+          throw new ServletException("Cannot auto-merge!", e.getCause());
         }
-        
-        httpResponse.setCharacterEncoding("UTF-8");
-        httpResponse.setStatus(HttpServletResponse.SC_OK);
-        httpResponse.getWriter().write(mergedString);
-        httpResponse.flushBuffer();
-      } catch (OutOfMemoryError e) {
-        throw new ServletException("Out of memory, cannot auto-merge!");
+
+        mergedString = mergeResult.getMergedString();
+        resultType = mergeResult.getResultType();
+        GithubMergeCache.put(mergeKey, mergedString, resultType);
+      }
+
+      if (resultType == ResultType.CLEAN) {
+        httpResponse.setHeader(MERGE_RESULT_HEADER, "CLEAN");
+      } else if (resultType == ResultType.WITH_CONFLICTS) {
+        httpResponse.setHeader(MERGE_RESULT_HEADER, "WITH_CONFLICTS");
+      } else if (resultType == ResultType.FAILED) {
+        httpResponse.setHeader(MERGE_RESULT_HEADER, "FAILED");
       }
+
+      httpResponse.setCharacterEncoding("UTF-8");
+      httpResponse.setStatus(HttpServletResponse.SC_OK);
+      // The merged document is encoded and compressed as it is written.
+      Writer responseWriter = new OutputStreamWriter(getResponseBody(httpRequest, httpResponse, mergedString.length()), "UTF-8");
+      responseWriter.write(mergedString);
+      responseWriter.close();
     } else {
       httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
     }
   }
 
+  /**
+   * Opens the body of a request, decompressing it if it was sent gzipped.
+   * 
+   * @param httpRequest The HTTP request object
+   * @return The request body
+   * @throws IOException If the body could not be read, or if it is not valid gzip.
+   */
+  private static InputStream getRequestBody(HttpServletRequest httpRequest) throws IOException {
+    InputStream requestBody = httpRequest.getInputStream();
+    if ("gzip".equalsIgnoreCase(httpRequest.getHeader("Content-Encoding"))) {
+      requestBody = new GZIPInputStream(requestBody);
+    }
+    return requestBody;
+  }
+  
+  /**
+   * Opens the body of a response, compressing it if the client accepts gzipped responses 
+   * and the response is large enough to be worth it.
+   * 
+   * @param httpRequest The HTTP request object
+   * @param httpResponse The HTTP response object
+   * @param length The approximate length of the response.
+   * @return The response body
+   * @throws IOException If the body could not be opened.
+   */
+  private static OutputStream getResponseBody(HttpServletRequest httpRequest, HttpServletResponse httpResponse, 
+      long length) throws IOException {
+    httpResponse.setHeader("Vary", "Accept-Encoding");
+    String acceptEncoding = httpRequest.getHeader("Accept-Encoding");
+    if (length >= MIN_GZIP_RESPONSE_LENGTH && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+      httpResponse.setHeader("Content-Encoding", "gzip");
+      return new GZIPOutputStream(httpResponse.getOutputStream(), 8192);
+    }
+    return httpResponse.getOutputStream();
+  }
+
+  /**
+   * Reads one of the documents to be merged. The document is either sent by the client or
+   * referenced as <code>{owner, repo, sha}</code> or <code>{owner, repo, ref, path}</code>.
+   * 
+   * @param input The document or its reference, as sent by the client.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   * 
+   * @return The document or <code>null</code> if the input is not valid.
+   * 
+   * @throws IOException If the referenced document could not be read.
+   */
+  private static String readMergeInput(Object input, String accessToken) throws IOException {
+    if (input instanceof String) {
+      return (String) input;
+    } else if (input instanceof Map) {
+      Map<?, ?> reference = (Map<?, ?>) input;
+      Object owner = reference.get("owner");
+      Object repo = reference.get("repo");
+      Object sha = reference.get("sha");
+      Object ref = reference.get("ref");
+      Object path = reference.get("path");
+      if (!(owner instanceof String) || !(repo instanceof String)) {
+        return null;
+      }
+      if (sha instanceof String) {
+        return GithubBlobs.readBlob((String) owner, (String) repo, (String) sha, accessToken);
+      } else if (ref instanceof String && path instanceof String) {
+        return GithubBlobs.readFile((String) owner, (String) repo, (String) ref, (String) path, accessToken);
+      }
+    }
+    return null;
+  }
+
   /**
    * Clears the access token from the session
    * (This method will be called when a 401 code is returned after calling a github action in the client)
@@ -224,6 +398,8 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
    */
   private void handleGithubClearAccessRequest(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
     HttpSession session = httpRequest.getSession();
+    // GitHub rejected the token, so it must be checked again if the client sends it back.
+    GithubTokenValidator.invalidate((String) session.getAttribute(ACCESS_TOKEN));
     session.removeAttribute(ACCESS_TOKEN);
     
     httpResponse.sendError(HttpServletResponse.SC_OK);
@@ -241,8 +417,17 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
     HttpSession session = httpRequest.getSession();
     
     // Getting the request body
-    String requestBodyString = GithubUtil.inputStreamToString(httpRequest.getInputStream());
-    HashMap<String, Object> requestBody = GithubUtil.parseJSON(requestBodyString);
+    HashMap<String, Object> requestBody;
+    try {
+      requestBody = GithubUtil.parseJSON(getRequestBody(httpRequest));
+    } catch (IOException e) {
+      // A body which is not valid gzip.
+      requestBody = null;
+    }
+    if (requestBody == null) {
+      httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
 
     // Synchronize oauth credentials with the client
     String clientId = (String) requestBody.get(CLIENT_ID);
@@ -316,14 +501,25 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
    * 
    * #param session The HTTP session 
    * @param httpResponse The HTTP response object
-   * @return True if the access_token is available and has been sent, false otherwise
+   * @return True if the access_token is available and has been sent, or if it could not be checked and an 
+   * error has been sent, false otherwise
    * @throws IOException
    */
   private boolean sendAccessTokenIfAvailable(HttpSession session, HttpServletResponse httpResponse) throws IOException {
     String accessToken = (String) session.getAttribute(ACCESS_TOKEN);
     String state = (String) session.getAttribute(STATE);
 
-    if (accessToken != null && tokenIsStillValid(accessToken)) {
+    boolean valid;
+    try {
+      valid = accessToken != null && GithubTokenValidator.isValid(accessToken);
+    } catch (RateLimitExceededException e) {
+      // The token could not be checked, the client should ask again later instead of logging in again.
+      httpResponse.setHeader("Retry-After", 
+          String.valueOf(Math.max(1, (e.getRetryAt() - System.currentTimeMillis()) / 1000)));
+      httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+      return true;
+    }
+    if (valid) {
       GitHubPlugin.accessTokens.put(session.getId(), accessToken);
         
       httpResponse.getWriter().write(
@@ -340,33 +536,6 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
     }
   }
   
-  /**
-   * Tests whether an access token is still valid.
-   * 
-   * @param accessToken The access token to test for validity
-   * @return True if the access token is still valid. (If the user did not revoke access for our application)
-   */
-  private boolean tokenIsStillValid(String accessToken) {
-    boolean tokenIsStillValid = true;
-    try {
-      // Send the client_id and client_secret as well because we want to use the 5000 requests quota not the free one
-      URL fullApiUrl = new URL(
-          (apiUrl != null ? apiUrl + "/api/v3" : "https://api.github.com") + 
-          "/user?client_id=" + clientId + "&client_secret=" + clientSecret);
-      HttpURLConnection apiConnection = (HttpURLConnection) fullApiUrl.openConnection();
-      apiConnection.setRequestProperty("Authorization", "token " + accessToken);
-      int responseCode = apiConnection.getResponseCode();
-      
-      if (responseCode != 200) {
-        tokenIsStillValid =  false;
-      } 
-    } catch (IOException e) {
-      tokenIsStillValid = false;
-    }
-    
-    return tokenIsStillValid;
-  }
-
   /**
    * Returns the Github client_id to the client.
    * 
@@ -540,7 +709,7 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
   private String getAccessTokenFromGithub(String code) throws IOException {
     URL githubAccessTokenUrl = new URL(
         (apiUrl != null ? apiUrl : "https://github.com") + "/login/oauth/access_token");
-    HttpURLConnection conn = (HttpURLConnection) githubAccessTokenUrl.openConnection();
+    HttpURLConnection conn = GithubHttpClient.open(githubAccessTokenUrl);
     
     logger.debug("Opened git access token conn");
 
@@ -558,8 +727,7 @@ public class GitHubOauthServlet extends WebappServletPluginExtension{
     
     writer.close();
     
-    String githubResponseBody = GithubUtil.inputStreamToString(conn.getInputStream());
-    HashMap<String, Object> tokenInfo = GithubUtil.parseJSON(githubResponseBody);
-    return (String) tokenInfo.get("access_token");
+    GithubAccessTokenResult tokenInfo = GithubUtil.parseAccessTokenResult(GithubHttpClient.getInputStream(conn));
+    return tokenInfo.accessToken;
   }
 }
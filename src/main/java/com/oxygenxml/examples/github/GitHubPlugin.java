@@ -1,9 +1,9 @@
 package com.oxygenxml.examples.github;
 
 import java.io.File;
+import java.io.IOException;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import org.apache.log4j.Logger;
 
 import ro.sync.exml.plugin.Plugin;
 import ro.sync.exml.plugin.PluginDescriptor;
@@ -13,13 +13,14 @@ import ro.sync.exml.plugin.PluginDescriptor;
  */
 public class GitHubPlugin extends Plugin {
   /**
-   * A map of <sessionId, access_token>
-   * Used to hold the access_token for each session.
+   * Holds the access_token for each session.
    **/
-  public static final Cache<String, String> accessTokens = CacheBuilder.newBuilder()
-      .concurrencyLevel(10)
-      .maximumSize(10000)
-      .build();
+  public static volatile TokenStore accessTokens = new InMemoryTokenStore();
+  
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GitHubPlugin.class.getName());
   
   /**
    * The base directory of the plugin.
@@ -36,6 +37,37 @@ public class GitHubPlugin extends Plugin {
     baseDir = descriptor.getBaseDir();
   }
   
+  /**
+   * Chooses where the access tokens are stored. The tokens stored until now are discarded, 
+   * so the users will have to login again.
+   * 
+   * @param type "memory", "file" or the name of a class implementing {@link TokenStore}.
+   * @param folder The folder of the "file" store.
+   * @param maxSessions The maximum number of sessions for which the "memory" store keeps a token.
+   * @param idleSeconds The number of seconds after which the token of an unused session is discarded.
+   * @param concurrencyLevel The number of threads expected to update the "memory" store at the same time.
+   */
+  static void configureTokenStore(String type, String folder, long maxSessions, long idleSeconds, 
+      long concurrencyLevel) {
+    TokenStore tokenStore;
+    try {
+      if (type == null || "memory".equals(type)) {
+        tokenStore = new InMemoryTokenStore(maxSessions, idleSeconds, concurrencyLevel);
+      } else if ("file".equals(type)) {
+        if (folder == null) {
+          throw new IOException("The token_store_dir property is required by the file token store.");
+        }
+        tokenStore = new FileTokenStore(new File(folder), idleSeconds);
+      } else {
+        tokenStore = (TokenStore) Class.forName(type).newInstance();
+      }
+    } catch (Exception e) {
+      logger.error("Could not create the " + type + " token store, using the memory one: " + e.getMessage());
+      tokenStore = new InMemoryTokenStore(maxSessions, idleSeconds, concurrencyLevel);
+    }
+    accessTokens = tokenStore;
+  }
+  
   /**
    * @return The base directory of the plugin.
    */
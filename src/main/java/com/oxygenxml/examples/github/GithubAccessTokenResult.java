@@ -0,0 +1,19 @@
+package com.oxygenxml.examples.github;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Class used when parsing the response of the github OAuth access token request.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GithubAccessTokenResult {
+  @JsonProperty("access_token")
+  public String accessToken;
+  
+  @JsonProperty("scope")
+  public String scope;
+  
+  @JsonProperty("token_type")
+  public String tokenType;
+}
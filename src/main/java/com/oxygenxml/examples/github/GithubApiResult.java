@@ -18,6 +18,21 @@ public class GithubApiResult {
   @JsonProperty("name")
   public String name;
   
+  @JsonProperty("path")
+  public String path;
+  
   @JsonProperty("type")
   public String type;
-}
\ No newline at end of file
+  
+  @JsonProperty("sha")
+  public String sha;
+  
+  @JsonProperty("size")
+  public long size;
+  
+  @JsonProperty("encoding")
+  public String encoding;
+  
+  @JsonProperty("download_url")
+  public String downloadUrl;
+}
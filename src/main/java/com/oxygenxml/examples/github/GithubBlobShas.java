@@ -0,0 +1,82 @@
+package com.oxygenxml.examples.github;
+
+import java.util.Iterator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers the git blob sha of the files read from GitHub, shared between all the sessions.
+ *
+ * The sha is required by GitHub to update a file. Knowing it from the last read saves a request
+ * before each save. If the file changed on GitHub in the meantime, the update is rejected and 
+ * the current sha must be requested.
+ */
+public class GithubBlobShas {
+
+  /**
+   * A map of <owner/repo/ref/path, blob sha>.
+   */
+  private static final Cache<String, String> shas = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(100000)
+      .build();
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubBlobShas() {
+  }
+
+  /**
+   * @param key The owner/repo/ref/path of the file.
+   *
+   * @return The blob sha of the file when it was last read or saved, 
+   * <code>null</code> if it is not known.
+   */
+  static String get(String key) {
+    return shas.getIfPresent(key);
+  }
+
+  /**
+   * Remembers the blob sha of a file.
+   *
+   * @param key The owner/repo/ref/path of the file.
+   * @param sha The blob sha.
+   */
+  static void put(String key, String sha) {
+    if (sha != null) {
+      shas.put(key, sha);
+    }
+  }
+
+  /**
+   * Forgets the blob sha of a file.
+   *
+   * @param key The owner/repo/ref/path of the file.
+   */
+  static void invalidate(String key) {
+    shas.invalidate(key);
+  }
+
+  /**
+   * Forgets the blob shas of the files of a folder.
+   *
+   * @param folderKey The owner/repo/ref/path/ of the folder, ending with a slash.
+   */
+  static void invalidateFolder(String folderKey) {
+    Iterator<String> keys = shas.asMap().keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(folderKey)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Forgets all the blob shas.
+   */
+  static void invalidateAll() {
+    shas.invalidateAll();
+  }
+}
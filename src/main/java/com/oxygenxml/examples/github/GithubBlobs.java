@@ -0,0 +1,234 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Reads the documents referenced by the clients, instead of having them upload the documents.
+ *
+ * A document is referenced either by the sha of its git blob or by a ref and a path.
+ * Blobs never change, so they are cached by their sha. Since a blob may only be read by a user
+ * which has access to its repository, the blobs of private repositories are cached for every access token.
+ * Documents referenced by a ref and a path are read like the files opened in the editor.
+ */
+public class GithubBlobs {
+
+  /**
+   * The default maximum number of characters held by the cache.
+   */
+  static final long DEFAULT_MAX_CHARS = 32 * 1024 * 1024;
+
+  /**
+   * The media type used to receive the raw content of a blob.
+   */
+  private static final String RAW_MEDIA_TYPE = "application/vnd.github.v3.raw";
+
+  /**
+   * The characters allowed in the name of an owner or a repository.
+   */
+  private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+  /**
+   * The pattern of a git blob sha.
+   */
+  private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-f]{40}");
+
+  /**
+   * A map of <owner/repo/sha, content>. The keys of private repositories end with the access token.
+   */
+  private static volatile Cache<String, String> blobs = buildCache(DEFAULT_MAX_CHARS);
+
+  /**
+   * The blob reads in progress.
+   */
+  private static final SingleFlight<String, String> inFlightReads = new SingleFlight<String, String>();
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubBlobs() {
+  }
+
+  /**
+   * Sets the size limit of the cache. The cached blobs are discarded.
+   *
+   * @param maxChars The maximum number of characters held by the cache.
+   */
+  static void configure(long maxChars) {
+    blobs = buildCache(maxChars);
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param maxChars The maximum number of characters held by the cache.
+   *
+   * @return The cache.
+   */
+  private static Cache<String, String> buildCache(long maxChars) {
+    return CacheBuilder.newBuilder()
+        // A single segment can hold a blob as large as the limit, the share of one of several segments cannot.
+        .concurrencyLevel(1)
+        .maximumWeight(maxChars)
+        .weigher(new Weigher<String, String>() {
+          public int weigh(String key, String value) {
+            return key.length() + value.length();
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Reads a blob.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param sha The sha of the blob.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The content of the blob, decoded as UTF-8.
+   *
+   * @throws IOException If the blob could not be read.
+   */
+  static String readBlob(final String owner, final String repo, final String sha, final String accessToken)
+      throws IOException {
+    checkName(owner);
+    checkName(repo);
+    if (!SHA_PATTERN.matcher(sha).matches()) {
+      throw new IOException("Invalid blob sha: " + sha);
+    }
+
+    String key = owner + "/" + repo + "/" + sha;
+    if (accessToken != null && !GithubRepositories.isPublic(owner, repo, accessToken)) {
+      key += "\n" + accessToken;
+    }
+    final Cache<String, String> cache = blobs;
+    String content = cache.getIfPresent(key);
+    if (content == null) {
+      final String cacheKey = key;
+      content = inFlightReads.execute(key, new Callable<String>() {
+        public String call() throws IOException {
+          String content = fetchBlob(owner, repo, sha, accessToken);
+          cache.put(cacheKey, content);
+          return content;
+        }
+      });
+    }
+    return content;
+  }
+
+  /**
+   * Reads a file from a ref of a repository.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param ref The branch, tag or commit sha.
+   * @param path The path of the file in the repository.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The content of the file, decoded as UTF-8.
+   *
+   * @throws IOException If the file could not be read.
+   */
+  static String readFile(String owner, String repo, String ref, String path, String accessToken)
+      throws IOException {
+    checkName(owner);
+    checkName(repo);
+    StringBuilder urlPathPart = new StringBuilder();
+    urlPathPart.append('/').append(owner).append('/').append(repo).append('/').append(encode(ref));
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) {
+        continue;
+      }
+      if (segment.equals("..")) {
+        throw new IOException("Invalid path: " + path);
+      }
+      urlPathPart.append('/').append(encode(segment));
+    }
+
+    String urlPath = urlPathPart.toString();
+    URL apiUrl = new URL(GithubUrlStreamHandler.getApiUrlString(urlPath));
+    GithubUrlConnection connection = new GithubUrlConnection(
+        GithubHttpClient.open(apiUrl, accessToken), accessToken, urlPath);
+    // The problems with the saves of the user are left for the editor to report.
+    InputStream content = connection.openContent();
+    try {
+      return IOUtils.toString(content, "UTF-8");
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Requests a blob from GitHub.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param sha The sha of the blob.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The content of the blob, decoded as UTF-8.
+   *
+   * @throws IOException If the blob could not be read.
+   */
+  private static String fetchBlob(String owner, String repo, String sha, String accessToken) throws IOException {
+    HttpURLConnection connection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + 
+        "/repos/" + owner + "/" + repo + "/git/blobs/" + sha + GithubUtil.getClientCredentialsQuery("?")), 
+        accessToken);
+    connection.setRequestProperty("Accept", RAW_MEDIA_TYPE);
+    if (GithubHttpClient.getResponseCode(connection) != HttpURLConnection.HTTP_OK) {
+      GithubHttpClient.release(connection);
+      throw new IOException("404 Not Found for blob: " + owner + "/" + repo + "/" + sha);
+    }
+    InputStream content = GithubHttpClient.getInputStream(connection);
+    try {
+      return IOUtils.toString(content, "UTF-8");
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Checks that the name of an owner or a repository cannot change the url in which it is used.
+   *
+   * @param name The name.
+   *
+   * @throws IOException If the name is not valid.
+   */
+  private static void checkName(String name) throws IOException {
+    if (!NAME_PATTERN.matcher(name).matches() || name.equals(".") || name.equals("..")) {
+      throw new IOException("Invalid repository name: " + name);
+    }
+  }
+
+  /**
+   * URL-encodes a path segment.
+   *
+   * @param segment The path segment.
+   *
+   * @return The encoded segment.
+   *
+   * @throws IOException Never, UTF-8 is always supported.
+   */
+  private static String encode(String segment) throws IOException {
+    return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+  }
+
+  /**
+   * Forgets all the blobs.
+   */
+  static void invalidateAll() {
+    blobs.invalidateAll();
+  }
+}
@@ -0,0 +1,681 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.JsonNode;
+import org.jboss.resteasy.util.Base64;
+
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.oxygenxml.examples.github.GithubTreeIndex.Node;
+
+import ro.sync.util.URLUtil;
+
+/**
+ * Commits the saved files to GitHub, several files at a time.
+ *
+ * The saves of a user on a branch are committed one after the other. The files saved while a commit
+ * is in progress are collected and committed together when it ends, with the Git Data API: the blobs
+ * are created in parallel, a single tree is created on top of the tree of the head commit, and the
+ * branch is moved once. A file saved alone is committed with a single Contents API request.
+ *
+ * Each commit is made by the thread of one of the saves it contains. When it ends, that thread returns
+ * and the files saved in the meantime are committed by the thread of one of their saves.
+ */
+public class GithubCommitEngine {
+
+  /**
+   * The default number of blobs created at the same time.
+   */
+  static final long DEFAULT_THREADS = 4;
+
+  /**
+   * The number of times the commit is re-created on top of the new head of the branch,
+   * when the branch moved while it was created.
+   */
+  private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+  /**
+   * The status of a rejected reference update, when the branch moved.
+   */
+  private static final int HTTP_UNPROCESSABLE_ENTITY = 422;
+
+  /**
+   * The status of a request rejected because too many requests were made.
+   */
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * The mode of a regular file in a git tree.
+   */
+  private static final String REGULAR_FILE_MODE = "100644";
+
+  /**
+   * A file which should be committed.
+   */
+  abstract static class FileChange {
+    /**
+     * The path of the file url: /$owner/$repo/$branch/$path
+     */
+    final String urlPathPart;
+
+    /**
+     * The blob sha of the file the change was made on, <code>null</code> if not known. When it is known,
+     * the file is not committed if it changed since, otherwise the last known content is overwritten.
+     */
+    final String baseSha;
+
+    /**
+     * Constructor.
+     *
+     * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+     * @param baseSha The blob sha of the file the change was made on, <code>null</code> if not known.
+     */
+    FileChange(String urlPathPart, String baseSha) {
+      this.urlPathPart = urlPathPart;
+      this.baseSha = baseSha;
+    }
+
+    /**
+     * @return The new content of the file.
+     *
+     * @throws IOException If the content could not be read.
+     */
+    abstract InputStream openContent() throws IOException;
+  }
+
+  /**
+   * The saves waiting to be committed on a branch by a user.
+   */
+  private static class BranchQueue {
+    /**
+     * The files waiting to be committed, with the results of their saves. A result is <code>false</code>
+     * when the file was committed by another save and <code>true</code> when the save should commit
+     * the files waiting.
+     */
+    Map<FileChange, SettableFuture<Boolean>> pending = new LinkedHashMap<FileChange, SettableFuture<Boolean>>();
+
+    /**
+     * <code>true</code> while a save commits files.
+     */
+    boolean committing;
+  }
+
+  /**
+   * The queues of the branches on which commits are in progress, by branch and access token.
+   */
+  private static final Map<String, BranchQueue> queues = new HashMap<String, BranchQueue>();
+
+  /**
+   * The threads which create the blobs.
+   */
+  private static volatile ExecutorService blobThreads;
+
+  static {
+    configure(DEFAULT_THREADS);
+  }
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubCommitEngine() {
+  }
+
+  /**
+   * Sets the number of blobs created at the same time.
+   *
+   * @param threads The number of blobs created at the same time.
+   */
+  static synchronized void configure(long threads) {
+    ExecutorService oldThreads = blobThreads;
+    blobThreads = Executors.newFixedThreadPool((int) Math.max(1, threads),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("github-commit-%d").build());
+    if (oldThreads != null) {
+      oldThreads.shutdown();
+    }
+  }
+
+  /**
+   * Commits a file to its branch, possibly together with other files saved at the same time.
+   * Returns when the file is committed.
+   *
+   * @param change The file.
+   * @param accessToken The access token of the user.
+   *
+   * @throws IOException If the file could not be committed.
+   */
+  static void save(FileChange change, String accessToken) throws IOException {
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] urlComponents = change.urlPathPart.split("/");
+    String queueKey = urlComponents[1] + "/" + urlComponents[2] + "/" + urlComponents[3] + "\n" + accessToken;
+
+    SettableFuture<Boolean> result = SettableFuture.create();
+    BranchQueue queue;
+    boolean committer;
+    synchronized (queues) {
+      queue = queues.get(queueKey);
+      if (queue == null) {
+        queue = new BranchQueue();
+        queues.put(queueKey, queue);
+      }
+      queue.pending.put(change, result);
+      committer = !queue.committing;
+      queue.committing = true;
+    }
+
+    if (!committer) {
+      // Wait until the file is committed by another save, or until this save should commit it.
+      try {
+        // Another save may hand over the next commit at any time, so the wait cannot be interrupted.
+        committer = Uninterruptibles.getUninterruptibly(result);
+      } catch (ExecutionException e) {
+        throw toIOException(e.getCause());
+      }
+      if (!committer) {
+        return;
+      }
+    }
+
+    Map<FileChange, SettableFuture<Boolean>> batch;
+    synchronized (queues) {
+      batch = queue.pending;
+      queue.pending = new LinkedHashMap<FileChange, SettableFuture<Boolean>>();
+    }
+    Throwable failure = null;
+    try {
+      failure = commitBatch(batch, accessToken);
+    } finally {
+      synchronized (queues) {
+        if (queue.pending.isEmpty()) {
+          queue.committing = false;
+          queues.remove(queueKey);
+        } else {
+          // The files saved in the meantime are committed by one of their saves.
+          queue.pending.values().iterator().next().set(Boolean.TRUE);
+        }
+      }
+    }
+    if (failure != null) {
+      throw toIOException(failure);
+    }
+  }
+
+  /**
+   * @param failure The reason why a file could not be committed.
+   *
+   * @return The exception to throw to the save, unless it is unchecked.
+   */
+  private static IOException toIOException(Throwable failure) {
+    if (failure instanceof IOException) {
+      return (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else {
+      return new IOException(failure);
+    }
+  }
+
+  /**
+   * Commits files collected while the previous commit was in progress, and reports the result to their saves.
+   *
+   * @param batch The files, with the results of their saves.
+   * @param accessToken The access token of the user.
+   *
+   * @return The reason why the files could not be committed, <code>null</code> if they were committed.
+   */
+  private static Throwable commitBatch(Map<FileChange, SettableFuture<Boolean>> batch, String accessToken) {
+    // When a file was saved several times, only its last content is committed.
+    Map<String, FileChange> changes = new LinkedHashMap<String, FileChange>();
+    for (FileChange change : batch.keySet()) {
+      changes.remove(change.urlPathPart);
+      changes.put(change.urlPathPart, change);
+    }
+    Throwable failure = null;
+    try {
+      commit(new ArrayList<FileChange>(changes.values()), accessToken);
+    } catch (Throwable e) {
+      failure = e;
+    }
+    // The result of the save which was handed over the commit is already set, it does not change.
+    for (SettableFuture<Boolean> result : batch.values()) {
+      if (failure == null) {
+        result.set(Boolean.FALSE);
+      } else {
+        result.setException(failure);
+      }
+    }
+    return failure;
+  }
+
+  /**
+   * Commits files of a branch with a single commit.
+   *
+   * @param changes The files, all of the same branch.
+   * @param accessToken The access token of the user.
+   *
+   * @throws IOException If the files could not be committed.
+   */
+  static void commit(List<FileChange> changes, String accessToken) throws IOException {
+    if (changes.size() == 1) {
+      // A single request is enough to commit a file alone.
+      GithubUrlConnection.commitFile(changes.get(0), accessToken);
+    } else {
+      commitTree(changes, accessToken);
+    }
+  }
+
+  /**
+   * Commits several files of a branch with the Git Data API.
+   *
+   * @param changes The files, all of the same branch.
+   * @param accessToken The access token of the user.
+   *
+   * @throws IOException If the files could not be committed.
+   */
+  private static void commitTree(List<FileChange> changes, String accessToken) throws IOException {
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] urlComponents = changes.get(0).urlPathPart.split("/");
+    String repoPath = urlComponents[1] + "/" + urlComponents[2];
+    List<String> branchSegments = new ArrayList<String>();
+    for (String segment : URLUtil.decodeURIComponent(urlComponents[3]).split("/")) {
+      branchSegments.add(URLUtil.encodeURIComponent(segment));
+    }
+    String refPath = "heads/" + Joiner.on('/').join(branchSegments);
+
+    List<String> blobShas = createBlobs(repoPath, changes, accessToken);
+    List<String> paths = new ArrayList<String>();
+    for (FileChange change : changes) {
+      paths.add(getFilePath(change.urlPathPart));
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      String headSha = getSha(callApi("GET", repoPath + "/git/ref/" + refPath, null, accessToken).get("object"));
+      String baseTreeSha = getSha(callApi("GET", repoPath + "/git/commits/" + headSha, null, accessToken).get("tree"));
+      // The files are looked up again on every attempt, they may have changed when the branch moved.
+      Map<String, Node> files = getFiles(urlComponents[1], urlComponents[2], headSha, baseTreeSha, paths, 
+          accessToken);
+      List<Map<String, String>> treeEntries = new ArrayList<Map<String, String>>();
+      for (int i = 0; i < changes.size(); i++) {
+        Node file = files.get(paths.get(i));
+        String baseSha = changes.get(i).baseSha;
+        if (baseSha != null && (file == null || !baseSha.equals(file.sha))) {
+          throw new CommitRejectedException("The file was changed on GitHub since it was opened: " + paths.get(i));
+        }
+        Map<String, String> treeEntry = new LinkedHashMap<String, String>();
+        treeEntry.put("path", paths.get(i));
+        // The files keep their mode, for example executable, the new files are regular ones.
+        treeEntry.put("mode", file != null && file.mode != null ? file.mode : REGULAR_FILE_MODE);
+        treeEntry.put("type", "blob");
+        treeEntry.put("sha", blobShas.get(i));
+        treeEntries.add(treeEntry);
+      }
+
+      Map<String, Object> tree = new LinkedHashMap<String, Object>();
+      tree.put("base_tree", baseTreeSha);
+      tree.put("tree", treeEntries);
+      String treeSha = getSha(callApi("POST", repoPath + "/git/trees", tree, accessToken));
+
+      Map<String, Object> commit = new LinkedHashMap<String, Object>();
+      commit.put("message", "Overwriting files.");
+      commit.put("tree", treeSha);
+      commit.put("parents", Arrays.asList(headSha));
+      String commitSha = getSha(callApi("POST", repoPath + "/git/commits", commit, accessToken));
+
+      Map<String, Object> ref = new LinkedHashMap<String, Object>();
+      ref.put("sha", commitSha);
+      ref.put("force", Boolean.FALSE);
+      // The reference is updated with PATCH, which GitHub also accepts as POST.
+      HttpURLConnection refConnection = send("POST", repoPath + "/git/refs/" + refPath, ref, accessToken);
+      int responseCode = GithubHttpClient.getResponseCode(refConnection);
+      GithubHttpClient.release(refConnection);
+      if (responseCode == HttpURLConnection.HTTP_OK) {
+        break;
+      } else if (responseCode != HTTP_UNPROCESSABLE_ENTITY) {
+        throw createFailure(responseCode, responseCode + " " + refConnection.getResponseMessage() + " for: " + refPath);
+      } else if (attempt == MAX_COMMIT_ATTEMPTS) {
+        // The branch may move less often later.
+        throw new IOException(responseCode + " " + refConnection.getResponseMessage() + " for: " + refPath);
+      }
+      // The branch moved since its head was read, the commit is created again on top of the new head.
+    }
+
+    for (int i = 0; i < changes.size(); i++) {
+      GithubUrlConnection.onSaved(changes.get(i).urlPathPart, blobShas.get(i));
+    }
+  }
+
+  /**
+   * Finds files in a commit. They are looked up in the index of the commit, which is built with a single 
+   * request if it was not already built to list its folders. If GitHub cannot list the whole commit at once,
+   * only the folders of the files are read, one request for each.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param commitSha The sha of the commit.
+   * @param treeSha The sha of the root tree of the commit.
+   * @param paths The paths of the files.
+   * @param accessToken The access token of the user.
+   *
+   * @return A map of &lt;path, file&gt; of the files which exist in the commit.
+   *
+   * @throws IOException If the tree could not be read.
+   */
+  private static Map<String, Node> getFiles(String owner, String repo, String commitSha, String treeSha, 
+      List<String> paths, String accessToken) throws IOException {
+    Map<String, Node> files = new HashMap<String, Node>();
+    Node root = GithubTreeIndex.getIndex(owner, repo, commitSha, accessToken);
+    Map<String, JsonNode> folders = new HashMap<String, JsonNode>();
+    for (String path : paths) {
+      Node file;
+      if (root != null) {
+        file = root.find(path);
+      } else {
+        int slashIndex = path.lastIndexOf('/');
+        String folderPath = slashIndex == -1 ? "" : path.substring(0, slashIndex);
+        JsonNode entry = getTreeEntry(getFolderEntries(owner + "/" + repo, treeSha, folderPath, folders, accessToken), 
+            path.substring(slashIndex + 1), "blob");
+        file = entry != null ? new Node(null, null, entry.path("sha").getTextValue(), 
+            entry.path("mode").getTextValue(), 1) : null;
+      }
+      if (file != null && file.names == null) {
+        files.put(path, file);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Reads the entries of a folder of a tree.
+   *
+   * @param repoPath The owner/repo of the tree.
+   * @param treeSha The sha of the root tree.
+   * @param folderPath The path of the folder, empty for the root folder.
+   * @param folders The entries of the folders already read, by path.
+   * @param accessToken The access token of the user.
+   *
+   * @return The entries of the folder or <code>null</code> if it does not exist.
+   *
+   * @throws IOException If the tree could not be read.
+   */
+  private static JsonNode getFolderEntries(String repoPath, String treeSha, String folderPath, 
+      Map<String, JsonNode> folders, String accessToken) throws IOException {
+    if (folders.containsKey(folderPath)) {
+      return folders.get(folderPath);
+    }
+    JsonNode entries = null;
+    if (folderPath.isEmpty()) {
+      entries = readTree(repoPath, treeSha, accessToken);
+    } else {
+      int slashIndex = folderPath.lastIndexOf('/');
+      JsonNode folder = getTreeEntry(getFolderEntries(repoPath, treeSha, 
+          slashIndex == -1 ? "" : folderPath.substring(0, slashIndex), folders, accessToken), 
+          folderPath.substring(slashIndex + 1), "tree");
+      if (folder != null && folder.path("sha").isTextual()) {
+        entries = readTree(repoPath, folder.path("sha").getTextValue(), accessToken);
+      }
+    }
+    folders.put(folderPath, entries);
+    return entries;
+  }
+
+  /**
+   * @param entries The entries of a folder, <code>null</code> if it does not exist.
+   * @param name The name of an entry.
+   * @param type The type of the entry, "blob" or "tree".
+   *
+   * @return The entry or <code>null</code> if there is no such entry.
+   */
+  private static JsonNode getTreeEntry(JsonNode entries, String name, String type) {
+    if (entries != null) {
+      for (JsonNode entry : entries) {
+        if (name.equals(entry.path("path").getTextValue()) && type.equals(entry.path("type").getTextValue())) {
+          return entry;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads the entries of a tree, not recursively.
+   *
+   * @param repoPath The owner/repo of the tree.
+   * @param treeSha The sha of the tree.
+   * @param accessToken The access token of the user.
+   *
+   * @return The entries of the tree.
+   *
+   * @throws IOException If the tree could not be read.
+   */
+  private static JsonNode readTree(String repoPath, String treeSha, String accessToken) throws IOException {
+    String apiPath = repoPath + "/git/trees/" + treeSha;
+    HttpURLConnection connection = send("GET", apiPath, null, accessToken);
+    int responseCode = GithubHttpClient.getResponseCode(connection);
+    if (responseCode >= 300) {
+      GithubHttpClient.release(connection);
+      throw createFailure(responseCode, responseCode + " " + connection.getResponseMessage() + " for: " + apiPath);
+    }
+    InputStream body = GithubHttpClient.getInputStream(connection);
+    try {
+      return GithubUtil.mapper.readTree(body).path("tree");
+    } finally {
+      body.close();
+    }
+  }
+
+  /**
+   * Creates the blobs of the files in parallel.
+   *
+   * @param repoPath The owner/repo of the files.
+   * @param changes The files.
+   * @param accessToken The access token of the user.
+   *
+   * @return The shas of the blobs, in the order of the files.
+   *
+   * @throws IOException If a blob could not be created.
+   */
+  private static List<String> createBlobs(final String repoPath, List<FileChange> changes, final String accessToken)
+      throws IOException {
+    List<Future<String>> blobs = new ArrayList<Future<String>>();
+    for (final FileChange change : changes) {
+      blobs.add(blobThreads.submit(new Callable<String>() {
+        public String call() throws IOException {
+          return createBlob(repoPath, change.openContent(), accessToken);
+        }
+      }));
+    }
+
+    List<String> blobShas = new ArrayList<String>();
+    try {
+      for (Future<String> blob : blobs) {
+        blobShas.add(blob.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while creating the blobs");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    } finally {
+      for (Future<String> blob : blobs) {
+        blob.cancel(true);
+      }
+    }
+    return blobShas;
+  }
+
+  /**
+   * Creates a blob.
+   *
+   * The JSON request body is streamed to GitHub, base64 encoding the content as it is read.
+   *
+   * @param repoPath The owner/repo of the blob.
+   * @param content The content of the blob. It is closed by this method.
+   * @param accessToken The access token of the user.
+   *
+   * @return The sha of the blob.
+   *
+   * @throws IOException If the blob could not be created.
+   */
+  private static String createBlob(String repoPath, InputStream content, String accessToken) throws IOException {
+    HttpURLConnection connection;
+    try {
+      connection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + "/repos/" + repoPath + "/git/blobs" +
+          GithubUtil.getClientCredentialsQuery("?")), accessToken);
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setChunkedStreamingMode(64 * 1024);
+
+      OutputStream outputStream = GithubHttpClient.getOutputStream(connection);
+      try {
+        outputStream.write("{\"encoding\":\"base64\",\"content\":\"".getBytes("UTF-8"));
+        // The base64 alphabet does not need to be escaped in JSON.
+        Base64.OutputStream encodingStream = new Base64.OutputStream(outputStream, Base64.ENCODE);
+        IOUtils.copy(content, encodingStream);
+        encodingStream.flushBase64();
+        outputStream.write("\"}".getBytes("UTF-8"));
+        outputStream.flush();
+      } finally {
+        outputStream.close();
+      }
+    } finally {
+      content.close();
+    }
+    return getSha(readResult(connection, repoPath + "/git/blobs"));
+  }
+
+  /**
+   * Makes a request to the GitHub API.
+   *
+   * @param method The HTTP method.
+   * @param apiPath The path of the API url, after /repos/.
+   * @param body The object sent as JSON, <code>null</code> if the request has no body.
+   * @param accessToken The access token of the user.
+   *
+   * @return The string and object properties of the response.
+   *
+   * @throws IOException If the request failed.
+   */
+  private static HashMap<String, Object> callApi(String method, String apiPath, Object body, String accessToken)
+      throws IOException {
+    return readResult(send(method, apiPath, body, accessToken), apiPath);
+  }
+
+  /**
+   * Sends a request to the GitHub API.
+   *
+   * @param method The HTTP method.
+   * @param apiPath The path of the API url, after /repos/.
+   * @param body The object sent as JSON, <code>null</code> if the request has no body.
+   * @param accessToken The access token of the user.
+   *
+   * @return The connection, after the request was sent.
+   *
+   * @throws IOException If the request could not be sent.
+   */
+  private static HttpURLConnection send(String method, String apiPath, Object body, String accessToken)
+      throws IOException {
+    HttpURLConnection connection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + "/repos/" + apiPath +
+        GithubUtil.getClientCredentialsQuery("?")), accessToken);
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setDoOutput(true);
+      OutputStream outputStream = GithubHttpClient.getOutputStream(connection);
+      try {
+        GithubUtil.mapper.writeValue(outputStream, body);
+      } finally {
+        outputStream.close();
+      }
+    }
+    return connection;
+  }
+
+  /**
+   * Reads the response of a request to the GitHub API.
+   *
+   * @param connection The connection, after the request was sent.
+   * @param apiPath The path of the API url, for error messages.
+   *
+   * @return The string and object properties of the response.
+   *
+   * @throws IOException If the request failed.
+   */
+  private static HashMap<String, Object> readResult(HttpURLConnection connection, String apiPath) throws IOException {
+    int responseCode = GithubHttpClient.getResponseCode(connection);
+    if (responseCode >= 300) {
+      GithubHttpClient.release(connection);
+      throw createFailure(responseCode, responseCode + " " + connection.getResponseMessage() + " for: " + apiPath);
+    }
+    InputStream body = GithubHttpClient.getInputStream(connection);
+    try {
+      return GithubUtil.parseJSONObject(body);
+    } finally {
+      body.close();
+    }
+  }
+
+  /**
+   * @param responseCode The status of a failed request.
+   * @param message The description of the failure.
+   *
+   * @return The exception to throw, a {@link CommitRejectedException} if the request would fail again.
+   */
+  static IOException createFailure(int responseCode, String message) {
+    if (responseCode >= 400 && responseCode < 500 && 
+        responseCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT && responseCode != HTTP_TOO_MANY_REQUESTS) {
+      return new CommitRejectedException(message);
+    }
+    return new IOException(message);
+  }
+
+  /**
+   * @param object A git object, as a map of its properties.
+   *
+   * @return The sha of the object.
+   *
+   * @throws IOException If the object has no sha.
+   */
+  private static String getSha(Object object) throws IOException {
+    Object sha = object instanceof Map ? ((Map<?, ?>) object).get("sha") : null;
+    if (!(sha instanceof String)) {
+      throw new IOException("Unexpected response from GitHub, missing sha");
+    }
+    return (String) sha;
+  }
+
+  /**
+   * @param urlPathPart The path of a file url: /$owner/$repo/$branch/$path
+   *
+   * @return The decoded path of the file in the repository.
+   */
+  private static String getFilePath(String urlPathPart) {
+    String[] urlComponents = urlPathPart.split("/");
+    List<String> path = new ArrayList<String>();
+    for (int i = 4; i < urlComponents.length; i++) {
+      path.add(URLUtil.decodeURIComponent(urlComponents[i]));
+    }
+    return Joiner.on('/').join(path);
+  }
+}
@@ -0,0 +1,165 @@
+package com.oxygenxml.examples.github;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache of the file contents read from GitHub, shared between all the sessions.
+ *
+ * Every entry remembers the ETag of the response it was read from, so that later reads
+ * can be made conditional with an <code>If-None-Match</code> header. GitHub answers those with
+ * 304 Not Modified, which does not count against the rate limit and has no body.
+ *
+ * Since every read is still sent to GitHub with the user's access token, a user that does
+ * not have access to a repository will never receive its contents from this cache.
+ * The only exception are the files of a commit resolved by the {@link GithubRefResolver}, 
+ * which never change and which the user was already allowed to access by the resolution.
+ */
+public class GithubContentCache {
+
+  /**
+   * The default maximum number of bytes held by the cache.
+   */
+  static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+  /**
+   * The default maximum size of a file that will be cached.
+   */
+  static final long DEFAULT_MAX_ENTRY_BYTES = 2 * 1024 * 1024;
+
+  /**
+   * The contents of a file, as it was read from GitHub.
+   */
+  static class CachedContent {
+    /**
+     * The ETag of the GitHub response, <code>null</code> for files of resolved commits which were
+     * not read with an ETag.
+     */
+    final String etag;
+
+    /**
+     * The decoded content of the file.
+     */
+    final byte[] content;
+
+    /**
+     * Constructor.
+     *
+     * @param etag The ETag of the GitHub response.
+     * @param content The decoded content of the file.
+     */
+    CachedContent(String etag, byte[] content) {
+      this.etag = etag;
+      this.content = content;
+    }
+  }
+
+  /**
+   * A map of <owner/repo/ref/path, content>.
+   */
+  private static volatile Cache<String, CachedContent> contents = buildCache(DEFAULT_MAX_BYTES);
+
+  /**
+   * The maximum size of a file that will be cached.
+   */
+  private static volatile long maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubContentCache() {
+  }
+
+  /**
+   * Sets the size limits of the cache. The cached entries are discarded.
+   *
+   * @param maxBytes The maximum number of bytes held by the cache.
+   * @param maxEntryBytes The maximum size of a file that will be cached.
+   */
+  static void configure(long maxBytes, long maxEntryBytes) {
+    GithubContentCache.maxEntryBytes = maxEntryBytes;
+    contents = buildCache(maxBytes);
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param maxBytes The maximum number of bytes held by the cache.
+   *
+   * @return The cache.
+   */
+  private static Cache<String, CachedContent> buildCache(long maxBytes) {
+    return CacheBuilder.newBuilder()
+        // Each segment gets a share of the weight, a single one keeps files up to the entry limit in a small cache.
+        // The reads do not lock the segment, only the writes after a file was read from GitHub are serialized.
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<String, CachedContent>() {
+          public int weigh(String key, CachedContent value) {
+            return key.length() + value.content.length;
+          }
+        })
+        .build();
+  }
+
+  /**
+   * @return The maximum size of a file that will be cached.
+   */
+  static long getMaxEntryBytes() {
+    return maxEntryBytes;
+  }
+
+  /**
+   * @param key The owner/repo/ref/path of the file.
+   *
+   * @return The cached content or <code>null</code> if the file was not cached.
+   */
+  static CachedContent get(String key) {
+    return contents.getIfPresent(key);
+  }
+
+  /**
+   * Caches the content of a file. Files without an ETag or larger than the
+   * configured limit are not cached.
+   *
+   * @param key The owner/repo/ref/path of the file.
+   * @param etag The ETag of the GitHub response.
+   * @param content The decoded content of the file.
+   */
+  static void put(String key, String etag, byte[] content) {
+    if (etag != null && content.length <= maxEntryBytes) {
+      contents.put(key, new CachedContent(etag, content));
+    }
+  }
+
+  /**
+   * Caches the content of a file of a resolved commit, which was not read with an ETag.
+   * Such files are never revalidated, since the files of a commit never change.
+   * 
+   * @param key The owner/repo/commit sha/path of the file.
+   * @param content The decoded content of the file.
+   */
+  static void putCommitContent(String key, byte[] content) {
+    if (content.length <= maxEntryBytes) {
+      contents.put(key, new CachedContent(null, content));
+    }
+  }
+
+  /**
+   * Removes a file from the cache.
+   *
+   * @param key The owner/repo/ref/path of the file.
+   */
+  static void invalidate(String key) {
+    contents.invalidate(key);
+  }
+
+  /**
+   * Removes all the files from the cache.
+   */
+  static void invalidateAll() {
+    contents.invalidateAll();
+  }
+}
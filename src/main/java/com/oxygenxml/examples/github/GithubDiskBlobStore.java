@@ -0,0 +1,479 @@
+package com.oxygenxml.examples.github;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Stores the files read from GitHub on disk, by the sha of their git blob, shared between all the sessions.
+ *
+ * Since a blob never changes, the same file on different branches or forks is stored only once,
+ * and the stored blobs survive restarts. Together with every blob, the store remembers the ETag of
+ * the response it was read from, so that it can be revalidated with a conditional request like the 
+ * files of the {@link GithubContentCache}. 
+ *
+ * The least recently used blobs are deleted when the store grows over its size limit.
+ * The blobs are read through memory-mapped files.
+ *
+ * The store is disabled unless a folder is configured. Since it holds the files of private repositories,
+ * its folder and files can only be accessed by the owner of the process.
+ */
+public class GithubDiskBlobStore {
+
+  /**
+   * The default maximum number of bytes stored on disk.
+   */
+  static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+  /**
+   * The maximum number of small blobs waiting to be written, the other ones are not stored.
+   */
+  private static final int MAX_QUEUED_WRITES = 100;
+
+  /**
+   * The suffix of the files holding the ETags.
+   */
+  private static final String ETAG_SUFFIX = ".etag";
+
+  /**
+   * The suffix of the files being written.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubDiskBlobStore.class.getName());
+
+  /**
+   * The folder of the store, <code>null</code> if the store is disabled.
+   */
+  private static volatile File folder;
+
+  /**
+   * A map of <blob sha, size> of the stored blobs, in the order in which they were used.
+   */
+  private static volatile Cache<String, Long> blobs;
+
+  /**
+   * The thread which writes the small blobs, so that the requests do not wait for the disk.
+   */
+  private static volatile ThreadPoolExecutor writeThread;
+
+  /**
+   * The shas of the blobs waiting to be written.
+   */
+  private static final Set<String> queuedWrites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubDiskBlobStore() {
+  }
+
+  /**
+   * Configures the store and indexes the blobs stored by previous runs.
+   *
+   * @param dir The folder of the store, <code>null</code> to disable the store.
+   * @param maxBytes The maximum number of bytes stored on disk, 0 to disable the store.
+   */
+  static synchronized void configure(String dir, long maxBytes) {
+    folder = null;
+    ThreadPoolExecutor oldWriteThread = writeThread;
+    writeThread = null;
+    if (oldWriteThread != null) {
+      oldWriteThread.shutdown();
+    }
+    if (dir == null || dir.isEmpty() || maxBytes <= 0) {
+      return;
+    }
+    File storeFolder = new File(dir);
+    try {
+      GithubUtil.createPrivateFolder(storeFolder);
+    } catch (IOException e) {
+      logger.warn("Could not create the blob store folder, the blobs will not be stored on disk: " + storeFolder);
+      return;
+    }
+
+    Cache<String, Long> index = CacheBuilder.newBuilder()
+        // The weight is divided between the segments, with a single one a blob can use all of it.
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<String, Long>() {
+          public int weigh(String sha, Long size) {
+            return (int) Math.min(Integer.MAX_VALUE, size);
+          }
+        })
+        .removalListener(new RemovalListener<String, Long>() {
+          public void onRemoval(RemovalNotification<String, Long> notification) {
+            if (notification.getCause() != RemovalCause.REPLACED) {
+              File blobFile = getBlobFile(notification.getKey());
+              blobFile.delete();
+              getEtagFile(blobFile).delete();
+            }
+          }
+        })
+        .build();
+
+    // Index the blobs stored by the previous runs, the oldest first, so that they are evicted first.
+    List<File> storedFiles = new ArrayList<File>();
+    File[] subFolders = storeFolder.listFiles();
+    if (subFolders != null) {
+      for (File subFolder : subFolders) {
+        File[] files = subFolder.listFiles();
+        if (files != null) {
+          storedFiles.addAll(Arrays.asList(files));
+        } else if (subFolder.getName().endsWith(TEMP_SUFFIX)) {
+          // Left behind by a run which stopped while writing.
+          subFolder.delete();
+        }
+      }
+    }
+    File[] sortedFiles = storedFiles.toArray(new File[storedFiles.size()]);
+    Arrays.sort(sortedFiles, new Comparator<File>() {
+      public int compare(File first, File second) {
+        long firstModified = first.lastModified();
+        long secondModified = second.lastModified();
+        return firstModified < secondModified ? -1 : (firstModified == secondModified ? 0 : 1);
+      }
+    });
+
+    // The index is published first, the readers which see the folder must also see its index.
+    blobs = index;
+    folder = storeFolder;
+    writeThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+        new ArrayBlockingQueue<Runnable>(MAX_QUEUED_WRITES), 
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("github-blob-store-%d").build());
+    for (File file : sortedFiles) {
+      String name = file.getName();
+      if (name.matches("[0-9a-f]{40}")) {
+        if (getEtagFile(file).isFile()) {
+          index.put(name, file.length());
+        } else {
+          file.delete();
+        }
+      } else if (name.endsWith(ETAG_SUFFIX) && !new File(file.getParentFile(), 
+          name.substring(0, name.length() - ETAG_SUFFIX.length())).isFile()) {
+        // The blob was never written.
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * @param sha The sha of a blob.
+   *
+   * @return The ETag of the response the blob was read from, or <code>null</code> if the blob is not stored.
+   */
+  static String getEtag(String sha) {
+    if (folder == null || blobs.getIfPresent(sha) == null) {
+      return null;
+    }
+    try {
+      InputStream in = new FileInputStream(getEtagFile(getBlobFile(sha)));
+      try {
+        return IOUtils.toString(in, "UTF-8");
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      blobs.invalidate(sha);
+      return null;
+    }
+  }
+
+  /**
+   * Opens a stored blob.
+   *
+   * @param sha The sha of the blob.
+   *
+   * @return The content of the blob or <code>null</code> if it is not stored.
+   */
+  static InputStream open(String sha) {
+    if (folder == null || blobs.getIfPresent(sha) == null) {
+      return null;
+    }
+    try {
+      RandomAccessFile file = new RandomAccessFile(getBlobFile(sha), "r");
+      try {
+        FileChannel channel = file.getChannel();
+        // The mapping stays valid after the file is closed, and even after it is deleted.
+        MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new ByteBufferInputStream(content);
+      } finally {
+        file.close();
+      }
+    } catch (IOException e) {
+      blobs.invalidate(sha);
+      return null;
+    }
+  }
+
+  /**
+   * Stores a blob in the background.
+   *
+   * @param sha The sha of the blob.
+   * @param etag The ETag of the response the blob was read from.
+   * @param content The content of the blob.
+   */
+  static void put(final String sha, final String etag, final byte[] content) {
+    ThreadPoolExecutor thread = writeThread;
+    if (thread == null || etag == null || blobs.getIfPresent(sha) != null || !queuedWrites.add(sha)) {
+      return;
+    }
+    Runnable write = new Runnable() {
+      public void run() {
+        try {
+          write(sha, etag, content);
+        } finally {
+          queuedWrites.remove(sha);
+        }
+      }
+    };
+    try {
+      thread.execute(write);
+    } catch (RejectedExecutionException e) {
+      // Too many blobs are waiting to be written, this one is still cached in memory.
+      queuedWrites.remove(sha);
+    }
+  }
+
+  /**
+   * Writes a blob to the store.
+   *
+   * @param sha The sha of the blob.
+   * @param etag The ETag of the response the blob was read from.
+   * @param content The content of the blob.
+   */
+  private static void write(String sha, String etag, byte[] content) {
+    File storeFolder = folder;
+    if (storeFolder == null || blobs.getIfPresent(sha) != null) {
+      return;
+    }
+    File tempFile = new File(storeFolder, UUID.randomUUID() + TEMP_SUFFIX);
+    try {
+      OutputStream out = GithubUtil.createPrivateFile(tempFile);
+      try {
+        out.write(content);
+      } finally {
+        out.close();
+      }
+      add(sha, etag, tempFile);
+    } catch (IOException e) {
+      tempFile.delete();
+      logger.warn("Could not store blob " + sha + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Stores the rest of a file which is being read from GitHub.
+   *
+   * @param etag The ETag of the response the file is read from.
+   * @param prefix The beginning of the file, which was already read.
+   * @param rest The rest of the file. It is closed by this method.
+   *
+   * @return The sha of the stored blob, or <code>null</code> if the store is disabled.
+   *
+   * @throws IOException If the file could not be read.
+   */
+  static String putStream(String etag, byte[] prefix, InputStream rest) throws IOException {
+    File storeFolder = folder;
+    if (storeFolder == null || etag == null) {
+      return null;
+    }
+    File tempFile = new File(storeFolder, UUID.randomUUID() + TEMP_SUFFIX);
+    try {
+      OutputStream out = GithubUtil.createPrivateFile(tempFile);
+      try {
+        out.write(prefix);
+        IOUtils.copy(rest, out);
+      } finally {
+        out.close();
+        rest.close();
+      }
+
+      // The length of the blob is hashed before its content, so it can only be hashed once it is written.
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + tempFile.length() + "\0").getBytes("UTF-8"));
+      InputStream in = new FileInputStream(tempFile);
+      try {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+      StringBuilder sha = new StringBuilder();
+      for (byte b : digest.digest()) {
+        sha.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      add(sha.toString(), etag, tempFile);
+      return sha.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is available on all the platforms.
+      throw new IllegalStateException(e);
+    } finally {
+      // Not there anymore if it was stored.
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Adds a written blob to the store.
+   *
+   * @param sha The sha of the blob.
+   * @param etag The ETag of the response the blob was read from.
+   * @param tempFile The temporary file holding the blob.
+   *
+   * @throws IOException If the blob could not be stored.
+   */
+  private static void add(String sha, String etag, File tempFile) throws IOException {
+    File blobFile = getBlobFile(sha);
+    if (!blobFile.getParentFile().isDirectory()) {
+      GithubUtil.createPrivateFolder(blobFile.getParentFile());
+    }
+    // The ETag is written first, a blob without an ETag file is not indexed on startup.
+    File etagTempFile = new File(folder, UUID.randomUUID() + TEMP_SUFFIX);
+    try {
+      OutputStream etagOut = GithubUtil.createPrivateFile(etagTempFile);
+      try {
+        etagOut.write(etag.getBytes("UTF-8"));
+      } finally {
+        etagOut.close();
+      }
+      rename(etagTempFile, getEtagFile(blobFile));
+    } finally {
+      etagTempFile.delete();
+    }
+    rename(tempFile, blobFile);
+    blobs.put(sha, blobFile.length());
+  }
+
+  /**
+   * Moves a written file to its place in the store.
+   *
+   * @param tempFile The written file.
+   * @param file The file in the store.
+   *
+   * @throws IOException If the file could not be moved.
+   */
+  private static void rename(File tempFile, File file) throws IOException {
+    if (!tempFile.renameTo(file)) {
+      // The same blob was stored concurrently, or the platform does not replace existing files.
+      file.delete();
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Could not rename " + tempFile + " to " + file);
+      }
+    }
+  }
+
+  /**
+   * @param sha The sha of a blob.
+   *
+   * @return The file of the blob. The blobs are spread in sub-folders by the first two characters of their sha.
+   */
+  private static File getBlobFile(String sha) {
+    return new File(new File(folder, sha.substring(0, 2)), sha);
+  }
+
+  /**
+   * @param blobFile The file of a blob.
+   *
+   * @return The file holding the ETag of the blob.
+   */
+  private static File getEtagFile(File blobFile) {
+    return new File(blobFile.getPath() + ETAG_SUFFIX);
+  }
+
+  /**
+   * Forgets and deletes all the stored blobs.
+   */
+  static void invalidateAll() {
+    if (folder != null) {
+      blobs.invalidateAll();
+    }
+  }
+
+  /**
+   * Reads a memory-mapped blob.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    /**
+     * The content of the blob.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer The content of the blob.
+     */
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
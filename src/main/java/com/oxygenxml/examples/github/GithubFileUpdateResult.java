@@ -0,0 +1,26 @@
+package com.oxygenxml.examples.github;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Class used when parsing the response of the github api call which creates or updates a file.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GithubFileUpdateResult {
+  /**
+   * The commit which created or updated the file.
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Commit {
+    @JsonProperty("sha")
+    public String sha;
+  }
+  
+  // The new version of the file, without its content
+  @JsonProperty("content")
+  public GithubApiResult content;
+  
+  @JsonProperty("commit")
+  public Commit commit;
+}
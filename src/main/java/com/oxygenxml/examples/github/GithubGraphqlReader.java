@@ -0,0 +1,244 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonNode;
+
+import com.google.common.base.Joiner;
+import com.oxygenxml.examples.github.GithubRateLimitGovernor.Priority;
+
+import ro.sync.util.URLUtil;
+
+/**
+ * Reads many files of a commit with a single request to the GitHub GraphQL API,
+ * instead of one request to the Contents API for each file.
+ *
+ * Only the text files which GraphQL returns unchanged are read, the other ones are left to the REST API.
+ * GitHub Enterprise versions which do not have the GraphQL API are detected on the first request,
+ * after which the batches are not tried again for a while. When the GraphQL rate limit of an access
+ * token is exhausted, only the batches of that token are not tried until it is reset. The limit is kept
+ * by the {@link GithubRateLimitGovernor}, also when GitHub reports it as an error of a successful response.
+ */
+public class GithubGraphqlReader {
+
+  /**
+   * The maximum number of files read with a request.
+   */
+  static final int MAX_BATCH_SIZE = 50;
+
+  /**
+   * For how long the GraphQL API is not used after it was found to be missing.
+   */
+  private static final long UNAVAILABLE_RETRY_MS = 3600 * 1000;
+
+  /**
+   * The longest time until the GraphQL rate limit is reset, used when GitHub does not tell when it is.
+   */
+  private static final long RATE_LIMIT_WINDOW_MS = 3600 * 1000;
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubGraphqlReader.class.getName());
+
+  /**
+   * The url of the GraphQL API, <code>null</code> to use the one of the GitHub deployment.
+   */
+  private static volatile String graphqlUrl;
+
+  /**
+   * The time until which the GraphQL API is not used, because it is missing.
+   */
+  private static volatile long unavailableUntil;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubGraphqlReader() {
+  }
+
+  /**
+   * Sets the url of the GraphQL API, for example to use a stand-in server.
+   *
+   * @param graphqlUrl The url of the GraphQL API, <code>null</code> to use the one of the GitHub deployment.
+   */
+  static void configure(String graphqlUrl) {
+    GithubGraphqlReader.graphqlUrl = graphqlUrl;
+    unavailableUntil = 0;
+  }
+
+  /**
+   * @return The url of the GraphQL API.
+   */
+  static String getGraphqlUrl() {
+    String configuredUrl = graphqlUrl;
+    if (configuredUrl != null) {
+      return configuredUrl;
+    }
+    String apiUrl = GitHubOauthServlet.apiUrl;
+    return apiUrl != null ? apiUrl + "/api/graphql" : "https://api.github.com/graphql";
+  }
+
+  /**
+   * @param accessToken The access token of the user.
+   *
+   * @return <code>true</code> if the GraphQL API should be used with the access token.
+   */
+  static boolean isAvailable(String accessToken) {
+    long now = System.currentTimeMillis();
+    if (now < unavailableUntil) {
+      return false;
+    }
+    return !GithubRateLimitGovernor.isExhausted(accessToken, GithubRateLimitGovernor.GRAPHQL_RESOURCE);
+  }
+
+  /**
+   * Reads files of a commit.
+   *
+   * @param commitSha The sha of the commit.
+   * @param urlPathParts The paths of the files urls: /$owner/$repo/$branch/$path, all of the same repository.
+   * At most {@link #MAX_BATCH_SIZE} files are read, the rest are ignored.
+   * @param accessToken The access token of the user, GraphQL does not allow anonymous requests.
+   *
+   * @return A map of &lt;url path, content&gt;, with <code>null</code> contents for the files which
+   * do not exist in the commit. The files which could not be read are not in the map.
+   */
+  static Map<String, byte[]> readFiles(String commitSha, List<String> urlPathParts, String accessToken) {
+    Map<String, byte[]> contents = new HashMap<String, byte[]>();
+    if (urlPathParts.isEmpty() || accessToken == null || !isAvailable(accessToken)) {
+      return contents;
+    }
+    List<String> batch = urlPathParts.subList(0, Math.min(urlPathParts.size(), MAX_BATCH_SIZE));
+    try {
+      JsonNode repository = query(commitSha, batch, accessToken);
+      if (repository == null) {
+        return contents;
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        JsonNode file = repository.get("f" + i);
+        if (file == null) {
+          // The alias is missing if the expression could not be evaluated.
+          continue;
+        }
+        if (file.isNull()) {
+          contents.put(batch.get(i), null);
+        } else if (!file.path("isBinary").getBooleanValue() && !file.path("isTruncated").getBooleanValue()
+            && file.path("text").isTextual()) {
+          byte[] content = file.path("text").getTextValue().getBytes("UTF-8");
+          // The text is decoded by GitHub, the files which are not in UTF-8 do not have the same bytes anymore.
+          if (GithubUtil.getGitBlobSha(content).equals(file.path("oid").getTextValue())) {
+            contents.put(batch.get(i), content);
+          }
+        }
+      }
+    } catch (RateLimitExceededException e) {
+      // The governor keeps the limit of the token, the other users are not affected.
+      logger.debug("The GraphQL rate limit was exceeded: " + e.getMessage());
+    } catch (IOException e) {
+      logger.debug("Could not read files with GraphQL: " + e.getMessage());
+    }
+    return contents;
+  }
+
+  /**
+   * Asks the GraphQL API for the blobs of some files.
+   *
+   * @param commitSha The sha of the commit.
+   * @param urlPathParts The paths of the files urls.
+   * @param accessToken The access token of the user.
+   *
+   * @return The repository object of the response, which has the blobs with the "f&lt;index&gt;" aliases,
+   * <code>null</code> if GitHub did not answer the query.
+   *
+   * @throws IOException If the request failed.
+   */
+  private static JsonNode query(String commitSha, List<String> urlPathParts, String accessToken) throws IOException {
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] firstUrlComponents = urlPathParts.get(0).split("/");
+    Map<String, String> variables = new LinkedHashMap<String, String>();
+    variables.put("owner", URLUtil.decodeURIComponent(firstUrlComponents[1]));
+    variables.put("name", URLUtil.decodeURIComponent(firstUrlComponents[2]));
+
+    StringBuilder declarations = new StringBuilder("$owner:String!,$name:String!");
+    StringBuilder fields = new StringBuilder();
+    for (int i = 0; i < urlPathParts.size(); i++) {
+      String[] urlComponents = urlPathParts.get(i).split("/");
+      List<String> path = new ArrayList<String>();
+      for (int j = 4; j < urlComponents.length; j++) {
+        path.add(URLUtil.decodeURIComponent(urlComponents[j]));
+      }
+      // The paths are sent as variables, so that they do not need to be escaped in the query.
+      variables.put("e" + i, commitSha + ":" + Joiner.on('/').join(path));
+      declarations.append(",$e").append(i).append(":String!");
+      fields.append(" f").append(i).append(":object(expression:$e").append(i).append(")")
+          .append("{...on Blob{oid text isBinary isTruncated}}");
+    }
+    Map<String, Object> request = new HashMap<String, Object>();
+    request.put("query", "query(" + declarations + "){repository(owner:$owner,name:$name){" + fields + "}}");
+    request.put("variables", variables);
+
+    HttpURLConnection connection = GithubHttpClient.open(new URL(getGraphqlUrl()), accessToken, Priority.LOW);
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setDoOutput(true);
+    OutputStream requestBody = GithubHttpClient.getOutputStream(connection);
+    try {
+      GithubUtil.mapper.writeValue(requestBody, request);
+    } finally {
+      requestBody.close();
+    }
+
+    int responseCode = GithubHttpClient.getResponseCode(connection);
+    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+      // A GitHub Enterprise version without the GraphQL API.
+      logger.debug("The GraphQL API is not available, reading the files with the REST API.");
+      unavailableUntil = System.currentTimeMillis() + UNAVAILABLE_RETRY_MS;
+      GithubHttpClient.release(connection);
+      return null;
+    } else if (responseCode != HttpURLConnection.HTTP_OK) {
+      GithubHttpClient.release(connection);
+      return null;
+    }
+    InputStream responseBody = GithubHttpClient.getInputStream(connection);
+    JsonNode response;
+    try {
+      response = GithubUtil.mapper.readTree(responseBody);
+    } finally {
+      responseBody.close();
+    }
+    if (isRateLimited(response)) {
+      // Reported with a 200 response, which the governor cannot tell from a successful one.
+      long reset = GithubRateLimitGovernor.getLongHeader(connection, "X-RateLimit-Reset");
+      long retryAt = reset != -1 ? TimeUnit.SECONDS.toMillis(reset) : System.currentTimeMillis() + RATE_LIMIT_WINDOW_MS;
+      GithubRateLimitGovernor.onRateLimited(accessToken, GithubRateLimitGovernor.GRAPHQL_RESOURCE, retryAt);
+      throw new RateLimitExceededException(retryAt);
+    }
+    JsonNode repository = response.path("data").path("repository");
+    return repository.isObject() ? repository : null;
+  }
+
+  /**
+   * @param response The GraphQL response.
+   *
+   * @return <code>true</code> if the query was refused because the rate limit was exceeded.
+   */
+  private static boolean isRateLimited(JsonNode response) {
+    for (JsonNode error : response.path("errors")) {
+      if ("RATE_LIMITED".equals(error.path("type").getTextValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
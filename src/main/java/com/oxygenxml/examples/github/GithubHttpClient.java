@@ -0,0 +1,235 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+import com.oxygenxml.examples.github.GithubRateLimitGovernor.Priority;
+
+/**
+ * Opens all the connections made by the plugin to GitHub.
+ *
+ * The connections use the JDK keep-alive pool, which is per host and port. For the sockets
+ * to be reused, the response bodies must be read until the end and closed, which is
+ * what {@link #release(HttpURLConnection)} does for the responses which are not read.
+ *
+ * The TLS connections use the default SSL context of the server, which resumes the TLS sessions
+ * and trusts the certificates configured by the administrator.
+ */
+public class GithubHttpClient {
+
+  /**
+   * The default connect timeout in milliseconds.
+   */
+  static final long DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+
+  /**
+   * The default read timeout in milliseconds.
+   */
+  static final long DEFAULT_READ_TIMEOUT_MS = 60000;
+
+  /**
+   * The number of idle connections kept alive for each API host, below which the users may wait 
+   * for new connections to be opened.
+   */
+  private static final long RECOMMENDED_MAX_CONNECTIONS_PER_HOST = 20;
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubHttpClient.class.getName());
+
+  /**
+   * The connect timeout in milliseconds.
+   */
+  private static volatile int connectTimeout = (int) DEFAULT_CONNECT_TIMEOUT_MS;
+
+  /**
+   * The read timeout in milliseconds.
+   */
+  private static volatile int readTimeout = (int) DEFAULT_READ_TIMEOUT_MS;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubHttpClient() {
+  }
+
+  /**
+   * Configures the connections.
+   *
+   * @param connectTimeout The connect timeout in milliseconds.
+   * @param readTimeout The read timeout in milliseconds.
+   */
+  static void configure(long connectTimeout, long readTimeout) {
+    GithubHttpClient.connectTimeout = (int) connectTimeout;
+    GithubHttpClient.readTimeout = (int) readTimeout;
+
+    // The JDK keep-alive pool is shared by the whole server, so its size is left to the administrator.
+    long maxConnectionsPerHost = Long.getLong("http.maxConnections", 5);
+    if (maxConnectionsPerHost < RECOMMENDED_MAX_CONNECTIONS_PER_HOST) {
+      logger.warn("Only " + maxConnectionsPerHost + " idle connections are kept alive for each host, " +
+          "GitHub requests will often open new connections. Start the server with -Dhttp.maxConnections=" + 
+          RECOMMENDED_MAX_CONNECTIONS_PER_HOST + " to keep more of them.");
+    }
+  }
+
+  /**
+   * Opens a connection to GitHub.
+   *
+   * @param url The url to connect to.
+   *
+   * @return The connection, not yet connected.
+   *
+   * @throws IOException If the connection could not be opened.
+   */
+  public static HttpURLConnection open(URL url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+    connection.setConnectTimeout(connectTimeout);
+    connection.setReadTimeout(readTimeout);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    return connection;
+  }
+
+  /**
+   * Opens a connection to the GitHub API, authenticated with an access token.
+   * The request is subject to the {@link GithubRateLimitGovernor}.
+   *
+   * @param url The url to connect to.
+   * @param accessToken The access token, <code>null</code> for unauthenticated requests.
+   *
+   * @return The connection, not yet connected.
+   *
+   * @throws IOException If the connection could not be opened.
+   */
+  public static HttpURLConnection open(URL url, String accessToken) throws IOException {
+    return open(url, accessToken, Priority.HIGH);
+  }
+
+  /**
+   * Opens a connection to the GitHub API, authenticated with an access token.
+   * The request is subject to the {@link GithubRateLimitGovernor}.
+   *
+   * @param url The url to connect to.
+   * @param accessToken The access token, <code>null</code> for unauthenticated requests.
+   * @param priority The priority of the request.
+   *
+   * @return The connection, not yet connected.
+   *
+   * @throws IOException If the connection could not be opened.
+   */
+  public static HttpURLConnection open(URL url, String accessToken, Priority priority) throws IOException {
+    HttpURLConnection connection = open(url);
+    if (accessToken != null) {
+      connection.setRequestProperty("Authorization", "token " + accessToken);
+    }
+    GithubRateLimitGovernor.register(connection, accessToken, priority);
+    return connection;
+  }
+
+  /**
+   * Sends the headers of a request with a body and returns the stream to which the body is written.
+   *
+   * @param connection The connection opened with {@link #open(URL)}.
+   *
+   * @return The stream of the request body.
+   *
+   * @throws IOException If the request could not be sent.
+   * @throws RateLimitExceededException If the rate limit does not allow the request.
+   */
+  public static OutputStream getOutputStream(HttpURLConnection connection) throws IOException {
+    GithubRateLimitGovernor.beforeSend(connection);
+    try {
+      return connection.getOutputStream();
+    } catch (IOException e) {
+      GithubRateLimitGovernor.onFailure(connection);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the response code, recording the rate limit reported by GitHub.
+   *
+   * @param connection The connection opened with {@link #open(URL)}.
+   *
+   * @return The response code.
+   *
+   * @throws IOException If the request failed.
+   * @throws RateLimitExceededException If the rate limit does not allow the request or if 
+   * the request was rejected because of the rate limit.
+   */
+  public static int getResponseCode(HttpURLConnection connection) throws IOException {
+    // The request is sent now, unless its body was already written.
+    GithubRateLimitGovernor.beforeSend(connection);
+    int responseCode;
+    try {
+      responseCode = connection.getResponseCode();
+    } catch (IOException e) {
+      GithubRateLimitGovernor.onFailure(connection);
+      throw e;
+    }
+    long retryAt = GithubRateLimitGovernor.onResponse(connection, responseCode);
+    if (retryAt != -1) {
+      release(connection);
+      throw new RateLimitExceededException(retryAt);
+    }
+    return responseCode;
+  }
+
+  /**
+   * Returns the body of a successful response, decompressing it if needed.
+   *
+   * @param connection The connection opened with {@link #open(URL)}.
+   *
+   * @return The response body.
+   *
+   * @throws IOException If the request failed.
+   */
+  public static InputStream getInputStream(HttpURLConnection connection) throws IOException {
+    getResponseCode(connection);
+    InputStream inputStream = connection.getInputStream();
+    if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+      inputStream = new GZIPInputStream(inputStream);
+    }
+    return inputStream;
+  }
+
+  /**
+   * Reads and closes the body of a response which is not needed, so that the
+   * connection can be reused.
+   *
+   * @param connection The connection opened with {@link #open(URL)}.
+   */
+  public static void release(HttpURLConnection connection) {
+    InputStream body;
+    try {
+      GithubRateLimitGovernor.onResponse(connection, connection.getResponseCode());
+      body = connection.getInputStream();
+    } catch (IOException e) {
+      GithubRateLimitGovernor.onFailure(connection);
+      body = connection.getErrorStream();
+    }
+    if (body != null) {
+      try {
+        byte[] buffer = new byte[4096];
+        while (body.read(buffer) != -1) {
+          // Draining the body.
+        }
+      } catch (IOException e) {
+        // The connection will not be reused.
+      } finally {
+        try {
+          body.close();
+        } catch (IOException e) {
+          // Nothing to do.
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.oxygenxml.examples.github;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import ro.sync.merge.MergeResult.ResultType;
+
+/**
+ * Cache of the results of the three-way merges, shared between all the sessions.
+ *
+ * Clients retry a merge with the same documents after a failed commit, so the result is
+ * remembered by a SHA-256 hash of the three documents. The documents themselves are not kept.
+ */
+public class GithubMergeCache {
+
+  /**
+   * The default maximum number of characters of merged documents held by the cache.
+   */
+  static final long DEFAULT_MAX_CHARS = 16 * 1024 * 1024;
+
+  /**
+   * The result of a merge.
+   */
+  static class CachedMerge {
+    /**
+     * The merged document.
+     */
+    final String merged;
+
+    /**
+     * The type of the result.
+     */
+    final ResultType resultType;
+
+    /**
+     * Constructor.
+     *
+     * @param merged The merged document.
+     * @param resultType The type of the result.
+     */
+    CachedMerge(String merged, ResultType resultType) {
+      this.merged = merged;
+      this.resultType = resultType;
+    }
+  }
+
+  /**
+   * A map of <hash of the merged documents, result>.
+   */
+  private static volatile Cache<String, CachedMerge> merges = buildCache(DEFAULT_MAX_CHARS);
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubMergeCache() {
+  }
+
+  /**
+   * Sets the size limit of the cache. The cached entries are discarded.
+   *
+   * @param maxChars The maximum number of characters of merged documents held by the cache.
+   */
+  static void configure(long maxChars) {
+    merges = buildCache(maxChars);
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param maxChars The maximum number of characters of merged documents held by the cache.
+   *
+   * @return The cache.
+   */
+  private static Cache<String, CachedMerge> buildCache(long maxChars) {
+    return CacheBuilder.newBuilder()
+        // With a single segment, a merged document may use the whole limit instead of a share of it.
+        .concurrencyLevel(1)
+        .maximumWeight(maxChars)
+        .weigher(new Weigher<String, CachedMerge>() {
+          public int weigh(String key, CachedMerge value) {
+            return key.length() + value.merged.length();
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Computes the key of a merge. The length of every document is hashed before it, so that
+   * moving text from one document to the next one gives a different key.
+   *
+   * @param ancestor The common ancestor.
+   * @param left The version with the user changes.
+   * @param right The latest version from GitHub.
+   *
+   * @return The key of the merge.
+   */
+  static String getKey(String ancestor, String left, String right) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String document : new String[] {ancestor, left, right}) {
+        digest.update((document.length() + ":").getBytes("UTF-8"));
+        digest.update(document.getBytes("UTF-8"));
+      }
+      byte[] hash = digest.digest();
+
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 is available on all the platforms.
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is available on all the platforms.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param key The key of the merge, as returned by {@link #getKey(String, String, String)}.
+   *
+   * @return The result of the merge or <code>null</code> if it was not cached.
+   */
+  static CachedMerge get(String key) {
+    return merges.getIfPresent(key);
+  }
+
+  /**
+   * Caches the result of a merge. Failed merges are not cached.
+   *
+   * @param key The key of the merge, as returned by {@link #getKey(String, String, String)}.
+   * @param merged The merged document.
+   * @param resultType The type of the result.
+   */
+  static void put(String key, String merged, ResultType resultType) {
+    if (merged != null && resultType != ResultType.FAILED) {
+      merges.put(key, new CachedMerge(merged, resultType));
+    }
+  }
+}
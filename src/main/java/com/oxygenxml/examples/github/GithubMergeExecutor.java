@@ -0,0 +1,155 @@
+package com.oxygenxml.examples.github;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ro.sync.exml.workspace.api.PluginWorkspaceProvider;
+import ro.sync.merge.MergeConflictResolutionMethods;
+import ro.sync.merge.MergeResult;
+
+/**
+ * Runs the three-way merges requested by the clients on a bounded number of threads.
+ *
+ * A merge is admitted only if its estimated memory cost fits in the memory budget of the merges.
+ * Otherwise it waits for the running merges to finish, for a limited time, and is rejected if they don't.
+ */
+public class GithubMergeExecutor {
+
+  /**
+   * The estimated number of bytes of memory needed by a merge for each character of its inputs.
+   * The three documents are parsed and compared, which takes about ten times the size of their text.
+   */
+  private static final long BYTES_PER_INPUT_CHAR = 20;
+
+  /**
+   * The default number of milliseconds a merge waits to be admitted.
+   */
+  static final long DEFAULT_QUEUE_TIMEOUT_MS = 10000;
+
+  /**
+   * The number of seconds after which the clients are told to retry a rejected merge.
+   */
+  private static final int RETRY_AFTER_SECONDS = 5;
+
+  /**
+   * The threads running the merges.
+   */
+  private static volatile ExecutorService mergeThreads;
+
+  /**
+   * The memory budget of the merges, in KB.
+   */
+  private static volatile Semaphore memoryBudget;
+
+  /**
+   * The total memory budget of the merges, in KB.
+   */
+  private static volatile int memoryBudgetKb;
+
+  /**
+   * The number of milliseconds a merge waits to be admitted.
+   */
+  private static volatile long queueTimeoutMs = DEFAULT_QUEUE_TIMEOUT_MS;
+
+  static {
+    configure(getDefaultThreads(), getDefaultMemoryBudgetMb(), DEFAULT_QUEUE_TIMEOUT_MS);
+  }
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubMergeExecutor() {
+  }
+
+  /**
+   * @return The default number of threads running the merges.
+   */
+  static long getDefaultThreads() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
+  /**
+   * @return The default memory budget of the merges in MB, a quarter of the heap.
+   */
+  static long getDefaultMemoryBudgetMb() {
+    return Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+  }
+
+  /**
+   * Configures the executor. The merges in progress are not affected.
+   *
+   * @param threads The number of threads running the merges.
+   * @param memoryBudgetMb The memory budget of the merges, in MB.
+   * @param queueTimeoutMs The number of milliseconds a merge waits to be admitted.
+   */
+  static synchronized void configure(long threads, long memoryBudgetMb, long queueTimeoutMs) {
+    ExecutorService oldThreads = mergeThreads;
+    mergeThreads = Executors.newFixedThreadPool((int) Math.max(1, threads),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("github-merge-%d").build());
+    if (oldThreads != null) {
+      oldThreads.shutdown();
+    }
+
+    memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudgetMb) * 1024);
+    memoryBudget = new Semaphore(memoryBudgetKb, true);
+    GithubMergeExecutor.queueTimeoutMs = queueTimeoutMs;
+  }
+
+  /**
+   * Merges three versions of a document, keeping the left changes in case of conflicts.
+   *
+   * @param ancestor The common ancestor.
+   * @param left The version with the user changes.
+   * @param right The latest version from GitHub.
+   *
+   * @return The result of the merge.
+   *
+   * @throws MergeRejectedException If the merge could not be admitted.
+   * @throws ExecutionException If the merge failed.
+   * @throws InterruptedException If the thread was interrupted while waiting for the merge.
+   */
+  public static MergeResult merge(final String ancestor, final String left, final String right)
+      throws MergeRejectedException, ExecutionException, InterruptedException {
+    long inputChars = (long) ancestor.length() + left.length() + right.length();
+    long costKb = inputChars * BYTES_PER_INPUT_CHAR / 1024 + 1;
+
+    // Read the configuration once, it may change while we wait.
+    final Semaphore budget = memoryBudget;
+    ExecutorService threads = mergeThreads;
+    if (costKb > memoryBudgetKb) {
+      throw new MergeRejectedException("The documents are too large to be merged.", -1);
+    }
+
+    final int permits = (int) costKb;
+    if (!budget.tryAcquire(permits, queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+      throw new MergeRejectedException("The server is busy merging other documents.", RETRY_AFTER_SECONDS);
+    }
+
+    Future<MergeResult> mergeResult;
+    try {
+      mergeResult = threads.submit(new Callable<MergeResult>() {
+        public MergeResult call() {
+          try {
+            return PluginWorkspaceProvider.getPluginWorkspace()
+                .getXMLUtilAccess()
+                .threeWayAutoMerge(ancestor, left, right, MergeConflictResolutionMethods.USE_LEFT);
+          } finally {
+            // The memory is released only when the merge is done, even if nobody waits for it anymore.
+            budget.release(permits);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      budget.release(permits);
+      throw e;
+    }
+    return mergeResult.get();
+  }
+}
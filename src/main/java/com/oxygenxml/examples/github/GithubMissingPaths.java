@@ -0,0 +1,130 @@
+package com.oxygenxml.examples.github;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers for a short time the paths which GitHub reported as missing.
+ *
+ * When resolving catalogs, XIncludes, conrefs or images, the editor probes many paths which do
+ * not exist, usually several times. Like the other shared caches, the answers depend on the 
+ * access token, unless the repository is public.
+ */
+public class GithubMissingPaths {
+
+  /**
+   * The default number of seconds for which a missing path is remembered.
+   */
+  static final long DEFAULT_TTL_SECONDS = 30;
+
+  /**
+   * A set of /owner/repo/ref/path keys. The keys of private repositories end with the access token.
+   */
+  private static volatile Cache<String, Boolean> missingPaths = buildCache(DEFAULT_TTL_SECONDS);
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubMissingPaths() {
+  }
+
+  /**
+   * Sets for how long the missing paths are remembered. The remembered paths are discarded.
+   *
+   * @param ttlSeconds The number of seconds for which a missing path is remembered, 0 to disable the cache.
+   */
+  static void configure(long ttlSeconds) {
+    missingPaths = buildCache(ttlSeconds);
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param ttlSeconds The number of seconds for which a missing path is remembered.
+   *
+   * @return The cache.
+   */
+  private static Cache<String, Boolean> buildCache(long ttlSeconds) {
+    return CacheBuilder.newBuilder()
+        .concurrencyLevel(10)
+        .maximumSize(ttlSeconds > 0 ? 100000 : 0)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Computes the key of a path.
+   *
+   * @param pathPart The /owner/repo/ref/path of the file or folder.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The key of the path.
+   */
+  private static String getKey(String pathPart, String accessToken) {
+    String[] urlComponents = pathPart.split("/");
+    if (accessToken != null && urlComponents.length > 2 && 
+        !GithubRepositories.isPublic(urlComponents[1], urlComponents[2], accessToken)) {
+      return pathPart + "\n" + accessToken;
+    }
+    return pathPart;
+  }
+
+  /**
+   * @param pathPart The /owner/repo/ref/path of the file or folder.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return <code>true</code> if GitHub reported the path as missing recently.
+   */
+  static boolean isMissing(String pathPart, String accessToken) {
+    return missingPaths.getIfPresent(getKey(pathPart, accessToken)) != null;
+  }
+
+  /**
+   * Remembers that GitHub reported a path as missing.
+   *
+   * @param pathPart The /owner/repo/ref/path of the file or folder.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   */
+  static void put(String pathPart, String accessToken) {
+    missingPaths.put(getKey(pathPart, accessToken), Boolean.TRUE);
+  }
+
+  /**
+   * Forgets that a path is missing, for all the users, for example after the file was created.
+   *
+   * @param pathPart The /owner/repo/ref/path of the file or folder.
+   */
+  static void invalidate(String pathPart) {
+    Iterator<String> keys = missingPaths.asMap().keySet().iterator();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      if (key.equals(pathPart) || key.startsWith(pathPart + "\n")) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Forgets the missing paths of a folder, for all the users, for example after files were added to it.
+   *
+   * @param folderPathPart The /owner/repo/ref/path/ of the folder, ending with a slash.
+   */
+  static void invalidateFolder(String folderPathPart) {
+    Iterator<String> keys = missingPaths.asMap().keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(folderPathPart)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Forgets all the missing paths.
+   */
+  static void invalidateAll() {
+    missingPaths.invalidateAll();
+  }
+}
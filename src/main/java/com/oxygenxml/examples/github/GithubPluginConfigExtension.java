@@ -78,6 +78,16 @@ public class GithubPluginConfigExtension extends PluginConfigExtension {
     
     // Removing all access tokens to force all users to relogin
     GitHubPlugin.accessTokens.invalidateAll();
+    // The API url may have changed so the cached files and tokens may belong to a different server.
+    GithubContentCache.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubBlobs.invalidateAll();
+    GithubDiskBlobStore.invalidateAll();
+    GithubRepositories.invalidateAll();
+    GithubRefResolver.invalidateAll();
+    GithubTreeIndex.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+    GithubTokenValidator.invalidateAll();
   }
   
   /**
@@ -95,6 +105,16 @@ public class GithubPluginConfigExtension extends PluginConfigExtension {
     
     // The client_id and client_secret have changed so we need all the users to re-login.
     GitHubPlugin.accessTokens.invalidateAll();
+    // The API url may have changed so the cached files and tokens may belong to a different server.
+    GithubContentCache.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubBlobs.invalidateAll();
+    GithubDiskBlobStore.invalidateAll();
+    GithubRepositories.invalidateAll();
+    GithubRefResolver.invalidateAll();
+    GithubTreeIndex.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+    GithubTokenValidator.invalidateAll();
   }
   
   /**
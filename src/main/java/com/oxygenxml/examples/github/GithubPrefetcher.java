@@ -0,0 +1,306 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oxygenxml.examples.github.GithubRateLimitGovernor.Priority;
+
+/**
+ * Reads in advance the files referenced by a DITA map, when the map is read.
+ *
+ * The editor resolves the topics, the conrefs and the images of a map one at a time. The prefetcher
+ * reads them in parallel into the caches, so that the editor finds them there. The files are read 
+ * with the access token of the user who opened the map, from the same commit as the map, and 
+ * with a low priority, so that they never use the part of the rate limit reserved for the users.
+ * The files of a commit are read in batches with the GraphQL API, when it is available.
+ */
+public class GithubPrefetcher {
+
+  /**
+   * The default number of files read at the same time.
+   */
+  static final long DEFAULT_THREADS = 8;
+
+  /**
+   * The maximum number of files waiting to be read.
+   */
+  private static final int MAX_QUEUED_FILES = 2000;
+
+  /**
+   * The maximum number of files prefetched for a map.
+   */
+  private static final int MAX_FILES_PER_MAP = 1000;
+
+  /**
+   * The references to other files in a map: href and conref attributes.
+   */
+  private static final Pattern REFERENCE_PATTERN = 
+      Pattern.compile("\\s(?:href|conref)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubPrefetcher.class.getName());
+
+  /**
+   * The maps prefetched recently, with the access token which prefetched them.
+   */
+  private static final Cache<String, Boolean> recentMaps = CacheBuilder.newBuilder()
+      .concurrencyLevel(4)
+      .maximumSize(1000)
+      .expireAfterWrite(1, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * The threads reading the files, <code>null</code> if prefetching is disabled.
+   */
+  private static volatile ThreadPoolExecutor prefetchThreads;
+
+  static {
+    configure(DEFAULT_THREADS);
+  }
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubPrefetcher() {
+  }
+
+  /**
+   * Sets the number of files read at the same time. The files waiting to be read are not affected.
+   *
+   * @param threads The number of files read at the same time, 0 to disable prefetching.
+   */
+  static synchronized void configure(long threads) {
+    ThreadPoolExecutor oldThreads = prefetchThreads;
+    if (threads > 0) {
+      // The files which do not fit in the queue are not prefetched, the editor will read them.
+      prefetchThreads = new ThreadPoolExecutor((int) threads, (int) threads, 0, TimeUnit.MILLISECONDS, 
+          new ArrayBlockingQueue<Runnable>(MAX_QUEUED_FILES), 
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("github-prefetch-%d").build(),
+          new ThreadPoolExecutor.DiscardPolicy());
+    } else {
+      prefetchThreads = null;
+    }
+    if (oldThreads != null) {
+      oldThreads.shutdown();
+    }
+  }
+
+  /**
+   * @param urlPathPart The path of a github url.
+   *
+   * @return <code>true</code> if the file is a DITA map.
+   */
+  static boolean isMap(String urlPathPart) {
+    String lowerCasePath = urlPathPart.toLowerCase();
+    return lowerCasePath.endsWith(".ditamap") || lowerCasePath.endsWith(".bookmap");
+  }
+
+  /**
+   * Starts reading the files referenced by a map, unless it was prefetched recently.
+   * The sub-maps are prefetched in turn when they are read.
+   *
+   * @param urlPathPart The path of the map url: /$owner/$repo/$branch/$path
+   * @param commitSha The sha of the commit the map was read from, <code>null</code> if not resolved.
+   * @param content The content of the map.
+   * @param accessToken The access token of the user who opened the map.
+   */
+  static void prefetchMap(String urlPathPart, String commitSha, byte[] content, String accessToken) {
+    ThreadPoolExecutor threads = prefetchThreads;
+    String mapKey = urlPathPart + "\n" + commitSha + "\n" + accessToken;
+    if (threads == null || recentMaps.asMap().putIfAbsent(mapKey, Boolean.TRUE) != null) {
+      return;
+    }
+
+    String map;
+    try {
+      map = new String(content, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is available on all the platforms.
+      throw new IllegalStateException(e);
+    }
+
+    Set<String> targets = new LinkedHashSet<String>();
+    Matcher references = REFERENCE_PATTERN.matcher(map);
+    while (references.find() && targets.size() < MAX_FILES_PER_MAP) {
+      String reference = references.group(1) != null ? references.group(1) : references.group(2);
+      String targetPathPart = resolve(urlPathPart, reference);
+      if (targetPathPart != null) {
+        targets.add(targetPathPart);
+      }
+    }
+    if (commitSha != null && accessToken != null && GithubGraphqlReader.isAvailable(accessToken)) {
+      // The files of a commit can be read in batches.
+      List<String> batch = new ArrayList<String>();
+      for (String targetPathPart : targets) {
+        if (GithubContentCache.get(getCommitPathPart(targetPathPart, commitSha)) == null) {
+          batch.add(targetPathPart);
+        }
+        if (batch.size() == GithubGraphqlReader.MAX_BATCH_SIZE) {
+          prefetchBatch(batch, commitSha, accessToken);
+          batch = new ArrayList<String>();
+        }
+      }
+      prefetchBatch(batch, commitSha, accessToken);
+    } else {
+      for (String targetPathPart : targets) {
+        prefetchLater(targetPathPart, commitSha, accessToken);
+      }
+    }
+  }
+
+  /**
+   * Starts reading files of a commit with a single GraphQL request, the ones which it cannot read are read
+   * one by one.
+   *
+   * @param urlPathParts The paths of the files urls: /$owner/$repo/$branch/$path
+   * @param commitSha The sha of the commit to read the files from.
+   * @param accessToken The access token of the user.
+   */
+  private static void prefetchBatch(final List<String> urlPathParts, final String commitSha, final String accessToken) {
+    ThreadPoolExecutor threads = prefetchThreads;
+    if (threads == null || urlPathParts.isEmpty()) {
+      return;
+    }
+    threads.execute(new Runnable() {
+      public void run() {
+        Map<String, byte[]> contents = GithubGraphqlReader.readFiles(commitSha, urlPathParts, accessToken);
+        for (String urlPathPart : urlPathParts) {
+          String commitPathPart = getCommitPathPart(urlPathPart, commitSha);
+          if (!contents.containsKey(urlPathPart)) {
+            prefetchLater(urlPathPart, commitSha, accessToken);
+          } else if (contents.get(urlPathPart) == null) {
+            GithubMissingPaths.put(commitPathPart, accessToken);
+          } else {
+            GithubContentCache.putCommitContent(commitPathPart, contents.get(urlPathPart));
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Starts reading a file into the caches.
+   *
+   * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+   * @param commitSha The sha of the commit to read the file from, <code>null</code> to read it from the branch.
+   * @param accessToken The access token of the user.
+   */
+  private static void prefetchLater(final String urlPathPart, final String commitSha, final String accessToken) {
+    ThreadPoolExecutor threads = prefetchThreads;
+    if (threads != null) {
+      threads.execute(new Runnable() {
+        public void run() {
+          prefetch(urlPathPart, commitSha, accessToken);
+        }
+      });
+    }
+  }
+
+  /**
+   * @param urlPathPart The path of a file url: /$owner/$repo/$branch/$path
+   * @param commitSha The sha of a commit of the branch.
+   *
+   * @return The path of the file in the commit: /$owner/$repo/$commitSha/$path
+   */
+  private static String getCommitPathPart(String urlPathPart, String commitSha) {
+    String[] urlComponents = urlPathPart.split("/", 5);
+    return "/" + urlComponents[1] + "/" + urlComponents[2] + "/" + commitSha + "/" + urlComponents[4];
+  }
+
+  /**
+   * Resolves a reference found in a map.
+   *
+   * @param mapPathPart The path of the map url.
+   * @param reference The value of the href or conref attribute.
+   *
+   * @return The path of the referenced file or <code>null</code> if it is not a file of the same branch.
+   */
+  static String resolve(String mapPathPart, String reference) {
+    String href = reference.replace("&amp;", "&").replace("&apos;", "'").replace("&quot;", "\"")
+        .replace("&lt;", "<").replace("&gt;", ">").trim();
+    int fragmentIndex = href.indexOf('#');
+    if (fragmentIndex != -1) {
+      href = href.substring(0, fragmentIndex);
+    }
+    if (href.isEmpty() || href.startsWith("/")) {
+      return null;
+    }
+
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] mapComponents = mapPathPart.split("/");
+    if (mapComponents.length < 5) {
+      return null;
+    }
+    String branchPrefix = "/" + mapComponents[1] + "/" + mapComponents[2] + "/" + mapComponents[3] + "/";
+    try {
+      // The path of the map is already URL-encoded, like the references.
+      URI target = new URI("github://host" + mapPathPart).resolve(new URI(href));
+      if (target.getScheme() == null || !"github".equals(target.getScheme()) || !"host".equals(target.getHost())) {
+        // A link to another site.
+        return null;
+      }
+      String targetPath = target.getRawPath();
+      return targetPath.startsWith(branchPrefix) && !targetPath.contains("/../") ? targetPath : null;
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads a file into the caches.
+   *
+   * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+   * @param commitSha The sha of the commit to read the file from, <code>null</code> to read it from the branch.
+   * @param accessToken The access token of the user.
+   */
+  private static void prefetch(String urlPathPart, String commitSha, String accessToken) {
+    String commitPathPart = null;
+    if (commitSha != null) {
+      commitPathPart = getCommitPathPart(urlPathPart, commitSha);
+      if (GithubContentCache.get(commitPathPart) != null) {
+        // Already read.
+        return;
+      }
+    }
+    try {
+      URL apiUrl = new URL(GithubUrlStreamHandler.getApiUrlString(commitPathPart != null ? commitPathPart : urlPathPart));
+      GithubUrlConnection connection = new GithubUrlConnection(
+          GithubHttpClient.open(apiUrl, accessToken, Priority.LOW), accessToken, urlPathPart, commitPathPart);
+      // The problems with the saves of the user are left for the editor to report.
+      InputStream content = connection.openContent();
+      try {
+        // The content is now cached, it is not needed here.
+        byte[] buffer = new byte[8192];
+        while (content.read(buffer) != -1) {
+          // Draining the content.
+        }
+      } finally {
+        content.close();
+      }
+    } catch (IOException e) {
+      // The editor will report the problem if it needs the file.
+      logger.debug("Could not prefetch " + urlPathPart + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,384 @@
+package com.oxygenxml.examples.github;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Keeps track of the GitHub API rate limit budget of each access token and of the OAuth application,
+ * as reported by the X-RateLimit-* and Retry-After response headers.
+ *
+ * Requests are refused without contacting GitHub when the budget is exhausted. When it runs low,
+ * only the requests needed by the users are made and the low priority ones, like background checks
+ * and prefetching, are refused. When GitHub asks us to back off (secondary rate limits), the requests
+ * wait for a short while, or are refused if the wait would be too long.
+ *
+ * A request is charged to the budget when it is sent, not when its connection is opened, and until
+ * its response arrives it counts as one of the remaining requests already used.
+ *
+ * The REST and the GraphQL APIs have separate rate limits, so each token has a budget for each of them.
+ */
+public class GithubRateLimitGovernor {
+
+  /**
+   * The priority of a request.
+   */
+  public enum Priority {
+    /**
+     * A request which a user waits for.
+     */
+    HIGH,
+    /**
+     * A request which can be skipped, like a background check or a prefetch.
+     */
+    LOW
+  }
+
+  /**
+   * The default percentage of the budget reserved for the high priority requests.
+   */
+  static final long DEFAULT_RESERVE_PERCENT = 10;
+
+  /**
+   * The default number of milliseconds a high priority request waits when GitHub asks us to back off.
+   */
+  static final long DEFAULT_MAX_WAIT_MS = 5000;
+
+  /**
+   * The key of the budget of the OAuth application, used by the requests without access token.
+   */
+  private static final String APP_BUDGET = "app";
+
+  /**
+   * The rate limit resource of the REST API.
+   */
+  static final String CORE_RESOURCE = "core";
+
+  /**
+   * The rate limit resource of the GraphQL API.
+   */
+  static final String GRAPHQL_RESOURCE = "graphql";
+
+  /**
+   * The response code used by GitHub for secondary rate limits.
+   */
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * The rate limit budget of a token or of the application.
+   */
+  static class Budget {
+    /**
+     * The number of requests allowed per rate limit window, -1 if not known.
+     */
+    volatile long limit = -1;
+    /**
+     * The number of requests remaining in the current window, -1 if not known.
+     */
+    volatile long remaining = -1;
+    /**
+     * The time when the current window ends, in milliseconds since the epoch.
+     */
+    volatile long resetAt;
+    /**
+     * The time until which GitHub asked us not to make requests, in milliseconds since the epoch.
+     */
+    volatile long backoffUntil;
+    /**
+     * The number of requests sent whose response was not yet received.
+     */
+    final AtomicLong inFlight = new AtomicLong();
+  }
+
+  /**
+   * A governed request whose response was not yet recorded.
+   */
+  private static class PendingRequest {
+    /**
+     * The key of the budget charged for the request.
+     */
+    final String budgetKey;
+    /**
+     * The rate limit resource of the request.
+     */
+    final String resource;
+    /**
+     * The priority of the request.
+     */
+    final Priority priority;
+    /**
+     * The budget charged for the request, <code>null</code> while it is not sent.
+     */
+    volatile Budget chargedBudget;
+
+    /**
+     * Constructor.
+     *
+     * @param budgetKey The key of the budget charged for the request.
+     * @param resource The rate limit resource of the request.
+     * @param priority The priority of the request.
+     */
+    PendingRequest(String budgetKey, String resource, Priority priority) {
+      this.budgetKey = budgetKey;
+      this.resource = resource;
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * A map of <access_token or "app" and resource, budget>.
+   */
+  private static final Cache<String, Budget> budgets = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(10000)
+      .expireAfterAccess(2, TimeUnit.HOURS)
+      .build();
+
+  /**
+   * The governed connections whose response was not yet recorded. The connections which are never 
+   * used are forgotten when they are garbage collected.
+   */
+  private static final Cache<HttpURLConnection, PendingRequest> pendingRequests = CacheBuilder.newBuilder()
+      .concurrencyLevel(16)
+      .weakKeys()
+      .removalListener(new RemovalListener<HttpURLConnection, PendingRequest>() {
+        @Override
+        public void onRemoval(RemovalNotification<HttpURLConnection, PendingRequest> notification) {
+          Budget budget = notification.getValue().chargedBudget;
+          if (budget != null) {
+            // The request is not in flight anymore.
+            budget.inFlight.decrementAndGet();
+          }
+        }
+      })
+      .build();
+
+  /**
+   * The percentage of the budget reserved for the high priority requests.
+   */
+  private static volatile long reservePercent = DEFAULT_RESERVE_PERCENT;
+
+  /**
+   * The number of milliseconds a high priority request waits when GitHub asks us to back off.
+   */
+  private static volatile long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubRateLimitGovernor() {
+  }
+
+  /**
+   * Configures the governor.
+   *
+   * @param reservePercent The percentage of the budget reserved for the high priority requests.
+   * @param maxWaitMs The number of milliseconds a high priority request waits when GitHub asks us to back off.
+   */
+  static void configure(long reservePercent, long maxWaitMs) {
+    GithubRateLimitGovernor.reservePercent = reservePercent;
+    GithubRateLimitGovernor.maxWaitMs = maxWaitMs;
+  }
+
+  /**
+   * Forgets the budgets of all the tokens.
+   */
+  static void invalidateAll() {
+    budgets.invalidateAll();
+  }
+
+  /**
+   * @param accessToken The access token used for a request, <code>null</code> if none.
+   * @param resource The rate limit resource of the request.
+   *
+   * @return The key of the budget charged for the request.
+   */
+  private static String getBudgetKey(String accessToken, String resource) {
+    return (accessToken != null ? "token " + accessToken : APP_BUDGET) + " " + resource;
+  }
+
+  /**
+   * @param budgetKey The key of a budget.
+   *
+   * @return The budget, created if it did not exist.
+   */
+  private static Budget getBudget(String budgetKey) {
+    Budget budget = budgets.asMap().get(budgetKey);
+    if (budget == null) {
+      Budget newBudget = new Budget();
+      budget = budgets.asMap().putIfAbsent(budgetKey, newBudget);
+      if (budget == null) {
+        budget = newBudget;
+      }
+    }
+    return budget;
+  }
+
+  /**
+   * Registers a connection opened to the GitHub API. Nothing is charged to the budget yet.
+   *
+   * @param connection The connection of the request, not yet connected.
+   * @param accessToken The access token used for the request, <code>null</code> if none.
+   * @param priority The priority of the request.
+   */
+  static void register(HttpURLConnection connection, String accessToken, Priority priority) {
+    String resource = connection.getURL().getPath().endsWith("/graphql") ? GRAPHQL_RESOURCE : CORE_RESOURCE;
+    pendingRequests.put(connection, new PendingRequest(getBudgetKey(accessToken, resource), resource, priority));
+  }
+
+  /**
+   * Called right before a request is sent to the GitHub API. The request is charged to its budget, 
+   * unless it was already sent.
+   *
+   * @param connection The connection of the request.
+   *
+   * @throws RateLimitExceededException If the request should not be made.
+   */
+  static void beforeSend(HttpURLConnection connection) throws RateLimitExceededException {
+    PendingRequest request = pendingRequests.getIfPresent(connection);
+    if (request == null || request.chargedBudget != null) {
+      // Not a governed request or already sent.
+      return;
+    }
+    Budget budget = getBudget(request.budgetKey);
+    
+    long now = System.currentTimeMillis();
+    long backoffUntil = budget.backoffUntil;
+    if (backoffUntil > now) {
+      if (request.priority == Priority.LOW || backoffUntil - now > maxWaitMs) {
+        pendingRequests.invalidate(connection);
+        throw new RateLimitExceededException(backoffUntil);
+      }
+      try {
+        Thread.sleep(backoffUntil - now);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        pendingRequests.invalidate(connection);
+        throw new RateLimitExceededException(backoffUntil);
+      }
+    }
+
+    if (budget.resetAt > now && budget.remaining != -1) {
+      // The requests already sent will use part of the remaining budget.
+      long remaining = budget.remaining - budget.inFlight.get();
+      long reserve = request.priority == Priority.LOW ? budget.limit * reservePercent / 100 : 0;
+      if (remaining <= reserve) {
+        pendingRequests.invalidate(connection);
+        throw new RateLimitExceededException(budget.resetAt);
+      }
+    }
+    
+    budget.inFlight.incrementAndGet();
+    request.chargedBudget = budget;
+  }
+
+  /**
+   * Called after receiving the response of a request to the GitHub API.
+   *
+   * @param connection The connection of the request.
+   * @param responseCode The response code.
+   *
+   * @return The time when requests can be made again if the request was rejected because of
+   * the rate limit, in milliseconds since the epoch, otherwise <code>-1</code>.
+   */
+  static long onResponse(HttpURLConnection connection, int responseCode) {
+    PendingRequest request = pendingRequests.asMap().remove(connection);
+    if (request == null || request.chargedBudget == null) {
+      // Not a governed request or already recorded.
+      return -1;
+    }
+    Budget budget = request.chargedBudget;
+
+    long remaining = getLongHeader(connection, "X-RateLimit-Remaining");
+    long reset = getLongHeader(connection, "X-RateLimit-Reset");
+    long limit = getLongHeader(connection, "X-RateLimit-Limit");
+    // Other limits, like the search one, should not be mistaken for the one of the budget.
+    String resource = connection.getHeaderField("X-RateLimit-Resource");
+    boolean sameResource = resource != null ? resource.equals(request.resource) 
+        : CORE_RESOURCE.equals(request.resource);
+    if (sameResource && remaining != -1 && reset != -1) {
+      budget.remaining = remaining;
+      budget.resetAt = TimeUnit.SECONDS.toMillis(reset);
+    }
+    if (sameResource && limit != -1) {
+      budget.limit = limit;
+    }
+
+    long retryAt = -1;
+    if (responseCode == HttpURLConnection.HTTP_FORBIDDEN || responseCode == HTTP_TOO_MANY_REQUESTS) {
+      long retryAfter = getLongHeader(connection, "Retry-After");
+      if (retryAfter != -1) {
+        // A secondary rate limit.
+        retryAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryAfter);
+        budget.backoffUntil = retryAt;
+      } else if (remaining == 0) {
+        // The primary rate limit.
+        retryAt = TimeUnit.SECONDS.toMillis(reset);
+      }
+    }
+    return retryAt;
+  }
+
+  /**
+   * Called when a request to the GitHub API failed without a response, so that it is not counted
+   * as in flight anymore.
+   *
+   * @param connection The connection of the request.
+   */
+  static void onFailure(HttpURLConnection connection) {
+    pendingRequests.invalidate(connection);
+  }
+
+  /**
+   * Called when GitHub reported in the body of a response that the rate limit of a token was exceeded, 
+   * like the GraphQL API does. The requests of the token to the same API are refused until the limit is reset.
+   *
+   * @param accessToken The access token used for the request, <code>null</code> if none.
+   * @param resource The rate limit resource of the request.
+   * @param retryAt The time when requests can be made again, in milliseconds since the epoch.
+   */
+  static void onRateLimited(String accessToken, String resource, long retryAt) {
+    Budget budget = getBudget(getBudgetKey(accessToken, resource));
+    budget.resetAt = retryAt;
+    budget.remaining = 0;
+  }
+
+  /**
+   * @param accessToken The access token, <code>null</code> if none.
+   * @param resource The rate limit resource.
+   *
+   * @return <code>true</code> if no request of the token to the API would be sent right now.
+   */
+  static boolean isExhausted(String accessToken, String resource) {
+    Budget budget = budgets.getIfPresent(getBudgetKey(accessToken, resource));
+    if (budget == null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    return budget.backoffUntil > now || 
+        (budget.resetAt > now && budget.remaining != -1 && budget.remaining - budget.inFlight.get() <= 0);
+  }
+
+  /**
+   * @param connection The connection.
+   * @param name The name of the header.
+   *
+   * @return The numeric value of the header or <code>-1</code> if it is missing.
+   */
+  static long getLongHeader(HttpURLConnection connection, String name) {
+    String value = connection.getHeaderField(name);
+    if (value != null) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        // Treated as missing.
+      }
+    }
+    return -1;
+  }
+}
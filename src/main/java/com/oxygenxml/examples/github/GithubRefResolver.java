@@ -0,0 +1,219 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Resolves branches to the sha of their head commit, remembering the result for a short time.
+ *
+ * The files of a commit never change, so the files read at a resolved commit can be cached 
+ * without asking GitHub whether they changed. Also, the files opened together, like a map and 
+ * its topics, are read from the same commit.
+ *
+ * After the TTL, the branch is resolved again with a conditional request, which does not count 
+ * against the rate limit if the branch did not move. Like the other requests, the resolution depends
+ * on the access token, unless the repository is public. So a user can only read a commit of a
+ * repository to which GitHub gave them access.
+ */
+public class GithubRefResolver {
+
+  /**
+   * The default number of milliseconds for which a resolved branch is used without asking GitHub.
+   */
+  static final long DEFAULT_TTL_MS = 10000;
+
+  /**
+   * The media type used to receive only the sha of a commit.
+   */
+  private static final String SHA_MEDIA_TYPE = "application/vnd.github.sha";
+
+  /**
+   * The pattern of a commit sha.
+   */
+  private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-f]{40}");
+
+  /**
+   * The head commit of a branch, as it was last resolved.
+   */
+  private static class ResolvedRef {
+    /**
+     * The sha of the head commit.
+     */
+    final String sha;
+
+    /**
+     * The ETag of the response which resolved the branch.
+     */
+    final String etag;
+
+    /**
+     * The time when GitHub last confirmed the head commit.
+     */
+    final long checkedAt;
+
+    /**
+     * Constructor.
+     *
+     * @param sha The sha of the head commit.
+     * @param etag The ETag of the response which resolved the branch.
+     * @param checkedAt The time when GitHub last confirmed the head commit.
+     */
+    ResolvedRef(String sha, String etag, long checkedAt) {
+      this.sha = sha;
+      this.etag = etag;
+      this.checkedAt = checkedAt;
+    }
+  }
+
+  /**
+   * A map of <owner/repo/branch, head commit>. The keys of private repositories end with the access token.
+   */
+  private static final Cache<String, ResolvedRef> refs = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(10000)
+      .expireAfterWrite(1, TimeUnit.HOURS)
+      .build();
+
+  /**
+   * The resolutions in progress.
+   */
+  private static final SingleFlight<String, ResolvedRef> inFlightResolutions = new SingleFlight<String, ResolvedRef>();
+
+  /**
+   * The number of milliseconds for which a resolved branch is used without asking GitHub.
+   */
+  private static volatile long ttlMs = DEFAULT_TTL_MS;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubRefResolver() {
+  }
+
+  /**
+   * Sets for how long a resolved branch is used without asking GitHub.
+   *
+   * @param ttlMs The number of milliseconds, 0 to ask GitHub every time.
+   */
+  static void configure(long ttlMs) {
+    GithubRefResolver.ttlMs = ttlMs;
+  }
+
+  /**
+   * Resolves a branch to the sha of its head commit.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param branch The URL-encoded branch name. A commit sha is also checked with GitHub, 
+   * since the resolution grants access to the files of the commit.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The sha of the head commit or <code>null</code> if the branch could not be resolved.
+   */
+  static String resolve(final String owner, final String repo, final String branch, final String accessToken) {
+    String key = owner + "/" + repo + "/" + branch;
+    if (accessToken != null && !GithubRepositories.isPublic(owner, repo, accessToken)) {
+      key += "\n" + accessToken;
+    }
+    final ResolvedRef resolvedRef = refs.getIfPresent(key);
+    if (resolvedRef != null && System.currentTimeMillis() - resolvedRef.checkedAt < ttlMs) {
+      return resolvedRef.sha;
+    }
+
+    final String cacheKey = key;
+    try {
+      ResolvedRef newRef = inFlightResolutions.execute(key, new Callable<ResolvedRef>() {
+        public ResolvedRef call() throws IOException {
+          return fetch(cacheKey, owner + "/" + repo + "/commits/" + branch, resolvedRef, accessToken);
+        }
+      });
+      return newRef != null ? newRef.sha : null;
+    } catch (IOException e) {
+      // The branch will be used directly.
+      return null;
+    }
+  }
+
+  /**
+   * Asks GitHub for the head commit of a branch.
+   *
+   * @param key The key of the branch in the cache.
+   * @param commitPath The owner/repo/commits/branch path of the API call.
+   * @param resolvedRef The head commit as it was last resolved, <code>null</code> if not known.
+   * @param accessToken The access token of the user, can be <code>null</code>.
+   *
+   * @return The head commit or <code>null</code> if the branch does not exist.
+   *
+   * @throws IOException If GitHub could not be asked.
+   */
+  private static ResolvedRef fetch(String key, String commitPath, ResolvedRef resolvedRef, String accessToken) 
+      throws IOException {
+    HttpURLConnection connection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + "/repos/" + 
+        commitPath + GithubUtil.getClientCredentialsQuery("?")), accessToken);
+    connection.setRequestProperty("Accept", SHA_MEDIA_TYPE);
+    if (resolvedRef != null && resolvedRef.etag != null) {
+      connection.setRequestProperty("If-None-Match", resolvedRef.etag);
+    }
+
+    int responseCode = GithubHttpClient.getResponseCode(connection);
+    ResolvedRef newRef;
+    if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && resolvedRef != null) {
+      GithubHttpClient.release(connection);
+      newRef = new ResolvedRef(resolvedRef.sha, resolvedRef.etag, System.currentTimeMillis());
+    } else if (responseCode == HttpURLConnection.HTTP_OK) {
+      InputStream body = GithubHttpClient.getInputStream(connection);
+      String sha;
+      try {
+        sha = IOUtils.toString(body, "UTF-8").trim();
+      } finally {
+        body.close();
+      }
+      if (!SHA_PATTERN.matcher(sha).matches()) {
+        throw new IOException("Unexpected commit sha for " + commitPath);
+      }
+      newRef = new ResolvedRef(sha, connection.getHeaderField("ETag"), System.currentTimeMillis());
+    } else {
+      GithubHttpClient.release(connection);
+      refs.invalidate(key);
+      return null;
+    }
+    refs.put(key, newRef);
+    return newRef;
+  }
+
+  /**
+   * Forgets the head commit of a branch, for all the users, for example after a commit on the branch.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param branch The URL-encoded branch name.
+   */
+  static void invalidate(String owner, String repo, String branch) {
+    String key = owner + "/" + repo + "/" + branch;
+    Iterator<String> keys = refs.asMap().keySet().iterator();
+    while (keys.hasNext()) {
+      String refKey = keys.next();
+      if (refKey.equals(key) || refKey.startsWith(key + "\n")) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Forgets all the resolved branches.
+   */
+  static void invalidateAll() {
+    refs.invalidateAll();
+  }
+}
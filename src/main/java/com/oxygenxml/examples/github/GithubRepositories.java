@@ -0,0 +1,156 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers which repositories are public, shared between all the sessions,
+ * and which repositories each access token can see.
+ *
+ * The results of requests for public repositories do not depend on the access token
+ * which made them, so they can be shared between the users.
+ */
+public class GithubRepositories {
+
+  /**
+   * A map of <owner/repo, is public>, filled only with the answers given by GitHub.
+   */
+  private static final Cache<String, Boolean> publicRepos = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(10000)
+      .expireAfterWrite(1, TimeUnit.HOURS)
+      .build();
+
+  /**
+   * A map of <owner/repo + access token, has access>, filled only with the answers given by GitHub.
+   * The access of a user may be revoked, so it is remembered for a shorter time.
+   */
+  private static final Cache<String, Boolean> accessibleRepos = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(100000)
+      .expireAfterWrite(5, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * A set of owner/repo + access token keys of the repositories which GitHub did not show to the token,
+   * because they do not exist or are private. The repository may be created or shared soon, 
+   * so this is remembered only for a short time.
+   */
+  private static final Cache<String, Boolean> hiddenRepos = CacheBuilder.newBuilder()
+      .concurrencyLevel(10)
+      .maximumSize(100000)
+      .expireAfterWrite(1, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * The repository lookups in progress.
+   */
+  private static final SingleFlight<String, Boolean> inFlightLookups = new SingleFlight<String, Boolean>();
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubRepositories() {
+  }
+
+  /**
+   * Checks whether a repository is public, asking GitHub if this is not known.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param accessToken The access token used if GitHub must be asked, can be <code>null</code>.
+   *
+   * @return <code>true</code> if the repository is known to be public.
+   */
+  static boolean isPublic(String owner, String repo, String accessToken) {
+    String key = owner + "/" + repo;
+    Boolean isPublic = publicRepos.getIfPresent(key);
+    if (isPublic == null && hiddenRepos.getIfPresent(key + "\n" + accessToken) == null) {
+      try {
+        lookup(key, accessToken);
+      } catch (IOException e) {
+        // We will find out next time.
+      }
+      isPublic = publicRepos.getIfPresent(key);
+    }
+    return isPublic != null && isPublic;
+  }
+
+  /**
+   * Checks whether an access token can see a repository, asking GitHub if this is not known.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param accessToken The access token, can be <code>null</code>.
+   *
+   * @return <code>true</code> if the repository can be seen with the token.
+   *
+   * @throws IOException If GitHub could not be asked.
+   */
+  static boolean hasAccess(String owner, String repo, String accessToken) throws IOException {
+    String key = owner + "/" + repo;
+    if (Boolean.TRUE.equals(publicRepos.getIfPresent(key))) {
+      return true;
+    }
+    if (hiddenRepos.getIfPresent(key + "\n" + accessToken) != null) {
+      return false;
+    }
+    Boolean hasAccess = accessibleRepos.getIfPresent(key + "\n" + accessToken);
+    if (hasAccess == null) {
+      hasAccess = lookup(key, accessToken);
+    }
+    return hasAccess;
+  }
+
+  /**
+   * Asks GitHub about a repository, remembering whether it is public and whether the access token can see it.
+   *
+   * @param key The owner/repo of the repository.
+   * @param accessToken The access token, can be <code>null</code>.
+   *
+   * @return <code>true</code> if the repository can be seen with the token.
+   *
+   * @throws IOException If GitHub could not be asked.
+   */
+  private static boolean lookup(final String key, final String accessToken) throws IOException {
+    // The answer depends on the token, so only the lookups made with the same token are shared.
+    return inFlightLookups.execute(key + "\n" + accessToken, new Callable<Boolean>() {
+      public Boolean call() throws IOException {
+        HttpURLConnection connection = GithubHttpClient.open(
+            new URL(GithubUtil.getApiBaseUrl() + "/repos/" + key + GithubUtil.getClientCredentialsQuery("?")), 
+            accessToken);
+        connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+        int responseCode = GithubHttpClient.getResponseCode(connection);
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+          boolean isPublic = !GithubUtil.parseRepositoryResult(GithubHttpClient.getInputStream(connection)).isPrivate;
+          publicRepos.put(key, isPublic);
+          accessibleRepos.put(key + "\n" + accessToken, true);
+          return true;
+        } else {
+          GithubHttpClient.release(connection);
+          if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            // Either the repository does not exist or it is private and the user does not have access.
+            hiddenRepos.put(key + "\n" + accessToken, Boolean.TRUE);
+            return false;
+          }
+          throw new IOException(responseCode + " when looking up repository " + key);
+        }
+      }
+    });
+  }
+
+  /**
+   * Forgets all the repositories.
+   */
+  static void invalidateAll() {
+    publicRepos.invalidateAll();
+    accessibleRepos.invalidateAll();
+    hiddenRepos.invalidateAll();
+  }
+}
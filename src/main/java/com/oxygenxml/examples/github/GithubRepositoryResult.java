@@ -0,0 +1,19 @@
+package com.oxygenxml.examples.github;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Class used when parsing the github api repository results.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GithubRepositoryResult {
+  @JsonProperty("full_name")
+  public String fullName;
+  
+  @JsonProperty("private")
+  public boolean isPrivate;
+  
+  @JsonProperty("default_branch")
+  public String defaultBranch;
+}
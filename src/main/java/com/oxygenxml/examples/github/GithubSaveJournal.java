@@ -0,0 +1,650 @@
+package com.oxygenxml.examples.github;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Acknowledges the saves as soon as they are written to a local journal, and commits them to GitHub
+ * in the background.
+ *
+ * Every save is written to its own journal file, which is synced to the disk before the save returns.
+ * A flusher thread commits the journaled saves in order, a short while after they were made,
+ * so that successive saves of the same file are committed once, and files saved together on a branch
+ * are committed together. The files are deleted once committed, the ones left after a restart are
+ * committed again. Until then, the files are read from the journal.
+ *
+ * A save is not committed if the file changed on GitHub since the author opened it. The saves which cannot
+ * be committed are kept in the journal folder with the ".failed" extension, and the author is told about
+ * them on their next request. The commits which may succeed later are tried again, without delaying the others.
+ */
+public class GithubSaveJournal {
+
+  /**
+   * The default number of milliseconds during which the saves are collected before they are committed.
+   */
+  static final long DEFAULT_FLUSH_DELAY_MS = 1000;
+
+  /**
+   * The number of times a commit is tried before the save is reported as failed.
+   */
+  private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+  /**
+   * The extension of the journal files.
+   */
+  private static final String ENTRY_SUFFIX = ".entry";
+
+  /**
+   * The extension of the journal files being written.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * The extension of the saves which could not be committed.
+   */
+  private static final String FAILED_SUFFIX = ".failed";
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubSaveJournal.class.getName());
+
+  /**
+   * A save written to the journal.
+   */
+  private static class Entry {
+    /**
+     * The journal file.
+     */
+    final File file;
+
+    /**
+     * The path of the file url: /$owner/$repo/$branch/$path
+     */
+    final String urlPathPart;
+
+    /**
+     * The access token of the author.
+     */
+    final String accessToken;
+
+    /**
+     * The position of the content in the journal file, after the header.
+     */
+    final long contentOffset;
+
+    /**
+     * The blob sha of the file the author saved over, <code>null</code> if not known.
+     * It changes when a previous save of the file is committed.
+     */
+    volatile String baseSha;
+
+    /**
+     * The number of failed commits of the save. Only used by the flusher.
+     */
+    int attempts;
+
+    /**
+     * The time when the commit of the save can be tried again, in milliseconds since the epoch.
+     * Only used by the flusher.
+     */
+    long retryAt;
+
+    /**
+     * Constructor.
+     *
+     * @param file The journal file.
+     * @param urlPathPart The path of the file url.
+     * @param accessToken The access token of the author.
+     * @param baseSha The blob sha of the file the author saved over, <code>null</code> if not known.
+     * @param contentOffset The position of the content in the journal file.
+     */
+    Entry(File file, String urlPathPart, String accessToken, String baseSha, long contentOffset) {
+      this.file = file;
+      this.urlPathPart = urlPathPart;
+      this.accessToken = accessToken;
+      this.baseSha = baseSha;
+      this.contentOffset = contentOffset;
+    }
+
+    /**
+     * @return The saved content.
+     *
+     * @throws IOException If the journal file could not be read.
+     */
+    InputStream openContent() throws IOException {
+      InputStream content = new FileInputStream(file);
+      IOUtils.skipFully(content, contentOffset);
+      return content;
+    }
+  }
+
+  /**
+   * The folder of the journal, <code>null</code> if the saves are committed before they return.
+   */
+  private static volatile File folder;
+
+  /**
+   * The number of milliseconds during which the saves are collected before they are committed.
+   */
+  private static volatile long flushDelayMs = DEFAULT_FLUSH_DELAY_MS;
+
+  /**
+   * The sequence number of the last journal file.
+   */
+  private static final AtomicLong lastSequence = new AtomicLong();
+
+  /**
+   * The saves waiting to be committed, in order.
+   */
+  private static final BlockingQueue<Entry> pendingEntries = new LinkedBlockingQueue<Entry>();
+
+  /**
+   * The last save of every file not yet committed, by url path and access token. Its lock is held
+   * while the base sha of a save is chosen.
+   */
+  private static final ConcurrentMap<String, Entry> latestEntries = new ConcurrentHashMap<String, Entry>();
+
+  /**
+   * The messages of the saves which could not be committed, by the access token of their authors.
+   */
+  private static final Cache<String, String> failures = CacheBuilder.newBuilder()
+      .concurrencyLevel(4)
+      .maximumSize(10000)
+      .expireAfterWrite(1, TimeUnit.DAYS)
+      .build();
+
+  /**
+   * The thread which commits the saves, <code>null</code> if not started yet.
+   */
+  private static Thread flusher;
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubSaveJournal() {
+  }
+
+  /**
+   * Enables or disables the journal. The saves left in the journal folder are committed again.
+   *
+   * @param folder The folder of the journal, <code>null</code> to commit the saves before they return.
+   * @param flushDelayMs The number of milliseconds during which the saves are collected before they are committed.
+   */
+  static synchronized void configure(File folder, long flushDelayMs) {
+    GithubSaveJournal.flushDelayMs = flushDelayMs;
+    if (folder == null) {
+      // The saves already in the journal are still committed.
+      GithubSaveJournal.folder = null;
+      return;
+    }
+    try {
+      // The journal holds access tokens, only the user running the server may read it.
+      GithubUtil.createPrivateFolder(folder);
+    } catch (IOException e) {
+      logger.error("Could not create the save journal folder, saves are committed directly: " + folder + 
+          ", " + e.getMessage());
+      GithubSaveJournal.folder = null;
+      return;
+    }
+    if (!folder.equals(GithubSaveJournal.folder)) {
+      replay(folder);
+    }
+    GithubSaveJournal.folder = folder;
+
+    if (flusher == null) {
+      flusher = new Thread(new Runnable() {
+        public void run() {
+          flushForever();
+        }
+      }, "github-save-journal");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+  }
+
+  /**
+   * Queues the saves left in a journal folder, in the order in which they were made.
+   *
+   * @param folder The folder of the journal.
+   */
+  private static void replay(File folder) {
+    File[] files = folder.listFiles();
+    if (files == null) {
+      return;
+    }
+    // The names start with the sequence number, padded so that they sort in order.
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(TEMP_SUFFIX)) {
+        // The save did not return, so the author was not told that it succeeded.
+        file.delete();
+      } else if (name.endsWith(ENTRY_SUFFIX)) {
+        try {
+          lastSequence.set(Math.max(lastSequence.get(), Long.parseLong(name.substring(0, name.indexOf('.')))));
+          Entry entry = readEntry(file);
+          latestEntries.put(getEntryKey(entry.urlPathPart, entry.accessToken), entry);
+          pendingEntries.add(entry);
+        } catch (Exception e) {
+          logger.error("Could not replay the save " + file + ": " + e.getMessage());
+          file.renameTo(new File(folder, name + FAILED_SUFFIX));
+        }
+      }
+    }
+    if (!pendingEntries.isEmpty()) {
+      logger.info("Committing " + pendingEntries.size() + " saves left in the journal.");
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the saves are written to the journal.
+   */
+  static boolean isEnabled() {
+    return folder != null;
+  }
+
+  /**
+   * Writes a save to the journal. The save is committed later.
+   *
+   * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+   * @param accessToken The access token of the author.
+   * @param content The saved content. It is closed by this method.
+   *
+   * @throws IOException If the save could not be written to the disk.
+   */
+  static void append(String urlPathPart, String accessToken, InputStream content) throws IOException {
+    File journalFolder = folder;
+    if (journalFolder == null) {
+      content.close();
+      throw new IOException("The save journal is not enabled");
+    }
+    String name = String.format("%020d", lastSequence.incrementAndGet()) + ENTRY_SUFFIX;
+    File file = new File(journalFolder, name);
+    File tempFile = new File(journalFolder, name + TEMP_SUFFIX);
+
+    String entryKey = getEntryKey(urlPathPart, accessToken);
+    Entry previousEntry;
+    String baseSha;
+    synchronized (latestEntries) {
+      // The author saves over the previous save, if it was not committed yet.
+      previousEntry = latestEntries.get(entryKey);
+      baseSha = previousEntry != null ? previousEntry.baseSha : GithubBlobShas.get(urlPathPart);
+    }
+
+    Map<String, String> header = new LinkedHashMap<String, String>();
+    header.put("url", urlPathPart);
+    if (accessToken != null) {
+      header.put("token", accessToken);
+    }
+    if (baseSha != null) {
+      header.put("sha", baseSha);
+    }
+    byte[] headerBytes = (GithubUtil.mapper.writeValueAsString(header) + "\n").getBytes("UTF-8");
+    try {
+      // The journal holds access tokens, only the user running the server may read it.
+      FileOutputStream out = GithubUtil.createPrivateFile(tempFile);
+      try {
+        out.write(headerBytes);
+        IOUtils.copy(content, out);
+        out.flush();
+        // The save is acknowledged only once it is on the disk.
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    } finally {
+      content.close();
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("Could not rename " + tempFile + " to " + file);
+    }
+
+    Entry entry = new Entry(file, urlPathPart, accessToken, baseSha, headerBytes.length);
+    synchronized (latestEntries) {
+      Entry currentEntry = latestEntries.put(entryKey, entry);
+      if (currentEntry != previousEntry) {
+        // The previous save was committed, or the file was saved again, while this save was written.
+        entry.baseSha = currentEntry != null ? currentEntry.baseSha : GithubBlobShas.get(urlPathPart);
+      }
+    }
+    pendingEntries.add(entry);
+    // The cached content is older than the journaled one.
+    GithubContentCache.invalidate(urlPathPart);
+    GithubMissingPaths.invalidate(urlPathPart);
+  }
+
+  /**
+   * Returns the content of a file saved by a user, if the save was not committed yet.
+   *
+   * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+   * @param accessToken The access token of the user.
+   *
+   * @return The saved content or <code>null</code> if there is no save waiting to be committed.
+   */
+  static InputStream openPendingContent(String urlPathPart, String accessToken) {
+    Entry entry = latestEntries.get(getEntryKey(urlPathPart, accessToken));
+    if (entry == null) {
+      return null;
+    }
+    try {
+      return entry.openContent();
+    } catch (IOException e) {
+      // The save was committed and deleted in the meantime.
+      return null;
+    }
+  }
+
+  /**
+   * Returns the problem with the saves of a user which could not be committed, and forgets it.
+   *
+   * @param accessToken The access token of the user.
+   *
+   * @return The message describing the problem, <code>null</code> if there is none.
+   */
+  static String takeFailure(String accessToken) {
+    if (accessToken == null) {
+      return null;
+    }
+    // Removed atomically, so that the problem is reported only once.
+    return failures.asMap().remove(accessToken);
+  }
+
+  /**
+   * Commits the journaled saves, as long as the server runs.
+   */
+  private static void flushForever() {
+    List<Entry> entries = new ArrayList<Entry>();
+    while (true) {
+      try {
+        if (entries.isEmpty()) {
+          entries.add(pendingEntries.take());
+        } else {
+          // Wait until a commit can be tried again, or until a new save is made.
+          long delay = getNextRetryAt(entries) - System.currentTimeMillis();
+          Entry entry = delay > 0 ? pendingEntries.poll(delay, TimeUnit.MILLISECONDS) : null;
+          if (entry != null) {
+            entries.add(entry);
+          }
+        }
+        // Give the author time to save the other files, or to save the same file again.
+        Thread.sleep(flushDelayMs);
+        pendingEntries.drainTo(entries);
+        entries = flush(entries);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        logger.error("Unexpected error while committing the saves: " + e.getMessage(), e);
+        // The saves are not tried again, the error would happen again.
+        for (Entry entry : entries) {
+          if (entry.file.exists()) {
+            fail(Collections.singletonList(entry), e);
+          }
+        }
+        entries = new ArrayList<Entry>();
+      }
+    }
+  }
+
+  /**
+   * @param entries The saves waiting to be committed.
+   *
+   * @return The first time when the commit of one of the saves can be tried, in milliseconds since the epoch.
+   */
+  private static long getNextRetryAt(List<Entry> entries) {
+    long nextRetryAt = Long.MAX_VALUE;
+    for (Entry entry : entries) {
+      nextRetryAt = Math.min(nextRetryAt, entry.retryAt);
+    }
+    return nextRetryAt;
+  }
+
+  /**
+   * Commits saves, with a commit for every branch and author. The commits which cannot be tried yet are skipped.
+   *
+   * @param entries The saves, in order.
+   *
+   * @return The saves which should be committed again later, in order.
+   */
+  private static List<Entry> flush(List<Entry> entries) {
+    // Only the last save of a file is committed, the previous ones are just deleted.
+    Map<String, Map<String, Entry>> commits = new LinkedHashMap<String, Map<String, Entry>>();
+    Map<String, List<Entry>> commitEntries = new HashMap<String, List<Entry>>();
+    for (Entry entry : entries) {
+      String commitKey = getCommitKey(entry.urlPathPart, entry.accessToken);
+      Map<String, Entry> files = commits.get(commitKey);
+      if (files == null) {
+        files = new LinkedHashMap<String, Entry>();
+        commits.put(commitKey, files);
+        commitEntries.put(commitKey, new ArrayList<Entry>());
+      }
+      files.remove(entry.urlPathPart);
+      files.put(entry.urlPathPart, entry);
+      commitEntries.get(commitKey).add(entry);
+    }
+
+    List<Entry> retries = new ArrayList<Entry>();
+    for (Map.Entry<String, Map<String, Entry>> commit : commits.entrySet()) {
+      List<Entry> committedEntries = commitEntries.get(commit.getKey());
+      long retryAt = 0;
+      for (Entry entry : committedEntries) {
+        retryAt = Math.max(retryAt, entry.retryAt);
+      }
+      if (retryAt > System.currentTimeMillis()) {
+        // The new saves of the branch wait for the previous ones.
+        retry(committedEntries, retryAt, retries);
+        continue;
+      }
+
+      List<GithubCommitEngine.FileChange> changes = new ArrayList<GithubCommitEngine.FileChange>();
+      String accessToken = null;
+      for (final Entry entry : commit.getValue().values()) {
+        accessToken = entry.accessToken;
+        changes.add(new GithubCommitEngine.FileChange(entry.urlPathPart, entry.baseSha) {
+          @Override
+          InputStream openContent() throws IOException {
+            return entry.openContent();
+          }
+        });
+      }
+
+      try {
+        GithubCommitEngine.commit(changes, accessToken);
+        onCommitted(committedEntries, commit.getValue().values());
+      } catch (RateLimitExceededException e) {
+        // Not a failure of the commit, it is tried again when GitHub allows it.
+        retry(committedEntries, e.getRetryAt(), retries);
+      } catch (CommitRejectedException e) {
+        // Trying again would not help.
+        fail(committedEntries, e);
+      } catch (IOException e) {
+        Entry lastEntry = committedEntries.get(committedEntries.size() - 1);
+        lastEntry.attempts++;
+        if (lastEntry.attempts < MAX_FLUSH_ATTEMPTS) {
+          logger.debug("Could not commit the saves, trying again: " + e.getMessage());
+          // Wait longer after every attempt.
+          retry(committedEntries, System.currentTimeMillis() + (1000L << lastEntry.attempts), retries);
+        } else {
+          fail(committedEntries, e);
+        }
+      } catch (RuntimeException e) {
+        logger.error("Unexpected error while committing the saves: " + e.getMessage(), e);
+        fail(committedEntries, e);
+      }
+    }
+    return retries;
+  }
+
+  /**
+   * Schedules saves to be committed again.
+   *
+   * @param entries The saves of a commit.
+   * @param retryAt The time when the commit can be tried again, in milliseconds since the epoch.
+   * @param retries The saves which should be committed again later.
+   */
+  private static void retry(List<Entry> entries, long retryAt, List<Entry> retries) {
+    for (Entry entry : entries) {
+      entry.retryAt = retryAt;
+    }
+    retries.addAll(entries);
+  }
+
+  /**
+   * Deletes saves which were committed.
+   *
+   * @param entries The saves.
+   * @param committedEntries The last save of every file, the ones which were committed.
+   */
+  private static void onCommitted(List<Entry> entries, Collection<Entry> committedEntries) {
+    synchronized (latestEntries) {
+      for (Entry entry : entries) {
+        remove(entry);
+        entry.file.delete();
+      }
+      for (Entry entry : committedEntries) {
+        // The saves made in the meantime are made over the committed content.
+        Entry newerEntry = latestEntries.get(getEntryKey(entry.urlPathPart, entry.accessToken));
+        if (newerEntry != null && Objects.equal(newerEntry.baseSha, entry.baseSha)) {
+          newerEntry.baseSha = GithubBlobShas.get(entry.urlPathPart);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps saves which could not be committed, and records the problem for their author.
+   *
+   * @param entries The saves.
+   * @param e The reason why they could not be committed.
+   */
+  private static void fail(List<Entry> entries, Exception e) {
+    StringBuilder files = new StringBuilder();
+    for (Entry entry : entries) {
+      remove(entry);
+      File failedFile = new File(entry.file.getParentFile(), entry.file.getName() + FAILED_SUFFIX);
+      if (!entry.file.renameTo(failedFile)) {
+        failedFile = entry.file;
+      }
+      if (files.length() > 0) {
+        files.append(", ");
+      }
+      files.append(entry.urlPathPart);
+      logger.error("Could not commit " + entry.urlPathPart + ", the content is kept in " + failedFile + ": " +
+          e.getMessage());
+    }
+    String message = e.getMessage();
+    int indexOfClientSecret = message != null ? message.indexOf("client_secret") : -1;
+    if (indexOfClientSecret != -1) {
+      // We should never send the client_secret to the client.
+      message = message.substring(0, indexOfClientSecret);
+    }
+    recordFailure(entries.get(0).accessToken, 
+        "Your changes to " + files + " could not be committed to GitHub: " + message);
+  }
+
+  /**
+   * Records a problem with the saves of a user, to be reported the next time they use the editor.
+   *
+   * @param accessToken The access token of the user.
+   * @param failure The message describing the problem.
+   */
+  static void recordFailure(String accessToken, String failure) {
+    if (accessToken != null) {
+      failures.put(accessToken, failure);
+    }
+  }
+
+  /**
+   * Forgets a save, unless the file was saved again in the meantime.
+   *
+   * @param entry The save.
+   */
+  private static void remove(Entry entry) {
+    latestEntries.remove(getEntryKey(entry.urlPathPart, entry.accessToken), entry);
+  }
+
+  /**
+   * Reads the header of a journal file.
+   *
+   * @param file The journal file.
+   *
+   * @return The save.
+   *
+   * @throws IOException If the journal file could not be read.
+   */
+  private static Entry readEntry(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      // The header is a JSON object on the first line, JSON strings cannot contain line breaks.
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != '\n') {
+        if (b == -1) {
+          throw new IOException("Incomplete journal file");
+        }
+        headerBytes.write(b);
+      }
+      Map<String, Object> header = GithubUtil.parseJSON(headerBytes.toString("UTF-8"));
+      if (header == null || !(header.get("url") instanceof String) || 
+          ((String) header.get("url")).split("/").length < 5) {
+        throw new IOException("Invalid journal file header");
+      }
+      return new Entry(file, (String) header.get("url"), (String) header.get("token"), (String) header.get("sha"),
+          headerBytes.size() + 1);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param urlPathPart The path of a file url: /$owner/$repo/$branch/$path
+   * @param accessToken The access token of a user.
+   *
+   * @return The key of the commits of the user on the branch of the file.
+   */
+  private static String getCommitKey(String urlPathPart, String accessToken) {
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] urlComponents = urlPathPart.split("/");
+    return urlComponents[1] + "/" + urlComponents[2] + "/" + urlComponents[3] + "\n" + accessToken;
+  }
+
+  /**
+   * @param urlPathPart The path of a file url.
+   * @param accessToken The access token of a user.
+   *
+   * @return The key of the file saved by the user.
+   */
+  private static String getEntryKey(String urlPathPart, String accessToken) {
+    return urlPathPart + "\n" + accessToken;
+  }
+}
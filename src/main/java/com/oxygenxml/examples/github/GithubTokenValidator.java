@@ -0,0 +1,197 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oxygenxml.examples.github.GithubRateLimitGovernor.Priority;
+
+/**
+ * Checks whether GitHub access tokens are still valid, remembering the result for a while.
+ *
+ * A token which was validated less than a TTL ago is considered valid without asking GitHub.
+ * After the TTL the token is still answered from the cache, but it is re-checked in the background,
+ * so a revoked token is evicted on the next request after the check.
+ * Once a token was not checked for longer than the maximum age, the next request waits for the check.
+ */
+public class GithubTokenValidator {
+
+  /**
+   * The default number of seconds after which a valid token is re-checked in the background.
+   */
+  static final long DEFAULT_TTL_SECONDS = 300;
+
+  /**
+   * The default number of seconds after which a token is no longer considered valid without a check.
+   */
+  static final long DEFAULT_MAX_AGE_SECONDS = 3600;
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubTokenValidator.class.getName());
+
+  /**
+   * The executor of the background checks.
+   */
+  private static final ExecutorService checkExecutor = Executors.newFixedThreadPool(2,
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("github-token-check-%d").build());
+
+  /**
+   * A map of <access_token, validity>.
+   */
+  private static volatile LoadingCache<String, Boolean> validTokens =
+      buildCache(DEFAULT_TTL_SECONDS, DEFAULT_MAX_AGE_SECONDS);
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubTokenValidator() {
+  }
+
+  /**
+   * Sets for how long the validity of tokens is remembered. The remembered results are discarded.
+   *
+   * @param ttlSeconds The number of seconds after which a valid token is re-checked in the background,
+   * 0 to not re-check tokens in the background.
+   * @param maxAgeSeconds The number of seconds after which a token is no longer considered valid without a check.
+   */
+  static void configure(long ttlSeconds, long maxAgeSeconds) {
+    validTokens = buildCache(ttlSeconds, Math.max(ttlSeconds, maxAgeSeconds));
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param ttlSeconds The number of seconds after which a valid token is re-checked in the background.
+   * @param maxAgeSeconds The number of seconds after which a token is no longer considered valid without a check.
+   *
+   * @return The cache.
+   */
+  private static LoadingCache<String, Boolean> buildCache(long ttlSeconds, long maxAgeSeconds) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .concurrencyLevel(10)
+        .maximumSize(10000)
+        .expireAfterWrite(Math.max(0, maxAgeSeconds), TimeUnit.SECONDS);
+    if (ttlSeconds > 0) {
+      // Without a TTL the tokens are only checked again after the maximum age.
+      builder.refreshAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+    }
+    return builder
+        .build(new CacheLoader<String, Boolean>() {
+          @Override
+          public Boolean load(String accessToken) throws RateLimitExceededException {
+            try {
+              return checkToken(accessToken, Priority.HIGH);
+            } catch (RateLimitExceededException e) {
+              // The token cannot be checked now. Nothing is remembered, so it is checked on the next request.
+              throw e;
+            } catch (IOException e) {
+              return false;
+            }
+          }
+
+          @Override
+          public ListenableFuture<Boolean> reload(final String accessToken, final Boolean oldValue) {
+            ListenableFutureTask<Boolean> check = ListenableFutureTask.create(new Callable<Boolean>() {
+              public Boolean call() {
+                try {
+                  return checkToken(accessToken, Priority.LOW);
+                } catch (IOException e) {
+                  // GitHub could not be asked, or the rate limit was exceeded. 
+                  // This does not mean that the token was revoked.
+                  logger.debug("Could not re-check access token: " + e.getMessage());
+                  return oldValue;
+                }
+              }
+            });
+            checkExecutor.execute(check);
+            return check;
+          }
+        });
+  }
+
+  /**
+   * Tests whether an access token is still valid.
+   *
+   * @param accessToken The access token to test for validity
+   * @return True if the access token is still valid. (If the user did not revoke access for our application)
+   * @throws RateLimitExceededException If the token could not be checked because of the rate limit.
+   */
+  public static boolean isValid(String accessToken) throws RateLimitExceededException {
+    boolean valid;
+    try {
+      valid = validTokens.get(accessToken);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RateLimitExceededException) {
+        throw (RateLimitExceededException) e.getCause();
+      }
+      valid = false;
+    }
+    if (!valid) {
+      // Forget about the token so that a new one can be validated if the user logs in with the same one.
+      validTokens.invalidate(accessToken);
+    }
+    return valid;
+  }
+
+  /**
+   * Forgets the validity of an access token, for example after GitHub rejected it.
+   *
+   * @param accessToken The access token.
+   */
+  public static void invalidate(String accessToken) {
+    if (accessToken != null) {
+      validTokens.invalidate(accessToken);
+    }
+  }
+
+  /**
+   * Forgets the validity of all the access tokens.
+   */
+  public static void invalidateAll() {
+    validTokens.invalidateAll();
+  }
+
+  /**
+   * Asks GitHub whether an access token is still valid.
+   *
+   * @param accessToken The access token to test for validity
+   * @param priority The priority of the check.
+   * @return True if the access token is still valid.
+   * @throws IOException If GitHub could not be reached or did not give a definite answer.
+   */
+  private static boolean checkToken(String accessToken, Priority priority) throws IOException {
+    String clientId = GitHubOauthServlet.clientId;
+    String clientSecret = GitHubOauthServlet.clientSecret;
+    String apiUrl = GitHubOauthServlet.apiUrl;
+    // Send the client_id and client_secret as well because we want to use the 5000 requests quota not the free one
+    URL fullApiUrl = new URL(
+        (apiUrl != null ? apiUrl + "/api/v3" : "https://api.github.com") +
+        "/user?client_id=" + clientId + "&client_secret=" + clientSecret);
+    HttpURLConnection apiConnection = GithubHttpClient.open(fullApiUrl, accessToken, priority);
+    int responseCode = GithubHttpClient.getResponseCode(apiConnection);
+    GithubHttpClient.release(apiConnection);
+
+    if (responseCode == HttpURLConnection.HTTP_OK) {
+      return true;
+    } else if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
+      return false;
+    } else {
+      throw new IOException("Unexpected response code " + responseCode + " when checking the access token");
+    }
+  }
+}
@@ -0,0 +1,409 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import ro.sync.net.protocol.FolderEntryDescriptor;
+import ro.sync.util.URLUtil;
+
+/**
+ * Indexes all the files of a commit, so that its folders can be listed and its files found without asking GitHub.
+ *
+ * The index is built from a single recursive Git Trees API request. Since the files of a commit 
+ * never change, the index is shared by all the users which resolved the commit with the 
+ * {@link GithubRefResolver}, and is replaced only when the branch moves to another commit.
+ *
+ * GitHub truncates the recursive trees of very large repositories, those are not indexed.
+ */
+public class GithubTreeIndex {
+
+  /**
+   * The default maximum number of files and folders held by all the indexes.
+   */
+  static final long DEFAULT_MAX_ENTRIES = 1000000;
+
+  /**
+   * A file or a folder of a commit.
+   */
+  static class Node {
+    /**
+     * The sorted names of the children, <code>null</code> for files.
+     */
+    final String[] names;
+
+    /**
+     * The children, in the order of their names, <code>null</code> for files.
+     */
+    final Node[] children;
+
+    /**
+     * The sha of the blob of a file, <code>null</code> for folders.
+     */
+    final String sha;
+
+    /**
+     * The git mode of a file, for example 100755 for an executable, <code>null</code> for folders.
+     */
+    final String mode;
+
+    /**
+     * The number of nodes in this subtree.
+     */
+    final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param names The sorted names of the children, <code>null</code> for files.
+     * @param children The children, in the order of their names, <code>null</code> for files.
+     * @param sha The sha of the blob of a file, <code>null</code> for folders.
+     * @param mode The git mode of a file, <code>null</code> for folders.
+     * @param size The number of nodes in this subtree.
+     */
+    Node(String[] names, Node[] children, String sha, String mode, int size) {
+      this.names = names;
+      this.children = children;
+      this.sha = sha;
+      this.mode = mode;
+      this.size = size;
+    }
+
+    /**
+     * @param name The name of a child.
+     *
+     * @return The child or <code>null</code> if there is no such child.
+     */
+    Node getChild(String name) {
+      if (names == null) {
+        return null;
+      }
+      int index = Arrays.binarySearch(names, name);
+      return index >= 0 ? children[index] : null;
+    }
+
+    /**
+     * @param path The path of a descendant, relative to this folder, with the names separated by '/'.
+     *
+     * @return The descendant or <code>null</code> if there is no such descendant.
+     */
+    Node find(String path) {
+      Node node = this;
+      for (String name : path.split("/")) {
+        if (node == null) {
+          break;
+        }
+        node = node.getChild(name);
+      }
+      return node;
+    }
+  }
+
+  /**
+   * A folder while the index is being built.
+   */
+  private static class FolderBuilder {
+    /**
+     * The sub-folders and files, by name. A file is a {@link Node}, a sub-folder a {@link FolderBuilder}.
+     */
+    final Map<String, Object> entries = new TreeMap<String, Object>();
+
+    /**
+     * @return The immutable folder.
+     */
+    Node build() {
+      String[] names = entries.keySet().toArray(new String[entries.size()]);
+      Node[] children = new Node[names.length];
+      int size = 1;
+      for (int i = 0; i < names.length; i++) {
+        Object entry = entries.get(names[i]);
+        children[i] = entry instanceof FolderBuilder ? ((FolderBuilder) entry).build() : (Node) entry;
+        size += children[i].size;
+      }
+      return new Node(names, children, null, null, size);
+    }
+  }
+
+  /**
+   * The result of indexing a commit.
+   */
+  private static class TreeIndex {
+    /**
+     * The root folder, <code>null</code> if the commit could not be indexed.
+     */
+    final Node root;
+
+    /**
+     * Constructor.
+     *
+     * @param root The root folder, <code>null</code> if the commit could not be indexed.
+     */
+    TreeIndex(Node root) {
+      this.root = root;
+    }
+  }
+
+  /**
+   * A map of <owner/repo/commit sha, index>.
+   */
+  private static volatile Cache<String, TreeIndex> indexes = buildCache(DEFAULT_MAX_ENTRIES);
+
+  /**
+   * The indexes being built.
+   */
+  private static final SingleFlight<String, TreeIndex> inFlightBuilds = new SingleFlight<String, TreeIndex>();
+
+  /**
+   * Private constructor, all the methods are static.
+   */
+  private GithubTreeIndex() {
+  }
+
+  /**
+   * Sets the size limit of the indexes. The indexes are discarded.
+   *
+   * @param maxEntries The maximum number of files and folders held by all the indexes.
+   */
+  static void configure(long maxEntries) {
+    indexes = buildCache(maxEntries);
+  }
+
+  /**
+   * Builds the underlying cache.
+   *
+   * @param maxEntries The maximum number of files and folders held by all the indexes.
+   *
+   * @return The cache.
+   */
+  private static Cache<String, TreeIndex> buildCache(long maxEntries) {
+    return CacheBuilder.newBuilder()
+        // The weight is divided between the segments, with a single one an index can use all of it.
+        .concurrencyLevel(1)
+        .maximumWeight(maxEntries)
+        .weigher(new Weigher<String, TreeIndex>() {
+          public int weigh(String key, TreeIndex value) {
+            return value.root != null ? value.root.size : 1;
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Lists a folder of a commit.
+   *
+   * @param commitPathPart The path of the folder url, with the branch replaced by a commit sha:
+   * /$owner/$repo/$sha/$path
+   * @param folderPathPart The path of the folder url, used to remember the shas of the files.
+   * @param accessToken The access token of the user, which resolved the commit.
+   *
+   * @return The entries of the folder or <code>null</code> if the folder is not in the index.
+   */
+  static List<FolderEntryDescriptor> listFolder(String commitPathPart, String folderPathPart, String accessToken) {
+    String[] urlComponents = commitPathPart.split("/");
+    if (urlComponents.length < 4) {
+      return null;
+    }
+    Node folder = getIndex(urlComponents[1], urlComponents[2], urlComponents[3], accessToken);
+    for (int i = 4; folder != null && i < urlComponents.length; i++) {
+      folder = folder.getChild(URLUtil.decodeURIComponent(urlComponents[i]));
+    }
+    if (folder == null || folder.names == null) {
+      return null;
+    }
+
+    String folderPrefix = folderPathPart.endsWith("/") ? folderPathPart : folderPathPart + "/";
+    List<FolderEntryDescriptor> filesList = new ArrayList<FolderEntryDescriptor>(folder.names.length);
+    for (int i = 0; i < folder.names.length; i++) {
+      String encodedName = URLUtil.encodeURIComponent(folder.names[i]);
+      Node child = folder.children[i];
+      if (child.names == null) {
+        GithubBlobShas.put(folderPrefix + encodedName, child.sha);
+        filesList.add(new FolderEntryDescriptor(encodedName));
+      } else {
+        // Add a '/' when the file is a directory because this is how upstream identifies directories
+        filesList.add(new FolderEntryDescriptor(encodedName + "/"));
+      }
+    }
+    return filesList;
+  }
+
+  /**
+   * Returns the index of a commit, building it if needed.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param commitSha The sha of the commit.
+   * @param accessToken The access token of the user.
+   *
+   * @return The root folder of the commit or <code>null</code> if the commit could not be indexed.
+   */
+  static Node getIndex(final String owner, final String repo, final String commitSha, 
+      final String accessToken) {
+    final String key = owner + "/" + repo + "/" + commitSha;
+    final Cache<String, TreeIndex> cache = indexes;
+    TreeIndex index = cache.getIfPresent(key);
+    if (index == null) {
+      try {
+        index = inFlightBuilds.execute(key, new Callable<TreeIndex>() {
+          public TreeIndex call() throws IOException {
+            TreeIndex index = new TreeIndex(fetchTree(owner, repo, commitSha, accessToken));
+            // A commit which could not be indexed is remembered as well, so that it is not requested again.
+            cache.put(key, index);
+            return index;
+          }
+        });
+      } catch (IOException e) {
+        // The folders will be requested one by one.
+        return null;
+      }
+    }
+    return index.root;
+  }
+
+  /**
+   * Requests the recursive tree of a commit and builds its index.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param commitSha The sha of the commit.
+   * @param accessToken The access token of the user.
+   *
+   * @return The root folder or <code>null</code> if GitHub truncated the tree.
+   *
+   * @throws IOException If the tree could not be read.
+   */
+  private static Node fetchTree(String owner, String repo, String commitSha, String accessToken) throws IOException {
+    HttpURLConnection connection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + 
+        "/repos/" + owner + "/" + repo + "/git/trees/" + commitSha + "?recursive=1" + 
+        GithubUtil.getClientCredentialsQuery("&")), accessToken);
+    connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+    InputStream body = GithubHttpClient.getInputStream(connection);
+
+    FolderBuilder root = new FolderBuilder();
+    // The same names appear in many folders, they are kept only once.
+    Map<String, String> names = new HashMap<String, String>();
+    boolean truncated = false;
+    JsonParser parser = GithubUtil.mapper.getJsonFactory().createJsonParser(body);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unexpected tree response for " + owner + "/" + repo + "/" + commitSha);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("truncated".equals(field)) {
+          truncated = value == JsonToken.VALUE_TRUE;
+        } else if ("tree".equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            addEntry(root, parser, names);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    return truncated ? null : root.build();
+  }
+
+  /**
+   * Parses an entry of a tree and adds it to the index.
+   *
+   * @param root The root folder.
+   * @param parser The parser, positioned at the start of the entry.
+   * @param names The names already in the index.
+   *
+   * @throws IOException If the entry could not be read.
+   */
+  private static void addEntry(FolderBuilder root, JsonParser parser, Map<String, String> names) throws IOException {
+    String path = null;
+    String type = null;
+    String sha = null;
+    String mode = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("path".equals(field)) {
+        path = parser.getText();
+      } else if ("type".equals(field)) {
+        type = parser.getText();
+      } else if ("sha".equals(field)) {
+        sha = parser.getText();
+      } else if ("mode".equals(field)) {
+        mode = parser.getText();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (path == null || !("blob".equals(type) || "tree".equals(type))) {
+      // Submodules are not listed.
+      return;
+    }
+
+    // The entries of a folder come after the folder, but the folder is created if it is missing.
+    String[] segments = path.split("/");
+    FolderBuilder folder = root;
+    for (int i = 0; i < segments.length - 1; i++) {
+      folder = getSubFolder(folder, intern(segments[i], names));
+    }
+    String name = intern(segments[segments.length - 1], names);
+    if ("tree".equals(type)) {
+      getSubFolder(folder, name);
+    } else {
+      folder.entries.put(name, new Node(null, null, sha, mode != null ? intern(mode, names) : null, 1));
+    }
+  }
+
+  /**
+   * @param folder A folder.
+   * @param name The name of a sub-folder.
+   *
+   * @return The sub-folder, created if it is missing.
+   */
+  private static FolderBuilder getSubFolder(FolderBuilder folder, String name) {
+    Object entry = folder.entries.get(name);
+    if (!(entry instanceof FolderBuilder)) {
+      entry = new FolderBuilder();
+      folder.entries.put(name, entry);
+    }
+    return (FolderBuilder) entry;
+  }
+
+  /**
+   * @param name A name.
+   * @param names The names already in the index.
+   *
+   * @return The instance of the name kept in the index.
+   */
+  private static String intern(String name, Map<String, String> names) {
+    String interned = names.get(name);
+    if (interned == null) {
+      names.put(name, name);
+      interned = name;
+    }
+    return interned;
+  }
+
+  /**
+   * Forgets all the indexes.
+   */
+  static void invalidateAll() {
+    indexes.invalidateAll();
+  }
+}
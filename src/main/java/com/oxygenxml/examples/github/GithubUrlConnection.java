@@ -2,19 +2,30 @@ package com.oxygenxml.examples.github;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.jboss.resteasy.util.Base64;
 
+import com.oxygenxml.examples.github.GithubContentCache.CachedContent;
+import com.oxygenxml.examples.github.GithubUtil.GithubResultHandler;
+
 import ro.sync.ecss.extensions.api.webapp.WebappMessage;
 import ro.sync.ecss.extensions.api.webapp.plugin.FilterURLConnection;
 import ro.sync.ecss.extensions.api.webapp.plugin.UserActionRequiredException;
@@ -30,11 +41,58 @@ import ro.sync.util.URLUtil;
  */
 public class GithubUrlConnection extends FilterURLConnection implements FileBrowsingConnection {
 
+  /**
+   * The media type used to receive the raw content of a file instead of its JSON representation.
+   */
+  private static final String RAW_MEDIA_TYPE = "application/vnd.github.v3.raw";
+  
+  /**
+   * The response code used by GitHub when a request is not valid, 
+   * for example when updating a file without giving its sha.
+   */
+  private static final int HTTP_UNPROCESSABLE_ENTITY = 422;
+  
+  /**
+   * The default size of a saved file which is kept in memory, larger files are buffered on disk.
+   */
+  static final long DEFAULT_SAVE_MEMORY_THRESHOLD = 1024 * 1024;
+  
+  /**
+   * The maximum number of entries returned by the Contents API for a folder.
+   */
+  private static final int CONTENTS_API_MAX_ENTRIES = 1000;
+  
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubUrlConnection.class.getName());
+  
+  /**
+   * The size of the chunks in which the saved files are sent to GitHub.
+   */
+  private static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
+  
+  /**
+   * The size of a saved file which is kept in memory, larger files are buffered on disk.
+   */
+  private static volatile int saveMemoryThreshold = (int) DEFAULT_SAVE_MEMORY_THRESHOLD;
+  
+  /**
+   * The reads in progress, keyed by the file and the access token used to read it.
+   */
+  private static final SingleFlight<String, FileContent> inFlightReads = new SingleFlight<String, FileContent>();
+  
   /**
    * The path of the opened url.
    */
   private String urlPathPart;
   
+  /**
+   * The path of the opened url, with the branch replaced by the sha of its head commit.
+   * <code>null</code> if the branch was not resolved.
+   */
+  private String commitPathPart;
+  
   /**
    * The github OAuth access token.
    */
@@ -44,9 +102,24 @@ public class GithubUrlConnection extends FilterURLConnection implements FileBrow
    * Constructor
    * @param delegateConnection The underlying url connection
    * @param accessToken The github access token
+   * @param urlPathPart The path of the opened url.
    */
   public GithubUrlConnection(URLConnection delegateConnection, String accessToken, String urlPathPart) {
+    this(delegateConnection, accessToken, urlPathPart, null);
+  }
+  
+  /**
+   * Constructor
+   * @param delegateConnection The underlying url connection, to the file at the resolved commit if there is one
+   * @param accessToken The github access token
+   * @param urlPathPart The path of the opened url.
+   * @param commitPathPart The path of the opened url, with the branch replaced by the sha of its head commit.
+   * <code>null</code> if the branch was not resolved.
+   */
+  public GithubUrlConnection(URLConnection delegateConnection, String accessToken, String urlPathPart, 
+      String commitPathPart) {
     super(delegateConnection);
+    this.commitPathPart = commitPathPart;
     if (accessToken != null) {
       this.accessToken = accessToken;
       delegateConnection.setRequestProperty("Authorization", "token " + accessToken);
@@ -57,164 +130,501 @@ public class GithubUrlConnection extends FilterURLConnection implements FileBrow
     delegateConnection.setRequestProperty("Accept", "application/vnd.github.v3+json");
   }
   
+  /**
+   * Sets the size of a saved file which is kept in memory before being sent to GitHub.
+   * 
+   * @param saveMemoryThreshold The size in bytes, larger files are buffered on disk.
+   */
+  static void configureSaves(long saveMemoryThreshold) {
+    GithubUrlConnection.saveMemoryThreshold = (int) saveMemoryThreshold;
+  }
+  
   @Override
   public InputStream getInputStream() throws IOException {
-    String githubJsonResult;
+    checkSaveFailures();
+    return openContent();
+  }
+  
+  /**
+   * Opens the content of the file, leaving the problems with the saves of the user to be reported 
+   * by the editor. Used by the reads made in the background, which have no way to show them.
+   * 
+   * @return The content of the file.
+   * 
+   * @throws IOException If the file could not be read.
+   */
+  InputStream openContent() throws IOException {
+    // A save which is not yet committed is newer than the file on GitHub.
+    InputStream pendingContent = GithubSaveJournal.openPendingContent(urlPathPart, accessToken);
+    if (pendingContent != null) {
+      return pendingContent;
+    }
+    
+    // Concurrent reads of the same file share a single request. The result depends on the 
+    // access token, unless the repository is public.
+    if (GithubMissingPaths.isMissing(getContentKey(), accessToken)) {
+      throw new IOException("404 Not Found for: " + urlPathPart);
+    }
+    
+    String flightKey = getContentKey();
+    if (accessToken != null) {
+      String[] urlComponents = urlPathPart.split("/");
+      if (!GithubRepositories.isPublic(urlComponents[1], urlComponents[2], accessToken)) {
+        flightKey += "\n" + accessToken;
+      }
+    }
+    
+    ReadCall read = new ReadCall();
+    FileContent fileContent = inFlightReads.execute(flightKey, read);
+    if (fileContent.content == null && !read.executed) {
+      // Large files are shared through the disk blob store.
+      InputStream storedBlob = fileContent.blobSha != null ? GithubDiskBlobStore.open(fileContent.blobSha) : null;
+      if (storedBlob != null) {
+        return storedBlob;
+      }
+      // The file could not be shared, so we have to read it ourselves.
+      fileContent = read.call();
+    }
+    
+    if (fileContent.content != null && GithubPrefetcher.isMap(urlPathPart)) {
+      // The editor will soon need the files referenced by the map.
+      GithubPrefetcher.prefetchMap(urlPathPart, 
+          commitPathPart != null ? commitPathPart.split("/")[3] : null, fileContent.content, accessToken);
+    }
+    return fileContent.content != null ? new ByteArrayInputStream(fileContent.content) : fileContent.stream;
+  }
+  
+  /**
+   * Reads the file from GitHub, or from the cache if it did not change.
+   * 
+   * @return The content of the file.
+   * 
+   * @throws IOException If the file could not be read.
+   */
+  private FileContent readContent() throws IOException {
+    // Asking for the raw content of the file lets us stream it to the editor, 
+    // instead of decoding it from the "content" property of a JSON response.
+    delegateConnection.setRequestProperty("Accept", RAW_MEDIA_TYPE);
+    
+    String contentKey = getContentKey();
+    CachedContent cachedContent = GithubContentCache.get(contentKey);
+    if (cachedContent != null && commitPathPart != null) {
+      // The files of a commit never change. The user has access to the commit, since it was resolved for them.
+      if (GithubBlobShas.get(urlPathPart) == null) {
+        GithubBlobShas.put(urlPathPart, GithubUtil.getGitBlobSha(cachedContent.content));
+      }
+      return new FileContent(cachedContent.content, null, null);
+    }
+    // The blob we last knew for this file may still be stored on disk.
+    String storedSha = null;
+    String storedEtag = null;
+    if (cachedContent != null) {
+      // GitHub will answer with 304 Not Modified if the file did not change since we cached it.
+      delegateConnection.setRequestProperty("If-None-Match", cachedContent.etag);
+    } else {
+      String knownSha = GithubBlobShas.get(urlPathPart);
+      storedEtag = knownSha != null ? GithubDiskBlobStore.getEtag(knownSha) : null;
+      if (storedEtag != null) {
+        storedSha = knownSha;
+        delegateConnection.setRequestProperty("If-None-Match", storedEtag);
+      }
+    }
+    
+    InputStream rawContent;
     try {
-      // The response from github comes in a json like: // {"content":"BASE64ecnodedContent",otherProps}
-      githubJsonResult = GithubUtil.inputStreamToString(delegateConnection.getInputStream());
+      HttpURLConnection httpConnection = (HttpURLConnection) delegateConnection;
+      if ((cachedContent != null || storedSha != null) && 
+          GithubHttpClient.getResponseCode(httpConnection) == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        GithubHttpClient.release(httpConnection);
+        if (cachedContent != null) {
+          if (GithubBlobShas.get(urlPathPart) == null) {
+            GithubBlobShas.put(urlPathPart, GithubUtil.getGitBlobSha(cachedContent.content));
+          }
+          return new FileContent(cachedContent.content, null, null);
+        }
+        InputStream storedBlob = GithubDiskBlobStore.open(storedSha);
+        if (storedBlob != null && storedBlob.available() <= GithubContentCache.getMaxEntryBytes()) {
+          // Small enough to be kept in memory again.
+          byte[] content = IOUtils.toByteArray(storedBlob);
+          GithubContentCache.put(contentKey, storedEtag, content);
+          return new FileContent(content, null, null);
+        } else if (storedBlob != null) {
+          return new FileContent(null, storedBlob, storedSha);
+        }
+        // Evicted in the meantime, the file has to be requested again.
+        GithubUrlConnection connection = new GithubUrlConnection(
+            GithubHttpClient.open(delegateConnection.getURL(), accessToken), accessToken, urlPathPart, commitPathPart);
+        return connection.readContent();
+      }
+      rawContent = GithubHttpClient.getInputStream(httpConnection);
+    } catch (RateLimitExceededException e) {
+      // Not a reason to forget about the file, nor to ask the user to login.
+      throw e;
     } catch (IOException e) {
+      if (!isNotFound()) {
+        // A server or network error says nothing about the file, what we know about it is kept.
+        throw e;
+      }
+      GithubContentCache.invalidate(contentKey);
+      GithubBlobShas.invalidate(urlPathPart);
+      GithubMissingPaths.put(contentKey, accessToken);
       throw new IOException("404 Not Found for: " + urlPathPart);
     }
-    HashMap<String, Object> result = GithubUtil.parseJSON(githubJsonResult);
-
-    String base64Content = (String) result.get("content");
-    byte[] decodedContent = Base64.decode(base64Content);
-
-    return new ByteArrayInputStream(decodedContent);
+    
+    // Read the file in memory so that it can be cached and shared, unless it is too large. 
+    long limit = GithubContentCache.getMaxEntryBytes();
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while (buffer.size() <= limit && (read = rawContent.read(chunk)) != -1) {
+      buffer.write(chunk, 0, read);
+    }
+    
+    String etag = delegateConnection.getHeaderField("ETag");
+    if (buffer.size() > limit) {
+      // Too large to be kept in memory, the file is stored on disk if possible.
+      String sha = GithubDiskBlobStore.putStream(etag, buffer.toByteArray(), rawContent);
+      InputStream storedBlob = sha != null ? GithubDiskBlobStore.open(sha) : null;
+      if (storedBlob != null) {
+        GithubBlobShas.put(urlPathPart, sha);
+        return new FileContent(null, storedBlob, sha);
+      }
+      if (sha == null) {
+        // The rest of the file is streamed to the editor.
+        return new FileContent(null, new SequenceInputStream(
+            new ByteArrayInputStream(buffer.toByteArray()), rawContent), null);
+      }
+      throw new IOException("Could not read the stored content of: " + urlPathPart);
+    }
+    
+    rawContent.close();
+    byte[] content = buffer.toByteArray();
+    // Keep the file for the next reads. 
+    // The sha of the file is remembered to be used when the file is saved.
+    String sha = GithubUtil.getGitBlobSha(content);
+    GithubContentCache.put(contentKey, etag, content);
+    GithubDiskBlobStore.put(sha, etag, content);
+    GithubBlobShas.put(urlPathPart, sha);
+    return new FileContent(content, null, null);
+  }
+  
+  /**
+   * @return <code>true</code> if GitHub answered that the requested file or folder does not exist, 
+   * or no longer exists.
+   */
+  private boolean isNotFound() {
+    try {
+      int responseCode = ((HttpURLConnection) delegateConnection).getResponseCode();
+      return responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+  
+  /**
+   * @return The key of the file in the content cache.
+   */
+  private String getContentKey() {
+    return commitPathPart != null ? commitPathPart : urlPathPart;
+  }
+  
+  /**
+   * The content of a file read from GitHub.
+   */
+  private static class FileContent {
+    /**
+     * The content of the file, <code>null</code> if it is too large to be kept in memory.
+     */
+    final byte[] content;
+    
+    /**
+     * The content of a large file. It can only be read by the connection which made the request.
+     */
+    final InputStream stream;
+    
+    /**
+     * The sha of the large file in the disk blob store, <code>null</code> if it is not stored.
+     */
+    final String blobSha;
+    
+    /**
+     * Constructor.
+     * 
+     * @param content The content of the file, <code>null</code> if it is too large to be kept in memory.
+     * @param stream The content of a large file.
+     * @param blobSha The sha of the large file in the disk blob store, <code>null</code> if it is not stored.
+     */
+    FileContent(byte[] content, InputStream stream, String blobSha) {
+      this.content = content;
+      this.stream = stream;
+      this.blobSha = blobSha;
+    }
+  }
+  
+  /**
+   * Reads the file using this connection.
+   */
+  private class ReadCall implements Callable<FileContent> {
+    /**
+     * Whether this connection made the request.
+     */
+    boolean executed = false;
+    
+    public FileContent call() throws IOException {
+      executed = true;
+      return readContent();
+    }
   }
   
   @Override
   public OutputStream getOutputStream() throws IOException {
-    return new ByteArrayOutputStream() {
+    // The content is kept in memory up to a limit, larger files are written to a temporary file.
+    return new DeferredFileOutputStream(saveMemoryThreshold, "github-save", ".tmp", null) {
+      /**
+       * Whether the content was already sent to GitHub.
+       */
+      private boolean saved = false;
+      
       @Override
       public void close() throws IOException {
+        super.close();
+        if (saved) {
+          return;
+        }
+        saved = true;
+        final DeferredFileOutputStream savedContent = this;
         try {
-          // The github api requests the content of the files to be base64 encoded
-          byte[] content = toByteArray();
-          String encodedContent = Base64.encodeBytes(content);
-          
-          // The url of the delegateConnection happens to be exactly what the GitHub api for creating/updating a file requires.
-          // It is built in GithubUrlStreamHandler.openConnectionInContext
-          URL apiCallUrl = delegateConnection.getURL();
-
-          // Making a GET request to see if the file exists already
-          HttpURLConnection connToCheckIfFileExists = (HttpURLConnection) apiCallUrl.openConnection();
-          connToCheckIfFileExists.setRequestProperty("Authorization", "token " + accessToken);
-          connToCheckIfFileExists.setRequestMethod("GET");
-          
-          Integer responseCode = null;
-          HashMap<String, Object> fileExistsResult = null;
-          
-          try {
-            responseCode = connToCheckIfFileExists.getResponseCode();
-            fileExistsResult = GithubUtil
-                .parseJSON(GithubUtil.inputStreamToString(connToCheckIfFileExists
-                        .getInputStream()));          
-          } catch (IOException e) {
-            String message = e.getMessage();
-            if (message != null && message.startsWith("404 Not Found")) {
-              // If the file does not exist urlConnectionToCheckIfFileExists.getResponseCode() throws an IOException
-              responseCode = 404;
-            } else {
-              // If a different error occurred or if the exception was thrown by inputStreamToString we will set the responseCode to 500
-              // This way the third if branch below will be triggered and an IOException thrown.
-              responseCode = 500;
-            }
-          }
-
-          // We need to send the branch as a property of the JSON request body
-          // We can take it from the apiCallUrl. It's the ref query param
-          String branch = null;
-          String[] queryParams = apiCallUrl.getQuery().split("&");
-          for (int i = 0; i < queryParams.length - 1; i++) {
-            String[] propValue = queryParams[i].split("=");
-            if (propValue.length == 2 && propValue[0].equals("ref")) {
-              // We wil put the branch as a JSON property and we don't need to have it URL encoded there.
-              branch = URLUtil.decodeURIComponent(propValue[1]);
-              break;
-            }
-          }
-          
-          if (branch == null) {
-            // This should never happen
-            throw new IOException("Could not create or update file on GitHub, missing branch.");
-          }
-          
-          String apiRequestBody;
-          // If we didn't find the file we will create one
-          if (responseCode == 404) {
-            apiRequestBody = 
-                "{"
-                + "\"message\":\"Creating new file from template.\","
-                + "\"content\":\"" + encodedContent + "\","
-                + "\"branch\":\"" + branch + "\""
-              + "}";
-          } 
-          // Otherwise we will update the existing file
-          else if (fileExistsResult != null) {
-            // To update a file the GitHub api requires the sha of the updated file.
-            String sha = (String) fileExistsResult.get("sha");
-            
-            apiRequestBody = 
-                "{"
-                + "\"message\":\"Overwriting file.\","
-                + "\"content\":\"" + encodedContent + "\","
-                + "\"sha\":\"" + sha + "\","
-                + "\"branch\":\"" + branch + "\""
-              + "}";
+          if (GithubSaveJournal.isEnabled()) {
+            // The file is committed in the background.
+            GithubSaveJournal.append(urlPathPart, accessToken, getContent(savedContent));
           } else {
-            throw new IOException("Could not create or update file on GitHub");
+            // Files saved at the same time on the branch are committed together.
+            GithubCommitEngine.save(new GithubCommitEngine.FileChange(urlPathPart, null) {
+              @Override
+              InputStream openContent() throws IOException {
+                return getContent(savedContent);
+              }
+            }, accessToken);
           }
-          
-          HttpURLConnection urlConnection = (HttpURLConnection) apiCallUrl.openConnection();
-          urlConnection.setRequestProperty("Content-Type", "application/json");
-          urlConnection.setRequestProperty("Authorization", "token " + accessToken);
-          urlConnection.setRequestMethod("PUT");
-          urlConnection.setDoOutput(true);
-          
-          OutputStream outputStream = urlConnection.getOutputStream();
-          outputStream.write(apiRequestBody.getBytes());
-          outputStream.flush();
-          
-          outputStream.close();
         } catch (IOException e) {
           filterClientSecret(e);
-        } 
+        } finally {
+          if (!isInMemory()) {
+            getFile().delete();
+          }
+        }
+        // The save was kept, but the user should know that a previous one could not be committed.
+        checkSaveFailures();
       }
     };
   }
   
+  /**
+   * Commits a file with the Contents API.
+   * 
+   * @param change The file.
+   * @param accessToken The access token of the user.
+   * 
+   * @throws IOException If the file could not be committed.
+   */
+  static void commitFile(GithubCommitEngine.FileChange change, String accessToken) throws IOException {
+    String urlPathPart = change.urlPathPart;
+    // The file is updated on the branch, not on the commit it was read from.
+    URL apiCallUrl = new URL(GithubUrlStreamHandler.getApiUrlString(urlPathPart));
+    
+    // We need to send the branch as a property of the JSON request body
+    String branch = getBranch(urlPathPart);
+    
+    // To update a file the GitHub api requires the sha of the updated file, 
+    // which we usually know from when the file was read.
+    String sha = change.baseSha != null ? change.baseSha : GithubBlobShas.get(urlPathPart);
+    HttpURLConnection urlConnection = putContent(apiCallUrl, change.openContent(), branch, sha, accessToken);
+    int responseCode = GithubHttpClient.getResponseCode(urlConnection);
+    
+    if (responseCode == HttpURLConnection.HTTP_CONFLICT || responseCode == HTTP_UNPROCESSABLE_ENTITY) {
+      // The file changed since we read it (409) or we did not know that it exists (422).
+      GithubHttpClient.release(urlConnection);
+      if (change.baseSha != null) {
+        // The change was made on a content which is not the current one, it must not overwrite it.
+        throw new CommitRejectedException("The file was changed on GitHub since it was opened: " + urlPathPart);
+      }
+      sha = getCurrentSha(apiCallUrl, accessToken);
+      urlConnection = putContent(apiCallUrl, change.openContent(), branch, sha, accessToken);
+      responseCode = GithubHttpClient.getResponseCode(urlConnection);
+    }
+    
+    if (responseCode >= 400) {
+      GithubHttpClient.release(urlConnection);
+      throw GithubCommitEngine.createFailure(responseCode, 
+          responseCode + " " + urlConnection.getResponseMessage() + " for: " + urlPathPart);
+    }
+    
+    GithubFileUpdateResult updateResult = GithubUtil.parseFileUpdateResult(GithubHttpClient.getInputStream(urlConnection));
+    onSaved(urlPathPart, updateResult.content != null ? updateResult.content.sha : null);
+  }
+  
+  /**
+   * Updates the caches after a file was committed.
+   * 
+   * @param urlPathPart The path of the file url: /$owner/$repo/$branch/$path
+   * @param sha The blob sha of the committed file, <code>null</code> if not known.
+   */
+  static void onSaved(String urlPathPart, String sha) {
+    // The file changed, there is no point in revalidating the cached content.
+    GithubContentCache.invalidate(urlPathPart);
+    GithubMissingPaths.invalidate(urlPathPart);
+    // The branch moved, the next reads should see the new commit.
+    String[] urlComponents = urlPathPart.split("/");
+    GithubRefResolver.invalidate(urlComponents[1], urlComponents[2], urlComponents[3]);
+    if (sha != null) {
+      GithubBlobShas.put(urlPathPart, sha);
+    } else {
+      GithubBlobShas.invalidate(urlPathPart);
+    }
+  }
+  
+  /**
+   * Opens the content written to the output stream of this connection.
+   * 
+   * @param savedContent The output stream, after it was closed.
+   * 
+   * @return The content.
+   * 
+   * @throws IOException If the temporary file could not be opened.
+   */
+  private static InputStream getContent(DeferredFileOutputStream savedContent) throws IOException {
+    if (savedContent.isInMemory()) {
+      return new ByteArrayInputStream(savedContent.getData());
+    } else {
+      return new FileInputStream(savedContent.getFile());
+    }
+  }
+  
+  /**
+   * Makes the request which creates or updates the file.
+   * 
+   * The JSON request body is streamed to GitHub, base64 encoding the content as it is read.
+   * 
+   * @param apiCallUrl The Contents API url of the file.
+   * @param content The content of the file. It is closed by this method.
+   * @param branch The branch on which to commit.
+   * @param sha The sha of the file to update, <code>null</code> if the file should be created.
+   * @param accessToken The access token of the user.
+   * 
+   * @return The connection, after the request was sent.
+   * 
+   * @throws IOException If the request could not be sent.
+   */
+  private static HttpURLConnection putContent(URL apiCallUrl, InputStream content, String branch, String sha, 
+      String accessToken) throws IOException {
+    try {
+      Map<String, String> requestProperties = new LinkedHashMap<String, String>();
+      // If we don't know the file we will create one, otherwise we will update the existing file
+      requestProperties.put("message", sha == null ? "Creating new file from template." : "Overwriting file.");
+      requestProperties.put("branch", branch);
+      if (sha != null) {
+        requestProperties.put("sha", sha);
+      }
+      String requestPropertiesJson = GithubUtil.mapper.writeValueAsString(requestProperties);
+      
+      HttpURLConnection urlConnection = GithubHttpClient.open(apiCallUrl, accessToken);
+      urlConnection.setRequestProperty("Content-Type", "application/json");
+      urlConnection.setRequestMethod("PUT");
+      urlConnection.setDoOutput(true);
+      urlConnection.setChunkedStreamingMode(UPLOAD_CHUNK_SIZE);
+      
+      OutputStream outputStream = GithubHttpClient.getOutputStream(urlConnection);
+      try {
+        // The content is added as the last property of the JSON object: {"message":"...",...,"content":"BASE64"}
+        outputStream.write(requestPropertiesJson.substring(0, requestPropertiesJson.length() - 1).getBytes("UTF-8"));
+        outputStream.write(",\"content\":\"".getBytes("UTF-8"));
+        
+        // The base64 alphabet does not need to be escaped in JSON.
+        Base64.OutputStream encodingStream = new Base64.OutputStream(outputStream, Base64.ENCODE);
+        IOUtils.copy(content, encodingStream);
+        encodingStream.flushBase64();
+        
+        outputStream.write("\"}".getBytes("UTF-8"));
+        outputStream.flush();
+      } finally {
+        outputStream.close();
+      }
+      return urlConnection;
+    } finally {
+      content.close();
+    }
+  }
+  
+  /**
+   * Asks GitHub for the current sha of the file.
+   * 
+   * @param apiCallUrl The Contents API url of the file.
+   * @param accessToken The access token of the user.
+   * 
+   * @return The sha of the file or <code>null</code> if the file does not exist.
+   * 
+   * @throws IOException If the sha could not be obtained.
+   */
+  private static String getCurrentSha(URL apiCallUrl, String accessToken) throws IOException {
+    // Making a GET request to see if the file exists already
+    HttpURLConnection connToCheckIfFileExists = GithubHttpClient.open(apiCallUrl, accessToken);
+    connToCheckIfFileExists.setRequestMethod("GET");
+    
+    int responseCode = GithubHttpClient.getResponseCode(connToCheckIfFileExists);
+    if (responseCode == HttpURLConnection.HTTP_OK) {
+      return GithubUtil.parseGithubResult(GithubHttpClient.getInputStream(connToCheckIfFileExists)).sha;
+    } else {
+      GithubHttpClient.release(connToCheckIfFileExists);
+      if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+        return null;
+      } else {
+        throw new IOException("Could not create or update file on GitHub");
+      }
+    }
+  }
+  
+  /**
+   * @param urlPathPart The path of a file url: /$owner/$repo/$branch/$path
+   * 
+   * @return The branch of the file.
+   */
+  private static String getBranch(String urlPathPart) {
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    // We wil put the branch as a JSON property and we don't need to have it URL encoded there.
+    return URLUtil.decodeURIComponent(urlPathPart.split("/")[3]);
+  }
+  
   @Override
   public List<FolderEntryDescriptor> listFolder() throws IOException {
+    checkSaveFailures();
+    if (commitPathPart != null) {
+      // The folders of a resolved commit are listed from its index, without asking GitHub.
+      List<FolderEntryDescriptor> indexedEntries = GithubTreeIndex.listFolder(commitPathPart, urlPathPart, accessToken);
+      if (indexedEntries != null) {
+        return indexedEntries;
+      }
+    }
+    
+    if (GithubMissingPaths.isMissing(getContentKey(), accessToken)) {
+      checkRepositoryAccess(new IOException("404 Not Found for: " + urlPathPart));
+    }
+    
     List<FolderEntryDescriptor> filesList = new ArrayList<FolderEntryDescriptor>();
     try {
-      String githubJsonResult = GithubUtil
-          .inputStreamToString(delegateConnection.getInputStream());
-      
-      // If this is a Json array:
-      // [{content:'content'},{content:'content'},{content:'content'}]
-      if (githubJsonResult.charAt(0) == '[') {
-        List<GithubApiResult> githubResults = GithubUtil
-            .parseGithubListResult(githubJsonResult);
-
-        for (GithubApiResult result : githubResults) {
-          // Add a '/' when the file is a directory because this is how upstream
-          // identifies directories
-          String dirChar = "";
-          if (result.type.equals("dir")) {
-            dirChar = "/";
-          }
-
-          filesList.add(new FolderEntryDescriptor(URLUtil
-              .encodeURIComponent(result.name) + dirChar));
-        }
-      } else {
-        // The result is a file and its content is Base64 encoded in the content
-        // property
-        GithubApiResult githubResult = GithubUtil
-            .parseGithubResult(githubJsonResult);
-
-        byte[] decodedContent = Base64.decode(githubResult.content);
-        filesList.add(new FolderEntryDescriptor(new String(decodedContent)));
+      filesList = parseFolderEntries(GithubHttpClient.getInputStream((HttpURLConnection) delegateConnection), urlPathPart);
+      if (filesList.size() >= CONTENTS_API_MAX_ENTRIES) {
+        // The Contents API truncated the folder, the Git Trees API lists it entirely.
+        filesList = listFolderFromTree(filesList);
       }
     } catch (IOException e) {
       if (e.getMessage().startsWith("401") || e.getMessage().startsWith("403 Forbidden")) {
         // if the user is not authorized
+        GithubTokenValidator.invalidate(accessToken);
         throw new UserActionRequiredException(new WebappMessage(
             WebappMessage.MESSAGE_TYPE_CUSTOM, "Authentication required",
             "Authentication required", true));
       } if (e.getMessage().startsWith("404")) {
+        GithubMissingPaths.put(getContentKey(), accessToken);
         checkRepositoryAccess(e);
       } else {
         filterClientSecret(e);
@@ -223,6 +633,149 @@ public class GithubUrlConnection extends FilterURLConnection implements FileBrow
     return filesList;
   }
   
+  /**
+   * Lists the folder using the Git Trees API, which is not limited to 
+   * {@value #CONTENTS_API_MAX_ENTRIES} entries like the Contents API.
+   * 
+   * @param contentsEntries The entries returned by the Contents API.
+   * 
+   * @return The folder entries, or the given entries if the folder could not be listed.
+   */
+  private List<FolderEntryDescriptor> listFolderFromTree(List<FolderEntryDescriptor> contentsEntries) {
+    // The tree is identified as $ref:$path, where the ref is the resolved commit if there is one.
+    String[] urlComponents = (commitPathPart != null ? commitPathPart : urlPathPart).split("/");
+    StringBuilder treeish = new StringBuilder(urlComponents[3]);
+    for (int i = 4; i < urlComponents.length; i++) {
+      treeish.append(i == 4 ? ':' : '/').append(urlComponents[i]);
+    }
+    try {
+      HttpURLConnection treeConnection = GithubHttpClient.open(new URL(GithubUtil.getApiBaseUrl() + 
+          "/repos/" + urlComponents[1] + "/" + urlComponents[2] + "/git/trees/" + treeish + 
+          GithubUtil.getClientCredentialsQuery("?")), accessToken);
+      treeConnection.setRequestProperty("Accept", "application/vnd.github.v3+json");
+      return parseTreeEntries(GithubHttpClient.getInputStream(treeConnection), urlPathPart);
+    } catch (IOException e) {
+      logger.warn("Could not list the whole folder " + urlPathPart + ": " + e.getMessage());
+      return contentsEntries;
+    }
+  }
+  
+  /**
+   * Maps a Git Trees API response to the entries of a folder, remembering the shas of the files.
+   * 
+   * The response is parsed as it is read and only the descriptors of the entries are kept,
+   * so large folders are listed in little memory.
+   * 
+   * @param treeJson The Git Trees API response, for a single level of the tree.
+   * @param folderPathPart The path of the github url of the folder.
+   * @return The folder entries.
+   * @throws IOException If the response could not be read.
+   */
+  static List<FolderEntryDescriptor> parseTreeEntries(InputStream treeJson, String folderPathPart) throws IOException {
+    String folderPrefix = folderPathPart.endsWith("/") ? folderPathPart : folderPathPart + "/";
+    List<FolderEntryDescriptor> filesList = new ArrayList<FolderEntryDescriptor>();
+    JsonParser parser = GithubUtil.mapper.getJsonFactory().createJsonParser(treeJson);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unexpected tree response for " + folderPathPart);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("tree".equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String path = null;
+            String type = null;
+            String sha = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              String entryField = parser.getCurrentName();
+              parser.nextToken();
+              if ("path".equals(entryField)) {
+                path = parser.getText();
+              } else if ("type".equals(entryField)) {
+                type = parser.getText();
+              } else if ("sha".equals(entryField)) {
+                sha = parser.getText();
+              } else {
+                parser.skipChildren();
+              }
+            }
+            
+            String encodedName = URLUtil.encodeURIComponent(path);
+            if ("tree".equals(type)) {
+              // Add a '/' when the file is a directory because this is how upstream identifies directories
+              filesList.add(new FolderEntryDescriptor(encodedName + "/"));
+            } else if ("blob".equals(type)) {
+              GithubBlobShas.put(folderPrefix + encodedName, sha);
+              filesList.add(new FolderEntryDescriptor(encodedName));
+            }
+          }
+        } else if ("truncated".equals(field) && value == JsonToken.VALUE_TRUE) {
+          logger.warn("GitHub truncated the listing of " + folderPathPart);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    return filesList;
+  }
+  
+  /**
+   * Maps a Contents API response to the entries of a folder.
+   * 
+   * @param githubJson The Contents API response.
+   * @return The folder entries.
+   * @throws IOException If the response could not be read.
+   */
+  static List<FolderEntryDescriptor> parseFolderEntries(InputStream githubJson) throws IOException {
+    return parseFolderEntries(githubJson, null);
+  }
+  
+  /**
+   * Maps a Contents API response to the entries of a folder, remembering the shas of the files.
+   * 
+   * @param githubJson The Contents API response.
+   * @param folderPathPart The path of the github url of the folder, 
+   * <code>null</code> if the shas should not be remembered.
+   * @return The folder entries.
+   * @throws IOException If the response could not be read.
+   */
+  static List<FolderEntryDescriptor> parseFolderEntries(InputStream githubJson, String folderPathPart) throws IOException {
+    final String folderPrefix = folderPathPart == null ? null : 
+      folderPathPart.endsWith("/") ? folderPathPart : folderPathPart + "/";
+    final List<FolderEntryDescriptor> filesList = new ArrayList<FolderEntryDescriptor>();
+    // If this is a Json array:
+    // [{content:'content'},{content:'content'},{content:'content'}]
+    // the entries are mapped as they are parsed.
+    GithubApiResult githubResult = GithubUtil.parseGithubResults(githubJson, 
+        new GithubResultHandler() {
+          public void handle(GithubApiResult result) {
+            // Add a '/' when the file is a directory because this is how upstream
+            // identifies directories
+            String dirChar = "";
+            if (result.type.equals("dir")) {
+              dirChar = "/";
+            }
+            
+            String encodedName = URLUtil.encodeURIComponent(result.name);
+            if (folderPrefix != null && "file".equals(result.type)) {
+              GithubBlobShas.put(folderPrefix + encodedName, result.sha);
+            }
+            filesList.add(new FolderEntryDescriptor(encodedName + dirChar));
+          }
+        });
+    
+    if (githubResult != null) {
+      // The result is a file and its content is Base64 encoded in the content
+      // property
+      byte[] decodedContent = Base64.decode(githubResult.content);
+      filesList.add(new FolderEntryDescriptor(new String(decodedContent)));
+    }
+    return filesList;
+  }
+  
   /**
    * Checks whether the request was not completed because we don't have repo access or because of some other error.
    * 
@@ -232,48 +785,45 @@ public class GithubUrlConnection extends FilterURLConnection implements FileBrow
    * @throws IOException When we are re-throwing the exception given as a parameter.
    */
   private void checkRepositoryAccess(IOException e) throws UserActionRequiredException, IOException {
-    URL url = delegateConnection.getURL();
-    
-    // protocol://host:port/repos/:owner/:repo/
-    String protocol = url.getProtocol();
-    String host = url.getHost();
-    int port = url.getPort();
-    String[] pathComponents = url.getPath().split("/");
-    String owner = pathComponents[2];
-    String repo = pathComponents[3];
-    
-    String repositoryAccessCheck = protocol + "://" + host + (port != -1 ? ":" + port : "") + 
-                                   "/repos/" + owner + "/" + repo;
+    // The github url path structure is: /$owner/$repo/&branch/$path
+    String[] urlComponents = urlPathPart.split("/");
     
     try {
-      URL repositoryAccessCheckUrl = new URL(repositoryAccessCheck);
-      HttpURLConnection accessCheckConn = (HttpURLConnection) repositoryAccessCheckUrl.openConnection();
-      accessCheckConn.setRequestProperty("Authorization", "token " + accessToken);
-      accessCheckConn.setRequestProperty("Accept", "application/vnd.github.v3+json");
-      
-      
-      int responseCode = accessCheckConn.getResponseCode();
-      
       // If a user does not have access to view a repository on GitHub then he/she will receive a 404 error
       // In this case we want to return a 401 to let the user know they do not have access.
-      if (responseCode == 404 || responseCode == 401) {
+      // The answer is remembered for every token, the missing files of a repository are usually probed in bursts.
+      if (!GithubRepositories.hasAccess(urlComponents[1], urlComponents[2], accessToken)) {
         // The repository is not found, it means we do not have repo access. So throw 401.
         throw new UserActionRequiredException(new WebappMessage(
             WebappMessage.MESSAGE_TYPE_CUSTOM, "Authentication required",
             "Authentication required", true));
       }
-    } catch (MalformedURLException _) {} catch (IOException ex) {
-      if (ex.getMessage().startsWith("404") || ex.getMessage().startsWith("401")) {
-        throw new UserActionRequiredException(new WebappMessage(
-            WebappMessage.MESSAGE_TYPE_CUSTOM, "Authentication required",
-            "Authentication required", true));
-      }
+    } catch (RateLimitExceededException ex) {
+      // The access could not be checked, the user should know why.
+      throw ex;
+    } catch (UserActionRequiredException ex) {
+      throw ex;
+    } catch (IOException ex) {
+      // The access could not be checked, the original error is reported.
     }
     
     // If we didn't throw our custom exception, then just let this exception throw.
     filterClientSecret(e);
   }
   
+  /**
+   * Tells the user about their saves which could not be committed in the background.
+   * 
+   * @throws UserActionRequiredException If a save of the user could not be committed.
+   */
+  private void checkSaveFailures() throws UserActionRequiredException {
+    String failure = GithubSaveJournal.takeFailure(accessToken);
+    if (failure != null) {
+      throw new UserActionRequiredException(new WebappMessage(
+          WebappMessage.MESSAGE_TYPE_CUSTOM, "Save failed", failure, true));
+    }
+  }
+  
   /**
    * Filters out the client_secret from the message of an IOException.
    * @param e The exception from which to filter out.
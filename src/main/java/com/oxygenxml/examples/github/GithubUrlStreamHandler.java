@@ -5,6 +5,8 @@ import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
 
+import com.google.common.base.Joiner;
+
 import ro.sync.ecss.extensions.api.webapp.plugin.URLStreamHandlerWithContext;
 
 /**
@@ -20,31 +22,43 @@ public class GithubUrlStreamHandler extends URLStreamHandlerWithContext {
       Proxy proxy) throws IOException {
     
     String urlPathPart = url.getPath();
+    String accessToken = GitHubPlugin.accessTokens.getIfPresent(contextId);
+    
+    // The file is read from the head commit of the branch, whose files never change.
+    String[] urlComponents = urlPathPart.split("/");
+    String commitSha = urlComponents.length > 3 ? 
+        GithubRefResolver.resolve(urlComponents[1], urlComponents[2], urlComponents[3], accessToken) : null;
+    String commitPathPart = null;
+    if (commitSha != null) {
+      urlComponents[3] = commitSha;
+      commitPathPart = Joiner.on('/').join(urlComponents);
+    }
     
+    URL apiUrl = new URL(getApiUrlString(commitPathPart != null ? commitPathPart : urlPathPart));
+    return new GithubUrlConnection(GithubHttpClient.open(apiUrl, accessToken), accessToken, urlPathPart, commitPathPart);
+  }
+  
+  /**
+   * Builds the GitHub Contents API url of a file.
+   * 
+   * @param urlPathPart The path of a github url. Its structure is: /$owner/$repo/&branch/$path
+   * @return The url of the api call which gets the file.
+   */
+  static String getApiUrlString(String urlPathPart) {
     // The github url path structure is: /$owner/$repo/&branch/$path
     String[] urlComponents = urlPathPart.split("/");
     
     String owner = urlComponents[1];
     String repo = urlComponents[2];
     String branch = urlComponents[3];
-    String path = "";
+    StringBuilder path = new StringBuilder();
     
     for (int i = 4; i < urlComponents.length; ++i) {
-      path += "/" + urlComponents[i];
+      path.append('/').append(urlComponents[i]);
     }
     
-    String githubApiUrlString = 
-        (GitHubOauthServlet.apiUrl != null ? GitHubOauthServlet.apiUrl + "/api/v3" : "https://api.github.com") + 
-        "/repos/" + owner + "/" + repo + "/contents" + path + "?ref=" + branch;
-    
     // To increase the rate limit of the github api we must send the client secret and client id with each request
-    if (GitHubOauthServlet.clientId != null && GitHubOauthServlet.clientSecret != null) {
-      githubApiUrlString += "&client_id=" + GitHubOauthServlet.clientId + "&client_secret=" + GitHubOauthServlet.clientSecret;
-    }
-    
-    URL apiUrl = new URL(githubApiUrlString);
-    
-    String accessToken = GitHubPlugin.accessTokens.getIfPresent(contextId);
-    return new GithubUrlConnection(apiUrl.openConnection(), accessToken, urlPathPart);
+    return GithubUtil.getApiBaseUrl() + "/repos/" + owner + "/" + repo + "/contents" + path + "?ref=" + branch + 
+        GithubUtil.getClientCredentialsQuery("&");
   }
 }
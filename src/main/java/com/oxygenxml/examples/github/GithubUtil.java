@@ -1,15 +1,32 @@
 package com.oxygenxml.examples.github;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
 import org.codehaus.jackson.type.TypeReference;
 
 /**
@@ -19,6 +36,57 @@ import org.codehaus.jackson.type.TypeReference;
  *
  */
 public class GithubUtil {
+  /**
+   * The mapper used for all the JSON processing.
+   * It is thread-safe once configured, so it is built only once.
+   */
+  static final ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+  
+  /**
+   * Reader for a single github api result.
+   */
+  private static final ObjectReader resultReader = mapper.reader(GithubApiResult.class);
+  
+  /**
+   * Reader for a list of github api results.
+   */
+  private static final ObjectReader listResultReader = 
+      mapper.reader(new TypeReference<ArrayList<GithubApiResult>>() {});
+  
+  /**
+   * Reader for the github OAuth access token response.
+   */
+  private static final ObjectReader accessTokenReader = mapper.reader(GithubAccessTokenResult.class);
+  
+  /**
+   * Reader for the result of creating or updating a file.
+   */
+  private static final ObjectReader fileUpdateReader = mapper.reader(GithubFileUpdateResult.class);
+  
+  /**
+   * Reader for a github api repository result.
+   */
+  private static final ObjectReader repositoryReader = mapper.reader(GithubRepositoryResult.class);
+  
+  /**
+   * Reader for arbitrary JSON objects.
+   */
+  private static final ObjectReader mapReader = 
+      mapper.reader(new TypeReference<HashMap<String, Object>>() {});
+  
+  /**
+   * Receives the entries of a github api list result, one at a time.
+   */
+  public interface GithubResultHandler {
+    /**
+     * Called for each entry of the list.
+     * 
+     * @param result The list entry.
+     * @throws IOException If the entry could not be handled.
+     */
+    void handle(GithubApiResult result) throws IOException;
+  }
+  
   /**
    * Parses a JSON string
    * 
@@ -26,17 +94,25 @@ public class GithubUtil {
    * @return An object representing the response from github
    */
   public static GithubApiResult parseGithubResult(String githubJson) {
-    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-    TypeReference<GithubApiResult> typeRef = new TypeReference<GithubApiResult>() {};
-    
     GithubApiResult githubResult = null;
     try {
-      githubResult = mapper.readValue(githubJson, typeRef);
+      githubResult = resultReader.readValue(githubJson);
     } catch (Exception e) {}
     
     return githubResult;
   }
   
+  /**
+   * Parses a JSON stream
+   * 
+   * @param githubJson The Github json result to parse
+   * @return An object representing the response from github
+   * @throws IOException If the stream could not be read or is not valid JSON.
+   */
+  public static GithubApiResult parseGithubResult(InputStream githubJson) throws IOException {
+    return resultReader.readValue(githubJson);
+  }
+  
   /**
    * Parses a JSON string which is a list
    * 
@@ -44,17 +120,125 @@ public class GithubUtil {
    * @return A list of objects representing the response from github
    */
   public static List<GithubApiResult> parseGithubListResult(String githubJson) {
-    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-    TypeReference<ArrayList<GithubApiResult>> typeRef = new TypeReference<ArrayList<GithubApiResult>>() {};
-    
     ArrayList<GithubApiResult> githubResult = null;
     try {
-      githubResult = mapper.readValue(githubJson, typeRef);
+      githubResult = listResultReader.readValue(githubJson);
     } catch (Exception e) {}
     
     return githubResult;
   }
   
+  /**
+   * Parses a JSON stream which is either a list or a single object, without 
+   * materializing the whole list. 
+   * 
+   * @param githubJson The Github json to parse
+   * @param handler Receives the entries of the list, one at a time.
+   * @return The parsed object if the JSON is not a list, <code>null</code> otherwise.
+   * @throws IOException If the stream could not be read or is not valid JSON.
+   */
+  public static GithubApiResult parseGithubResults(InputStream githubJson, GithubResultHandler handler) throws IOException {
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(githubJson);
+    try {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          GithubApiResult result = resultReader.readValue(parser);
+          handler.handle(result);
+        }
+        return null;
+      } else {
+        return resultReader.readValue(parser);
+      }
+    } finally {
+      parser.close();
+    }
+  }
+  
+  /**
+   * Parses the response of the github OAuth access token request.
+   * 
+   * @param githubJson The Github json to parse
+   * @return An object representing the response from github
+   * @throws IOException If the stream could not be read or is not valid JSON.
+   */
+  public static GithubAccessTokenResult parseAccessTokenResult(InputStream githubJson) throws IOException {
+    return accessTokenReader.readValue(githubJson);
+  }
+  
+  /**
+   * Parses the response of the github api call which creates or updates a file.
+   * 
+   * @param githubJson The Github json to parse
+   * @return An object representing the response from github
+   * @throws IOException If the stream could not be read or is not valid JSON.
+   */
+  public static GithubFileUpdateResult parseFileUpdateResult(InputStream githubJson) throws IOException {
+    return fileUpdateReader.readValue(githubJson);
+  }
+  
+  /**
+   * Parses a github api repository result.
+   * 
+   * @param githubJson The Github json to parse
+   * @return An object representing the response from github
+   * @throws IOException If the stream could not be read or is not valid JSON.
+   */
+  public static GithubRepositoryResult parseRepositoryResult(InputStream githubJson) throws IOException {
+    return repositoryReader.readValue(githubJson);
+  }
+  
+  /**
+   * @return The prefix of all the GitHub API urls.
+   */
+  public static String getApiBaseUrl() {
+    String apiUrl = GitHubOauthServlet.apiUrl;
+    return apiUrl != null ? apiUrl + "/api/v3" : "https://api.github.com";
+  }
+  
+  /**
+   * To increase the rate limit of the github api we must send the client secret and client id with each request.
+   * 
+   * @param separator The character which separates the returned query parameters from the url, '?' or '&amp;'.
+   * @return The query parameters with the OAuth application credentials, or an empty string if they are not configured.
+   */
+  public static String getClientCredentialsQuery(String separator) {
+    String clientId = GitHubOauthServlet.clientId;
+    String clientSecret = GitHubOauthServlet.clientSecret;
+    if (clientId != null && clientSecret != null) {
+      return separator + "client_id=" + clientId + "&client_secret=" + clientSecret;
+    } else {
+      return "";
+    }
+  }
+  
+  /**
+   * Computes the sha which git uses to identify a file with the given content.
+   * 
+   * @param content The content of the file.
+   * @return The hex encoded blob sha.
+   */
+  public static String getGitBlobSha(byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + content.length + "\0").getBytes("UTF-8"));
+      digest.update(content);
+      byte[] sha = digest.digest();
+      
+      StringBuilder hex = new StringBuilder(sha.length * 2);
+      for (byte b : sha) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is available on all the platforms.
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is available on all the platforms.
+      throw new IllegalStateException(e);
+    }
+  }
+  
   /**
    * Transforms an InputStream to a String
    * @param inputStream The inputStream to transform
@@ -70,6 +254,77 @@ public class GithubUtil {
     }
   }
   
+  /**
+   * Reads a numeric property from the plugin configuration.
+   * 
+   * @param properties The plugin configuration properties.
+   * @param key The name of the property.
+   * @param defaultValue The value to use if the property is missing or is not a number.
+   * @return The value of the property.
+   */
+  public static long getLongProperty(Properties properties, String key, long defaultValue) {
+    String value = properties.getProperty(key);
+    if (value != null) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {}
+    }
+    return defaultValue;
+  }
+  
+  /**
+   * Creates a folder which only the owner of the process can access, or restricts the access to
+   * an existing one. On file systems without POSIX permissions the folder is created as usual.
+   * 
+   * @param folder The folder.
+   * @throws IOException If the folder could not be created or its permissions could not be set.
+   */
+  public static void createPrivateFolder(File folder) throws IOException {
+    Path path = folder.getAbsoluteFile().toPath();
+    if (!isPosix(path)) {
+      if (!folder.isDirectory() && !folder.mkdirs()) {
+        throw new IOException("Could not create the folder " + folder);
+      }
+      return;
+    }
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwx------");
+    if (!folder.isDirectory()) {
+      try {
+        // The permissions are set atomically, the folder is never accessible to others.
+        Files.createDirectories(path, PosixFilePermissions.asFileAttribute(permissions));
+        return;
+      } catch (FileAlreadyExistsException e) {
+        // Created concurrently.
+      }
+    }
+    Files.setPosixFilePermissions(path, permissions);
+  }
+  
+  /**
+   * Creates a new file which only the owner of the process can read and write, and opens it for writing.
+   * On file systems without POSIX permissions the file is created as usual.
+   * 
+   * @param file The file, which must not exist.
+   * @return The stream to write the file.
+   * @throws IOException If the file could not be created.
+   */
+  public static FileOutputStream createPrivateFile(File file) throws IOException {
+    Path path = file.getAbsoluteFile().toPath();
+    if (isPosix(path)) {
+      // The permissions are set atomically, the content is never readable by others.
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    }
+    return new FileOutputStream(file);
+  }
+  
+  /**
+   * @param path A path.
+   * @return <code>true</code> if the file system of the path supports POSIX permissions.
+   */
+  private static boolean isPosix(Path path) {
+    return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+  
   /**
    * Parses a JSON string
    * 
@@ -77,16 +332,65 @@ public class GithubUtil {
    * @returns A map of information needed for the github oauth flow
    */
   public static HashMap<String, Object> parseJSON(String json) {
-    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-    TypeReference<HashMap<String, Object>> typeRef = new TypeReference<HashMap<String, Object>>() {};
+    HashMap<String, Object> githubInfo = null;
+    try {
+      githubInfo = mapReader.readValue(json);
+    } catch (Exception e) {
+      return null;
+    }
     
+    return githubInfo;
+  }
+  
+  /**
+   * Parses a JSON stream
+   * 
+   * @param json The JSON stream to parse
+   * @return A map representing the JSON object, or <code>null</code> if the stream is not a valid JSON object
+   */
+  public static HashMap<String, Object> parseJSON(InputStream json) {
     HashMap<String, Object> githubInfo = null;
     try {
-      githubInfo = mapper.readValue(json, typeRef);
+      githubInfo = mapReader.readValue(json);
     } catch (Exception e) {
       return null;
     }
     
     return githubInfo;
   }
+  
+  /**
+   * Parses a JSON object one property at a time, as it is read from the stream.
+   * String properties are kept, object properties are parsed as maps and the other properties are skipped,
+   * so large documents sent as strings are decoded only once.
+   * 
+   * @param json The JSON stream to parse
+   * @return A map of the string and object properties
+   * @throws IOException If the stream could not be read.
+   * @throws JsonProcessingException If the stream is not a JSON object.
+   */
+  public static HashMap<String, Object> parseJSONObject(InputStream json) throws IOException {
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(json);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+      }
+      
+      HashMap<String, Object> properties = new HashMap<String, Object>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (value == JsonToken.VALUE_STRING) {
+          properties.put(name, parser.getText());
+        } else if (value == JsonToken.START_OBJECT) {
+          properties.put(name, mapper.readValue(parser, HashMap.class));
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return properties;
+    } finally {
+      parser.close();
+    }
+  }
 } 
@@ -0,0 +1,279 @@
+package com.oxygenxml.examples.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonProcessingException;
+
+import com.google.common.base.Joiner;
+
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+import ro.sync.util.URLUtil;
+
+/**
+ * Receives the webhooks of GitHub repositories, to forget what is cached about the branches which changed.
+ *
+ * The <code>push</code>, <code>create</code> and <code>delete</code> events are handled. A push forgets
+ * the head commit of the branch and the shas of the files it changed. The contents are cached by commit,
+ * so forgetting the head commit is enough for the new contents to be read. The webhooks must be configured
+ * with the same secret as the plugin, the requests which are not signed with it are rejected.
+ *
+ * The cached entries are found by the owner and repository names as GitHub sends them, so the files
+ * opened with differently cased names are only refreshed by the expiration of the caches.
+ */
+public class GithubWebhookServlet extends WebappServletPluginExtension {
+
+  /**
+   * The largest payload sent by GitHub.
+   */
+  private static final int MAX_PAYLOAD_BYTES = 25 * 1024 * 1024;
+
+  /**
+   * The maximum number of commits listed in a push payload. When a push has more,
+   * the changed files are not all listed.
+   */
+  private static final int MAX_PUSH_COMMITS = 20;
+
+  /**
+   * The prefix of the branch references.
+   */
+  private static final String BRANCH_REF_PREFIX = "refs/heads/";
+
+  /**
+   * The prefix of the tag references.
+   */
+  private static final String TAG_REF_PREFIX = "refs/tags/";
+
+  /**
+   * Logger for logging.
+   */
+  private static final Logger logger = Logger.getLogger(GithubWebhookServlet.class.getName());
+
+  /**
+   * The secret with which the webhooks are signed, <code>null</code> if the webhooks are not accepted.
+   */
+  private static volatile String secret;
+
+  @Override
+  public String getPath() {
+    return "github-webhook";
+  }
+
+  /**
+   * Sets the secret of the webhooks.
+   *
+   * @param secret The secret with which the webhooks are signed, <code>null</code> to reject all the webhooks.
+   */
+  static void configure(String secret) {
+    GithubWebhookServlet.secret = secret != null && !secret.isEmpty() ? secret : null;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+      throws ServletException, IOException {
+    String webhookSecret = secret;
+    if (webhookSecret == null) {
+      // Webhooks are not enabled.
+      httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    byte[] body = readBody(httpRequest.getInputStream());
+    if (body == null) {
+      httpResponse.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+    if (!isSigned(body, webhookSecret, httpRequest.getHeader("X-Hub-Signature-256"), "HmacSHA256", "sha256=")
+        && !isSigned(body, webhookSecret, httpRequest.getHeader("X-Hub-Signature"), "HmacSHA1", "sha1=")) {
+      httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+
+    JsonNode payload;
+    try {
+      payload = GithubUtil.mapper.readTree(new ByteArrayInputStream(getJsonPayload(body)));
+    } catch (JsonProcessingException e) {
+      httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    } catch (IllegalArgumentException e) {
+      // A malformed form payload.
+      httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    String[] repository = payload.path("repository").path("full_name").asText().split("/");
+    if (repository.length != 2) {
+      // A ping of an organization webhook, for example.
+      httpResponse.setStatus(HttpServletResponse.SC_NO_CONTENT);
+      return;
+    }
+
+    String event = httpRequest.getHeader("X-GitHub-Event");
+    if ("push".equals(event)) {
+      handlePush(repository[0], repository[1], payload);
+    } else if ("create".equals(event) || "delete".equals(event)) {
+      // A branch or a tag was created or deleted.
+      invalidateRef(repository[0], repository[1], payload.path("ref").asText());
+    }
+    httpResponse.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  /**
+   * Forgets what is cached about the branch or tag to which commits were pushed.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param payload The payload of the push event.
+   */
+  static void handlePush(String owner, String repo, JsonNode payload) {
+    String fullRef = payload.path("ref").asText();
+    String ref;
+    if (fullRef.startsWith(BRANCH_REF_PREFIX)) {
+      ref = fullRef.substring(BRANCH_REF_PREFIX.length());
+    } else if (fullRef.startsWith(TAG_REF_PREFIX)) {
+      ref = fullRef.substring(TAG_REF_PREFIX.length());
+    } else {
+      return;
+    }
+
+    JsonNode commits = payload.path("commits");
+    if (payload.path("forced").asBoolean() || payload.path("deleted").asBoolean() ||
+        commits.size() >= MAX_PUSH_COMMITS) {
+      // The changed files are not all known.
+      invalidateRef(owner, repo, ref);
+      return;
+    }
+
+    Set<String> paths = new LinkedHashSet<String>();
+    for (JsonNode commit : commits) {
+      for (String change : new String[] {"added", "modified", "removed"}) {
+        for (JsonNode path : commit.path(change)) {
+          paths.add(path.asText());
+        }
+      }
+    }
+
+    String encodedRef = URLUtil.encodeURIComponent(ref);
+    String refPathPart = "/" + owner + "/" + repo + "/" + encodedRef + "/";
+    GithubRefResolver.invalidate(owner, repo, encodedRef);
+    // The folders of the added files may have been missing.
+    GithubMissingPaths.invalidateFolder(refPathPart);
+    for (String path : paths) {
+      List<String> encodedPath = new ArrayList<String>();
+      for (String segment : path.split("/")) {
+        encodedPath.add(URLUtil.encodeURIComponent(segment));
+      }
+      GithubBlobShas.invalidate(refPathPart + Joiner.on('/').join(encodedPath));
+    }
+    logger.debug("Push to " + owner + "/" + repo + " " + ref + " changed " + paths.size() + " files");
+  }
+
+  /**
+   * Forgets everything cached about a branch or a tag.
+   *
+   * @param owner The owner of the repository.
+   * @param repo The name of the repository.
+   * @param ref The name of the branch or tag.
+   */
+  static void invalidateRef(String owner, String repo, String ref) {
+    if (ref.isEmpty()) {
+      return;
+    }
+    String encodedRef = URLUtil.encodeURIComponent(ref);
+    String refPathPart = "/" + owner + "/" + repo + "/" + encodedRef + "/";
+    GithubRefResolver.invalidate(owner, repo, encodedRef);
+    GithubMissingPaths.invalidateFolder(refPathPart);
+    GithubBlobShas.invalidateFolder(refPathPart);
+  }
+
+  /**
+   * Reads the body of a webhook request.
+   *
+   * @param requestBody The body stream.
+   *
+   * @return The body or <code>null</code> if it is too large.
+   *
+   * @throws IOException If the body could not be read.
+   */
+  private static byte[] readBody(InputStream requestBody) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = requestBody.read(buffer)) != -1) {
+      body.write(buffer, 0, read);
+      if (body.size() > MAX_PAYLOAD_BYTES) {
+        return null;
+      }
+    }
+    return body.toByteArray();
+  }
+
+  /**
+   * Checks the signature of a webhook request.
+   *
+   * @param body The body of the request.
+   * @param secret The secret of the webhooks.
+   * @param signature The value of the signature header, <code>null</code> if it is missing.
+   * @param algorithm The MAC algorithm of the signature.
+   * @param prefix The prefix of the signature header value, which names the algorithm.
+   *
+   * @return <code>true</code> if the body was signed with the secret.
+   */
+  static boolean isSigned(byte[] body, String secret, String signature, String algorithm, String prefix) {
+    if (signature == null || !signature.startsWith(prefix)) {
+      return false;
+    }
+    try {
+      Mac mac = Mac.getInstance(algorithm);
+      mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), algorithm));
+      byte[] hash = mac.doFinal(body);
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      // Compared in constant time, so that the signature cannot be guessed from the response times.
+      return MessageDigest.isEqual(hex.toString().getBytes("UTF-8"),
+          signature.substring(prefix.length()).toLowerCase().getBytes("UTF-8"));
+    } catch (GeneralSecurityException e) {
+      logger.error("Could not check the webhook signature: " + e.getMessage());
+      return false;
+    } catch (IOException e) {
+      // UTF-8 is available on all the platforms.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns the JSON payload of a webhook, which is either the body, or its "payload" form parameter.
+   *
+   * @param body The body of the request.
+   *
+   * @return The JSON payload.
+   *
+   * @throws IOException If the form could not be decoded.
+   */
+  private static byte[] getJsonPayload(byte[] body) throws IOException {
+    String form = "payload=";
+    if (body.length > form.length() && new String(body, 0, form.length(), "UTF-8").equals(form)) {
+      return URLDecoder.decode(new String(body, form.length(), body.length - form.length(), "UTF-8"), "UTF-8")
+          .getBytes("UTF-8");
+    }
+    return body;
+  }
+}
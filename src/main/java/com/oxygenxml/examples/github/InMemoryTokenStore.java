@@ -0,0 +1,73 @@
+package com.oxygenxml.examples.github;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the access tokens in the memory of this node.
+ *
+ * The tokens of the sessions which were not used for a while are discarded, 
+ * so the size limit is only a safety net.
+ */
+public class InMemoryTokenStore implements TokenStore {
+
+  /**
+   * The default maximum number of sessions for which a token is kept.
+   */
+  static final long DEFAULT_MAX_SESSIONS = 200000;
+
+  /**
+   * The default number of seconds after which the token of an unused session is discarded.
+   */
+  static final long DEFAULT_IDLE_SECONDS = 12 * 3600;
+
+  /**
+   * The default number of threads expected to update the store at the same time.
+   */
+  static final long DEFAULT_CONCURRENCY_LEVEL = 64;
+
+  /**
+   * A map of <sessionId, access_token>.
+   */
+  private final Cache<String, String> accessTokens;
+
+  /**
+   * Constructor with the default settings.
+   */
+  public InMemoryTokenStore() {
+    this(DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_SECONDS, DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxSessions The maximum number of sessions for which a token is kept.
+   * @param idleSeconds The number of seconds after which the token of an unused session is discarded.
+   * @param concurrencyLevel The number of threads expected to update the store at the same time.
+   */
+  public InMemoryTokenStore(long maxSessions, long idleSeconds, long concurrencyLevel) {
+    accessTokens = CacheBuilder.newBuilder()
+        .concurrencyLevel((int) Math.max(1, concurrencyLevel))
+        .maximumSize(maxSessions)
+        .expireAfterAccess(idleSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  public String getIfPresent(String sessionId) {
+    return accessTokens.getIfPresent(sessionId);
+  }
+
+  public void put(String sessionId, String accessToken) {
+    accessTokens.put(sessionId, accessToken);
+  }
+
+  public void invalidate(String sessionId) {
+    accessTokens.invalidate(sessionId);
+  }
+
+  public void invalidateAll() {
+    accessTokens.invalidateAll();
+  }
+}
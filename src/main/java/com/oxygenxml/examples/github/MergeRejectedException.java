@@ -0,0 +1,35 @@
+package com.oxygenxml.examples.github;
+
+/**
+ * Thrown when a three-way merge is not started because the server is too busy or the documents are too large.
+ */
+public class MergeRejectedException extends Exception {
+
+  /**
+   * Serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The number of seconds after which the merge can be retried, -1 if retrying will not help.
+   */
+  private final int retryAfterSeconds;
+
+  /**
+   * Constructor.
+   *
+   * @param message The reason of the rejection.
+   * @param retryAfterSeconds The number of seconds after which the merge can be retried, -1 if retrying will not help.
+   */
+  public MergeRejectedException(String message, int retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * @return The number of seconds after which the merge can be retried, -1 if retrying will not help.
+   */
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
@@ -0,0 +1,37 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request to GitHub is not made, or was rejected, because the API rate limit was exceeded.
+ */
+public class RateLimitExceededException extends IOException {
+
+  /**
+   * Serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The time when requests can be made again, in milliseconds since the epoch.
+   */
+  private final long retryAt;
+
+  /**
+   * Constructor.
+   *
+   * @param retryAt The time when requests can be made again, in milliseconds since the epoch.
+   */
+  public RateLimitExceededException(long retryAt) {
+    super("GitHub API rate limit exceeded, please try again in " + 
+        Math.max(1, (retryAt - System.currentTimeMillis() + 59999) / 60000) + " minute(s).");
+    this.retryAt = retryAt;
+  }
+
+  /**
+   * @return The time when requests can be made again, in milliseconds since the epoch.
+   */
+  public long getRetryAt() {
+    return retryAt;
+  }
+}
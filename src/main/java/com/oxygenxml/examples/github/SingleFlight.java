@@ -0,0 +1,66 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes sure that concurrent calls with the same key are executed only once.
+ * The callers which arrive while a call is in progress wait for it and share its result.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the results.
+ */
+class SingleFlight<K, V> {
+
+  /**
+   * The calls in progress.
+   */
+  private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+  /**
+   * Executes a call, unless a call with the same key is in progress, in which case its result is returned.
+   * The call is executed on the calling thread.
+   *
+   * @param key The key of the call.
+   * @param call The call.
+   *
+   * @return The result of the call.
+   *
+   * @throws IOException The exception thrown by the call.
+   */
+  V execute(K key, Callable<V> call) throws IOException {
+    FutureTask<V> task = new FutureTask<V>(call);
+    FutureTask<V> existingTask = inFlight.putIfAbsent(key, task);
+    if (existingTask == null) {
+      try {
+        task.run();
+      } finally {
+        inFlight.remove(key, task);
+      }
+    } else {
+      task = existingTask;
+    }
+
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + key);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.oxygenxml.examples.github;
+
+/**
+ * Holds the GitHub access token of each session.
+ *
+ * The store used by the plugin is chosen with the <code>token_store</code> property. Implementations
+ * other than the built-in ones must have a public constructor without arguments and be thread-safe.
+ */
+public interface TokenStore {
+
+  /**
+   * @param sessionId The id of the session.
+   *
+   * @return The access token of the session or <code>null</code> if it is not known.
+   */
+  String getIfPresent(String sessionId);
+
+  /**
+   * Stores the access token of a session.
+   *
+   * @param sessionId The id of the session.
+   * @param accessToken The access token.
+   */
+  void put(String sessionId, String accessToken);
+
+  /**
+   * Forgets the access token of a session.
+   *
+   * @param sessionId The id of the session.
+   */
+  void invalidate(String sessionId);
+
+  /**
+   * Forgets the access tokens of all the sessions.
+   */
+  void invalidateAll();
+}
@@ -0,0 +1,113 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link FileTokenStore}.
+ */
+public class FileTokenStoreTest {
+
+  /**
+   * The parent of the store folder.
+   */
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * The folder of the store.
+   */
+  private File storeFolder;
+
+  /**
+   * Chooses the folder of the store.
+   */
+  @Before
+  public void setUp() {
+    storeFolder = new File(temporaryFolder.getRoot(), "tokens");
+  }
+
+  /**
+   * A token stored by a node is read by the other nodes, until it is invalidated.
+   */
+  @Test
+  public void testTokensAreSharedBetweenNodes() throws Exception {
+    FileTokenStore node = new FileTokenStore(storeFolder, 3600);
+    FileTokenStore otherNode = new FileTokenStore(storeFolder, 3600);
+
+    node.put("session-a", "token-a");
+    assertEquals("token-a", otherNode.getIfPresent("session-a"));
+    assertNull(otherNode.getIfPresent("session-b"));
+
+    node.put("session-a", "token-b");
+    assertEquals("token-b", new FileTokenStore(storeFolder, 3600).getIfPresent("session-a"));
+
+    node.invalidate("session-a");
+    assertNull(new FileTokenStore(storeFolder, 3600).getIfPresent("session-a"));
+  }
+
+  /**
+   * The session ids are not exposed and only the owner of the process can read the tokens.
+   */
+  @Test
+  public void testTokensArePrivate() throws Exception {
+    FileTokenStore store = new FileTokenStore(storeFolder, 3600);
+    store.put("session-a", "token-a");
+
+    File[] files = storeFolder.listFiles();
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().matches("[0-9a-f]{64}"));
+    if (isPosix()) {
+      assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(storeFolder.toPath())));
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(files[0].toPath())));
+    }
+  }
+
+  /**
+   * The token file is not written again when the same token is stored.
+   */
+  @Test
+  public void testSameTokenIsNotRewritten() throws Exception {
+    FileTokenStore store = new FileTokenStore(storeFolder, 3600);
+    store.put("session-a", "token-a");
+    File file = storeFolder.listFiles()[0];
+    long lastModified = System.currentTimeMillis() - 10000;
+    assertTrue(file.setLastModified(lastModified));
+
+    store.put("session-a", "token-a");
+
+    assertEquals(1, storeFolder.listFiles().length);
+    assertEquals(lastModified / 1000, file.lastModified() / 1000);
+  }
+
+  /**
+   * The tokens of the sessions which are not used are discarded.
+   */
+  @Test
+  public void testIdleTokensAreDiscarded() throws Exception {
+    FileTokenStore store = new FileTokenStore(storeFolder, 1);
+    store.put("session-a", "token-a");
+    File file = storeFolder.listFiles()[0];
+    assertTrue(file.setLastModified(System.currentTimeMillis() - 5000));
+
+    assertNull(new FileTokenStore(storeFolder, 1).getIfPresent("session-a"));
+    assertEquals(0, storeFolder.listFiles().length);
+  }
+
+  /**
+   * @return <code>true</code> if the file system of the store supports POSIX permissions.
+   */
+  private boolean isPosix() {
+    return temporaryFolder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+}
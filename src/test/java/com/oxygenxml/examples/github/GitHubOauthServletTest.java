@@ -0,0 +1,313 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.sync.exml.workspace.api.PluginWorkspaceProvider;
+import ro.sync.merge.MergeResult.ResultType;
+
+/**
+ * Tests for the merge requests of {@link GitHubOauthServlet}: their admission and their compression.
+ */
+public class GitHubOauthServletTest {
+
+  /**
+   * The path of the merge requests.
+   */
+  private static final String MERGE_PATH = "/github-oauth/github_commit_merge";
+
+  /**
+   * A response recorded by the tests.
+   */
+  private static class Response {
+    /**
+     * The status code.
+     */
+    int status = HttpServletResponse.SC_OK;
+    /**
+     * The headers.
+     */
+    final Map<String, String> headers = new HashMap<String, String>();
+    /**
+     * The body.
+     */
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  }
+
+  /**
+   * Lets the blocked merges finish.
+   */
+  private CountDownLatch unblock;
+
+  /**
+   * The threads waiting for merges in the background.
+   */
+  private ExecutorService callers;
+
+  /**
+   * Enables the servlet and configures a merge budget of 1 MB with a short queue timeout.
+   */
+  @Before
+  public void setUp() {
+    GitHubOauthServlet.clientId = "client";
+    GitHubOauthServlet.clientSecret = "secret";
+    GithubMergeExecutor.configure(2, 1, 200);
+    unblock = new CountDownLatch(1);
+    callers = Executors.newCachedThreadPool();
+  }
+
+  /**
+   * Restores the default configuration.
+   */
+  @After
+  public void tearDown() {
+    unblock.countDown();
+    callers.shutdown();
+    GitHubOauthServlet.clientId = null;
+    GitHubOauthServlet.clientSecret = null;
+    GithubMergeExecutor.configure(GithubMergeExecutor.getDefaultThreads(),
+        GithubMergeExecutor.getDefaultMemoryBudgetMb(), GithubMergeExecutor.DEFAULT_QUEUE_TIMEOUT_MS);
+    PluginWorkspaceProvider.setPluginWorkspace(null);
+    GithubMergeCache.configure(GithubMergeCache.DEFAULT_MAX_CHARS);
+  }
+
+  /**
+   * A gzipped request body is decompressed.
+   */
+  @Test
+  public void testGzipRequestIsRead() throws Exception {
+    GithubMergeCache.put(GithubMergeCache.getKey("a", "b", "c"), "<merged/>", ResultType.CLEAN);
+
+    Response response = post(MERGE_PATH, gzip(createMergeRequest("a", "b", "c")), "Content-Encoding", "gzip");
+
+    assertEquals(HttpServletResponse.SC_OK, response.status);
+    assertEquals("CLEAN", response.headers.get("OXY-Merge-Result"));
+    assertEquals("<merged/>", response.body.toString("UTF-8"));
+  }
+
+  /**
+   * A request body which is said to be gzipped but is not is refused.
+   */
+  @Test
+  public void testMalformedGzipIsRefused() throws Exception {
+    GithubMergeCache.put(GithubMergeCache.getKey("a", "b", "c"), "<merged/>", ResultType.CLEAN);
+
+    Response response = post(MERGE_PATH, createMergeRequest("a", "b", "c"), "Content-Encoding", "gzip");
+
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.status);
+  }
+
+  /**
+   * The responses shorter than 1 KB are not compressed, even if the client accepts it.
+   */
+  @Test
+  public void testSmallResponseIsNotCompressed() throws Exception {
+    String merged = GithubMergeExecutorTest.createDocument(1023);
+    GithubMergeCache.put(GithubMergeCache.getKey("a", "b", "c"), merged, ResultType.CLEAN);
+
+    Response response = post(MERGE_PATH, createMergeRequest("a", "b", "c"), "Accept-Encoding", "gzip, deflate");
+
+    assertNull(response.headers.get("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.headers.get("Vary"));
+    assertEquals(merged, response.body.toString("UTF-8"));
+  }
+
+  /**
+   * The responses of at least 1 KB are compressed only for the clients which accept gzip.
+   */
+  @Test
+  public void testLargeResponseIsCompressedWhenAccepted() throws Exception {
+    String merged = GithubMergeExecutorTest.createDocument(1024);
+    GithubMergeCache.put(GithubMergeCache.getKey("a", "b", "c"), merged, ResultType.CLEAN);
+
+    Response response = post(MERGE_PATH, createMergeRequest("a", "b", "c"), "Accept-Encoding", "deflate, GZIP");
+    assertEquals("gzip", response.headers.get("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.headers.get("Vary"));
+    assertEquals(merged, new String(
+        IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(response.body.toByteArray()))), "UTF-8"));
+
+    response = post(MERGE_PATH, createMergeRequest("a", "b", "c"), "Accept-Encoding", "deflate");
+    assertNull(response.headers.get("Content-Encoding"));
+    assertEquals(merged, response.body.toString("UTF-8"));
+
+    response = post(MERGE_PATH, createMergeRequest("a", "b", "c"));
+    assertNull(response.headers.get("Content-Encoding"));
+    assertEquals(merged, response.body.toString("UTF-8"));
+  }
+
+  /**
+   * The documents too large to be merged are refused with 413, the client should not retry.
+   */
+  @Test
+  public void testTooLargeMergeIsRefused() throws Exception {
+    String document = GithubMergeExecutorTest.createDocument(3 * GithubMergeExecutorTest.HALF_BUDGET_CHARS);
+
+    Response response = post(MERGE_PATH, createMergeRequest(document, document + "b", document + "c"));
+
+    assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.status);
+    assertNull(response.headers.get("Retry-After"));
+  }
+
+  /**
+   * A merge which cannot be admitted while the server is busy is refused with 503 and a time to retry.
+   */
+  @Test
+  public void testBusyServerAsksToRetry() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    GithubMergeExecutorTest.setMerger(new Callable<Object>() {
+      public Object call() throws InterruptedException {
+        started.countDown();
+        unblock.await();
+        return null;
+      }
+    });
+    final String document = GithubMergeExecutorTest.createDocument(GithubMergeExecutorTest.HALF_BUDGET_CHARS);
+    Future<?> running = callers.submit(new Callable<Object>() {
+      public Object call() throws Exception {
+        return GithubMergeExecutor.merge(document, document, document);
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    Response response = post(MERGE_PATH, createMergeRequest(document, document + "b", document + "c"));
+
+    assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.status);
+    assertTrue(Integer.parseInt(response.headers.get("Retry-After")) > 0);
+    unblock.countDown();
+    running.get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param ancestor The common ancestor.
+   * @param left The version with the user changes.
+   * @param right The latest version.
+   *
+   * @return The body of a merge request which sends the documents.
+   */
+  private static byte[] createMergeRequest(String ancestor, String left, String right) throws IOException {
+    Map<String, String> request = new LinkedHashMap<String, String>();
+    request.put("ancestor", ancestor);
+    request.put("left", left);
+    request.put("right", right);
+    return GithubUtil.mapper.writeValueAsString(request).getBytes("UTF-8");
+  }
+
+  /**
+   * @param content The content to compress.
+   *
+   * @return The gzipped content.
+   */
+  private static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(compressed);
+    out.write(content);
+    out.close();
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Sends a POST request to the servlet.
+   *
+   * @param path The path of the request.
+   * @param body The body of the request.
+   * @param headers The names and values of the request headers.
+   *
+   * @return The response.
+   */
+  private static Response post(final String path, final byte[] body, String... headers) throws Exception {
+    final Map<String, String> requestHeaders = new HashMap<String, String>();
+    for (int i = 0; i + 1 < headers.length; i += 2) {
+      requestHeaders.put(headers[i], headers[i + 1]);
+    }
+    final HttpSession session = (HttpSession) Proxy.newProxyInstance(
+        GitHubOauthServletTest.class.getClassLoader(), new Class<?>[] {HttpSession.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getId".equals(method.getName())) {
+              return "session";
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+        GitHubOauthServletTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getPathInfo".equals(method.getName())) {
+              return path;
+            } else if ("getHeader".equals(method.getName())) {
+              return requestHeaders.get(args[0]);
+            } else if ("getSession".equals(method.getName())) {
+              return session;
+            } else if ("getInputStream".equals(method.getName())) {
+              final InputStream in = new ByteArrayInputStream(body);
+              return new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                  return in.read();
+                }
+              };
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    final Response response = new Response();
+    HttpServletResponse httpResponse = (HttpServletResponse) Proxy.newProxyInstance(
+        GitHubOauthServletTest.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("sendError".equals(method.getName()) || "setStatus".equals(method.getName())) {
+              response.status = (Integer) args[0];
+            } else if ("setHeader".equals(method.getName())) {
+              response.headers.put((String) args[0], (String) args[1]);
+            } else if ("setCharacterEncoding".equals(method.getName())) {
+              // Always UTF-8.
+            } else if ("getOutputStream".equals(method.getName())) {
+              return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                  response.body.write(b);
+                }
+              };
+            } else {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            return null;
+          }
+        });
+
+    new GitHubOauthServlet().doPost(request, httpResponse);
+    return response;
+  }
+}
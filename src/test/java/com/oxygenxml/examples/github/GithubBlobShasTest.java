@@ -0,0 +1,64 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubBlobShas}.
+ */
+public class GithubBlobShasTest {
+
+  /**
+   * Forgets the shas of the previous tests.
+   */
+  @Before
+  public void setUp() {
+    GithubBlobShas.invalidateAll();
+  }
+
+  /**
+   * Forgets the shas of the test.
+   */
+  @After
+  public void tearDown() {
+    GithubBlobShas.invalidateAll();
+  }
+
+  /**
+   * The last sha of a file is remembered, an unknown sha does not replace it.
+   */
+  @Test
+  public void testLastShaIsRemembered() {
+    GithubBlobShas.put("/owner/repo/main/a.dita", "s1");
+    GithubBlobShas.put("/owner/repo/main/a.dita", "s2");
+    GithubBlobShas.put("/owner/repo/main/a.dita", null);
+
+    assertEquals("s2", GithubBlobShas.get("/owner/repo/main/a.dita"));
+    assertNull(GithubBlobShas.get("/owner/repo/other/a.dita"));
+
+    GithubBlobShas.invalidate("/owner/repo/main/a.dita");
+    assertNull(GithubBlobShas.get("/owner/repo/main/a.dita"));
+  }
+
+  /**
+   * Only the shas of the files in a folder are forgotten with it.
+   */
+  @Test
+  public void testFolderShasAreForgotten() {
+    GithubBlobShas.put("/owner/repo/main/topics/a.dita", "s1");
+    GithubBlobShas.put("/owner/repo/main/topics/sub/b.dita", "s2");
+    GithubBlobShas.put("/owner/repo/main/topics.dita", "s3");
+    GithubBlobShas.put("/owner/repo/main-2/topics/a.dita", "s4");
+
+    GithubBlobShas.invalidateFolder("/owner/repo/main/topics/");
+
+    assertNull(GithubBlobShas.get("/owner/repo/main/topics/a.dita"));
+    assertNull(GithubBlobShas.get("/owner/repo/main/topics/sub/b.dita"));
+    assertEquals("s3", GithubBlobShas.get("/owner/repo/main/topics.dita"));
+    assertEquals("s4", GithubBlobShas.get("/owner/repo/main-2/topics/a.dita"));
+  }
+}
@@ -0,0 +1,181 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubBlobs}.
+ */
+public class GithubBlobsTest {
+
+  /**
+   * The sha of the blob read by the tests.
+   */
+  private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+  /**
+   * The API path of the blob.
+   */
+  private static final String BLOB_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/git/blobs/" + SHA;
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubBlobs.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubBlobs.configure(GithubBlobs.DEFAULT_MAX_CHARS);
+  }
+
+  /**
+   * A blob is read from GitHub once, then from the cache.
+   */
+  @Test
+  public void testBlobIsReadOnce() throws Exception {
+    server.on("GET", BLOB_PATH, 200, "<topic id=\"a\"/>");
+
+    assertEquals("<topic id=\"a\"/>", GithubBlobs.readBlob("owner", "repo", SHA, null));
+    assertEquals("<topic id=\"a\"/>", GithubBlobs.readBlob("owner", "repo", SHA, null));
+
+    assertEquals(1, server.getRequests("GET", BLOB_PATH).size());
+  }
+
+  /**
+   * A blob heavier than a cache segment share of the limit is kept.
+   */
+  @Test
+  public void testLargeBlobIsKept() throws Exception {
+    GithubBlobs.configure(8 * 1024);
+    char[] content = new char[6 * 1024];
+    Arrays.fill(content, 'a');
+    server.on("GET", BLOB_PATH, 200, new String(content));
+
+    GithubBlobs.readBlob("owner", "repo", SHA, null);
+    GithubBlobs.readBlob("owner", "repo", SHA, null);
+
+    assertEquals(1, server.getRequests("GET", BLOB_PATH).size());
+  }
+
+  /**
+   * A missing blob is not cached.
+   */
+  @Test
+  public void testMissingBlobIsNotCached() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      try {
+        GithubBlobs.readBlob("owner", "repo", SHA, null);
+        fail("The missing blob was read");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+    assertEquals(2, server.getRequests("GET", BLOB_PATH).size());
+  }
+
+  /**
+   * The files read for a merge do not take the problems with the saves of the user.
+   */
+  @Test
+  public void testReadFileLeavesSaveFailures() throws Exception {
+    server.on("GET", GithubStandInServer.API_PATH + "/repos/owner/repo/contents/topics/merged.dita", 200,
+        "<topic id=\"merged\"/>", "ETag", "\"merged\"");
+    String failure = "Your changes to /owner/repo/main/topics/other.dita could not be committed to GitHub: 404";
+    GithubSaveJournal.recordFailure("token-merge", failure);
+    try {
+      assertEquals("<topic id=\"merged\"/>", 
+          GithubBlobs.readFile("owner", "repo", "main", "topics/merged.dita", "token-merge"));
+      assertEquals(failure, GithubSaveJournal.takeFailure("token-merge"));
+    } finally {
+      GithubSaveJournal.takeFailure("token-merge");
+      GithubContentCache.invalidate("/owner/repo/main/topics/merged.dita");
+      GithubBlobShas.invalidate("/owner/repo/main/topics/merged.dita");
+    }
+  }
+
+  /**
+   * A server error keeps the cached file and is reported as it is, only a missing file is forgotten.
+   */
+  @Test
+  public void testCachedFileIsForgottenOnlyWhenMissing() throws Exception {
+    String contentPath = GithubStandInServer.API_PATH + "/repos/owner/repo/contents/topics/gone.dita";
+    server.on("GET", contentPath, 200, "<topic id=\"gone\"/>", "ETag", "\"gone\"");
+    try {
+      GithubBlobs.readFile("owner", "repo", "main", "topics/gone.dita", "token-gone");
+
+      server.on("GET", contentPath, 502, "{\"message\":\"Server Error\"}");
+      try {
+        GithubBlobs.readFile("owner", "repo", "main", "topics/gone.dita", "token-gone");
+        fail("The server error should be reported.");
+      } catch (IOException e) {
+        assertFalse(e.getMessage().startsWith("404"));
+      }
+      assertNotNull(GithubContentCache.get("/owner/repo/main/topics/gone.dita"));
+
+      server.on("GET", contentPath, 410, "{\"message\":\"Gone\"}");
+      try {
+        GithubBlobs.readFile("owner", "repo", "main", "topics/gone.dita", "token-gone");
+        fail("The missing file should be reported.");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().startsWith("404 Not Found"));
+      }
+      assertNull(GithubContentCache.get("/owner/repo/main/topics/gone.dita"));
+    } finally {
+      GithubContentCache.invalidate("/owner/repo/main/topics/gone.dita");
+      GithubBlobShas.invalidate("/owner/repo/main/topics/gone.dita");
+      GithubMissingPaths.invalidate("/owner/repo/main/topics/gone.dita");
+    }
+  }
+
+  /**
+   * The references which could change the API url are rejected before any request.
+   */
+  @Test
+  public void testInvalidReferencesAreRejected() throws Exception {
+    String[][] references = {
+        {"owner", "repo", "../../../user"},
+        {"owner", "..", SHA},
+        {"owner/other", "repo", SHA},
+        {"owner", "repo?ref=x", SHA},
+    };
+    for (String[] reference : references) {
+      try {
+        GithubBlobs.readBlob(reference[0], reference[1], reference[2], null);
+        fail("The reference was not rejected: " + Arrays.toString(reference));
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+    try {
+      GithubBlobs.readFile("owner", "repo", "main", "topics/../../secret", null);
+      fail("The path was not rejected");
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertEquals(0, server.getRequests("GET", BLOB_PATH).size());
+  }
+}
@@ -0,0 +1,400 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jackson.JsonNode;
+import org.jboss.resteasy.util.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oxygenxml.examples.github.GithubCommitEngine.FileChange;
+import com.oxygenxml.examples.github.GithubStandInServer.Request;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Tests for {@link GithubCommitEngine}.
+ */
+public class GithubCommitEngineTest {
+
+  /**
+   * The API path of the repository.
+   */
+  private static final String REPO_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo";
+
+  /**
+   * The API path which updates the branch.
+   */
+  private static final String REF_UPDATE_PATH = REPO_PATH + "/git/refs/heads/main";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * The threads which save files.
+   */
+  private ExecutorService saveThreads;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    saveThreads = Executors.newCachedThreadPool();
+    GithubBlobShas.invalidateAll();
+    GithubTreeIndex.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    saveThreads.shutdownNow();
+    server.stop();
+    GithubBlobShas.invalidateAll();
+    GithubTreeIndex.invalidateAll();
+  }
+
+  /**
+   * When the branch moves while the commit is created, the commit is created again on top of the new head,
+   * and the files keep the modes they have in the tree.
+   */
+  @Test
+  public void testCommitIsRebasedWhenTheBranchMoves() throws Exception {
+    final AtomicInteger refReads = new AtomicInteger();
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        String head = refReads.incrementAndGet() == 1 ? "c1" : "c2";
+        GithubStandInServer.send(exchange, 200, "{\"object\":{\"sha\":\"" + head + "\",\"type\":\"commit\"}}");
+      }
+    });
+    server.on("GET", REPO_PATH + "/git/commits/c1", 200, "{\"sha\":\"c1\",\"tree\":{\"sha\":\"t1\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c2", 200, "{\"sha\":\"c2\",\"tree\":{\"sha\":\"t2\"}}");
+    String tree = "{\"tree\":[" +
+        "{\"path\":\"run.sh\",\"mode\":\"100755\",\"type\":\"blob\",\"sha\":\"s1\"}," +
+        "{\"path\":\"topics\",\"mode\":\"040000\",\"type\":\"tree\",\"sha\":\"t3\"}," +
+        "{\"path\":\"topics/a.dita\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"s2\"}]," +
+        "\"truncated\":false}";
+    server.on("GET", REPO_PATH + "/git/trees/c1", 200, tree);
+    server.on("GET", REPO_PATH + "/git/trees/c2", 200, tree);
+    onGitData(null);
+    final AtomicInteger refUpdates = new AtomicInteger();
+    server.on("POST", REF_UPDATE_PATH, new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        if (refUpdates.incrementAndGet() == 1) {
+          GithubStandInServer.send(exchange, 422, "{\"message\":\"Update is not a fast forward\"}");
+        } else {
+          GithubStandInServer.send(exchange, 200, "{\"ref\":\"refs/heads/main\"}");
+        }
+      }
+    });
+
+    GithubCommitEngine.commit(Arrays.asList(
+        createChange("/owner/repo/main/run.sh"),
+        createChange("/owner/repo/main/topics/a.dita"),
+        createChange("/owner/repo/main/new%20topic.dita")), "token");
+
+    assertEquals(2, server.getRequests("POST", REF_UPDATE_PATH).size());
+    List<Request> commits = server.getRequests("POST", REPO_PATH + "/git/commits");
+    assertEquals(2, commits.size());
+    assertEquals("c2", parse(commits.get(1)).path("parents").path(0).getTextValue());
+
+    List<Request> trees = server.getRequests("POST", REPO_PATH + "/git/trees");
+    assertEquals(2, trees.size());
+    JsonNode tree = parse(trees.get(1));
+    assertEquals("t2", tree.path("base_tree").getTextValue());
+    Map<String, String> modes = new HashMap<String, String>();
+    for (JsonNode entry : tree.path("tree")) {
+      modes.put(entry.path("path").getTextValue(), entry.path("mode").getTextValue());
+    }
+    assertEquals("100755", modes.get("run.sh"));
+    assertEquals("100644", modes.get("topics/a.dita"));
+    assertEquals("100644", modes.get("new topic.dita"));
+    // Each commit is read with a single request, whatever the depth of the files.
+    assertEquals(1, server.getRequests("GET", REPO_PATH + "/git/trees/c1").size());
+    assertEquals(1, server.getRequests("GET", REPO_PATH + "/git/trees/c2").size());
+    assertEquals(0, server.getRequests("GET", REPO_PATH + "/git/trees/t3").size());
+  }
+
+  /**
+   * When GitHub cannot list the whole commit, only the folders of the files are read.
+   */
+  @Test
+  public void testTruncatedTreeIsReadByFolder() throws Exception {
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", 200, "{\"object\":{\"sha\":\"c1\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c1", 200, "{\"sha\":\"c1\",\"tree\":{\"sha\":\"t1\"}}");
+    server.on("GET", REPO_PATH + "/git/trees/c1", 200, "{\"tree\":[],\"truncated\":true}");
+    server.on("GET", REPO_PATH + "/git/trees/t1", 200, "{\"tree\":[" +
+        "{\"path\":\"topics\",\"mode\":\"040000\",\"type\":\"tree\",\"sha\":\"t2\"}," +
+        "{\"path\":\"other\",\"mode\":\"040000\",\"type\":\"tree\",\"sha\":\"t3\"}]}");
+    server.on("GET", REPO_PATH + "/git/trees/t2", 200, "{\"tree\":[" +
+        "{\"path\":\"a.dita\",\"mode\":\"100755\",\"type\":\"blob\",\"sha\":\"s1\"}]}");
+    onGitData(null);
+    server.on("POST", REF_UPDATE_PATH, 200, "{\"ref\":\"refs/heads/main\"}");
+
+    GithubCommitEngine.commit(Arrays.asList(
+        createChange("/owner/repo/main/topics/a.dita", "s1"), createChange("/owner/repo/main/topics/b.dita")),
+        "token");
+
+    JsonNode tree = parse(server.getRequests("POST", REPO_PATH + "/git/trees").get(0));
+    assertEquals("100755", tree.path("tree").path(0).path("mode").getTextValue());
+    assertEquals(1, server.getRequests("GET", REPO_PATH + "/git/trees/t1").size());
+    assertEquals(1, server.getRequests("GET", REPO_PATH + "/git/trees/t2").size());
+    assertEquals(0, server.getRequests("GET", REPO_PATH + "/git/trees/t3").size());
+  }
+
+  /**
+   * The files changed on the branch since they were opened are not overwritten.
+   */
+  @Test
+  public void testChangedFilesAreNotOverwritten() throws Exception {
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", 200, "{\"object\":{\"sha\":\"c1\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c1", 200, "{\"sha\":\"c1\",\"tree\":{\"sha\":\"t1\"}}");
+    server.on("GET", REPO_PATH + "/git/trees/c1", 200, "{\"tree\":[" +
+        "{\"path\":\"a.dita\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"s1\"}," +
+        "{\"path\":\"b.dita\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"s3\"}]}");
+    onGitData(null);
+
+    try {
+      GithubCommitEngine.commit(Arrays.asList(
+          createChange("/owner/repo/main/a.dita", "s1"), createChange("/owner/repo/main/b.dita", "s2")), "token");
+      fail("The changed file was overwritten");
+    } catch (CommitRejectedException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("b.dita"));
+    }
+    assertEquals(0, server.getRequests("POST", REPO_PATH + "/git/trees").size());
+  }
+
+  /**
+   * A file saved alone is not overwritten either, when it changed since it was opened.
+   */
+  @Test
+  public void testChangedFileIsNotOverwritten() throws Exception {
+    server.on("PUT", REPO_PATH + "/contents/a.dita", 409, "{\"message\":\"a.dita does not match s1\"}");
+
+    try {
+      GithubCommitEngine.commit(Arrays.asList(createChange("/owner/repo/main/a.dita", "s1")), "token");
+      fail("The changed file was overwritten");
+    } catch (CommitRejectedException e) {
+      // Expected.
+    }
+    List<Request> puts = server.getRequests("PUT", REPO_PATH + "/contents/a.dita");
+    assertEquals(1, puts.size());
+    assertEquals("s1", parse(puts.get(0)).path("sha").getTextValue());
+  }
+
+  /**
+   * A commit which is still rejected after the last attempt fails the save.
+   */
+  @Test(expected = IOException.class)
+  public void testCommitFailsWhenTheBranchKeepsMoving() throws Exception {
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", 200, "{\"object\":{\"sha\":\"c1\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c1", 200, "{\"sha\":\"c1\",\"tree\":{\"sha\":\"t1\"}}");
+    server.on("GET", REPO_PATH + "/git/trees/c1", 200, "{\"sha\":\"c1\",\"tree\":[]}");
+    onGitData(null);
+    server.on("POST", REF_UPDATE_PATH, 422, "{\"message\":\"Update is not a fast forward\"}");
+
+    try {
+      GithubCommitEngine.commit(Arrays.asList(
+          createChange("/owner/repo/main/a.dita"), createChange("/owner/repo/main/b.dita")), "token");
+    } finally {
+      assertEquals(3, server.getRequests("POST", REF_UPDATE_PATH).size());
+    }
+  }
+
+  /**
+   * The save which made a commit returns when it ends, the files saved in the meantime are committed
+   * together by one of their saves.
+   */
+  @Test
+  public void testSaveReturnsOnceItsFileIsCommitted() throws Exception {
+    final CountDownLatch firstCommitStarted = new CountDownLatch(1);
+    final CountDownLatch firstCommitAllowed = new CountDownLatch(1);
+    server.on("PUT", REPO_PATH + "/contents/first.dita", new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        firstCommitStarted.countDown();
+        await(firstCommitAllowed);
+        GithubStandInServer.send(exchange, 201, "{\"content\":{\"sha\":\"s1\"},\"commit\":{\"sha\":\"c2\"}}");
+      }
+    });
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", 200, "{\"object\":{\"sha\":\"c2\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c2", 200, "{\"sha\":\"c2\",\"tree\":{\"sha\":\"t2\"}}");
+    server.on("GET", REPO_PATH + "/git/trees/c2", 200, "{\"sha\":\"c2\",\"tree\":[]}");
+    final CountDownLatch firstSaveReturned = new CountDownLatch(1);
+    onGitData(firstSaveReturned);
+    server.on("POST", REF_UPDATE_PATH, 200, "{\"ref\":\"refs/heads/main\"}");
+
+    Future<?> firstSave = save("/owner/repo/main/first.dita");
+    assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+    Future<?> secondSave = save("/owner/repo/main/second.dita");
+    Future<?> thirdSave = save("/owner/repo/main/third.dita");
+    // Lets the other saves wait for the commit in progress.
+    Thread.sleep(200);
+    firstCommitAllowed.countDown();
+
+    // The next commit waits for the first save to return.
+    firstSave.get(5, TimeUnit.SECONDS);
+    firstSaveReturned.countDown();
+    secondSave.get(10, TimeUnit.SECONDS);
+    thirdSave.get(10, TimeUnit.SECONDS);
+
+    assertEquals(1, server.getRequests("PUT", REPO_PATH + "/contents/first.dita").size());
+    assertEquals(1, server.getRequests("POST", REF_UPDATE_PATH).size());
+    assertEquals(2, parse(server.getRequests("POST", REPO_PATH + "/git/trees").get(0)).path("tree").size());
+  }
+
+  /**
+   * The contents are streamed base64 encoded in several chunks, and GitHub receives the same bytes,
+   * both for a file committed alone and for the blobs of a commit of several files.
+   */
+  @Test
+  public void testContentIsUploadedInChunks() throws Exception {
+    // Several upload chunks, with a length which needs base64 padding.
+    byte[] content = new byte[3 * 64 * 1024 + 1];
+    new Random(1).nextBytes(content);
+    byte[] small = {(byte) 0xff, 0};
+    server.on("PUT", REPO_PATH + "/contents/large.bin", 201, "{\"content\":{\"sha\":\"s1\"}}");
+    server.on("GET", REPO_PATH + "/git/ref/heads/main", 200, "{\"object\":{\"sha\":\"c1\"}}");
+    server.on("GET", REPO_PATH + "/git/commits/c1", 200, "{\"sha\":\"c1\",\"tree\":{\"sha\":\"t1\"}}");
+    server.on("GET", REPO_PATH + "/git/trees/c1", 200, "{\"tree\":[],\"truncated\":false}");
+    onGitData(null);
+    server.on("POST", REF_UPDATE_PATH, 200, "{\"ref\":\"refs/heads/main\"}");
+
+    GithubCommitEngine.commit(Arrays.asList(createChange("/owner/repo/main/large.bin", content)), "token");
+    GithubCommitEngine.commit(Arrays.asList(
+        createChange("/owner/repo/main/a.bin", content), createChange("/owner/repo/main/b.bin", small)), "token");
+
+    JsonNode file = parse(server.getRequests("PUT", REPO_PATH + "/contents/large.bin").get(0));
+    assertEquals("main", file.path("branch").getTextValue());
+    assertArrayEquals(content, Base64.decode(file.path("content").getTextValue()));
+    List<Request> blobs = server.getRequests("POST", REPO_PATH + "/git/blobs");
+    assertEquals(2, blobs.size());
+    for (Request blob : blobs) {
+      JsonNode body = parse(blob);
+      assertEquals("base64", body.path("encoding").getTextValue());
+      byte[] decoded = Base64.decode(body.path("content").getTextValue());
+      // The blobs are created in parallel, in any order.
+      assertArrayEquals(decoded.length == content.length ? content : small, decoded);
+    }
+  }
+
+  /**
+   * Answers the requests which create blobs, trees and commits.
+   *
+   * @param allowed Counted down when the trees can be created, <code>null</code> if they can be created at once.
+   */
+  private void onGitData(final CountDownLatch allowed) {
+    final AtomicInteger objects = new AtomicInteger();
+    GithubStandInServer.Responder create = new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        if (allowed != null && exchange.getRequestURI().getPath().endsWith("/git/trees")) {
+          await(allowed);
+        }
+        GithubStandInServer.send(exchange, 201, "{\"sha\":\"n" + objects.incrementAndGet() + "\"}");
+      }
+    };
+    server.on("POST", REPO_PATH + "/git/blobs", create);
+    server.on("POST", REPO_PATH + "/git/trees", create);
+    server.on("POST", REPO_PATH + "/git/commits", create);
+  }
+
+  /**
+   * Saves a file in the background.
+   *
+   * @param urlPathPart The path of the file url.
+   *
+   * @return The result of the save.
+   */
+  private Future<?> save(final String urlPathPart) {
+    return saveThreads.submit(new Callable<Void>() {
+      public Void call() throws IOException {
+        GithubCommitEngine.save(createChange(urlPathPart), "token");
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @param urlPathPart The path of the file url.
+   *
+   * @return A change of the file, made on an unknown content.
+   */
+  private static FileChange createChange(String urlPathPart) {
+    return createChange(urlPathPart, null);
+  }
+
+  /**
+   * @param urlPathPart The path of the file url.
+   * @param baseSha The blob sha of the file the change was made on, <code>null</code> if not known.
+   *
+   * @return A change of the file.
+   */
+  private static FileChange createChange(final String urlPathPart, String baseSha) {
+    return new FileChange(urlPathPart, baseSha) {
+      @Override
+      InputStream openContent() throws IOException {
+        return new ByteArrayInputStream(("<topic id=\"" + urlPathPart.hashCode() + "\"/>").getBytes("UTF-8"));
+      }
+    };
+  }
+
+  /**
+   * @param urlPathPart The path of the file url.
+   * @param content The content of the file.
+   *
+   * @return A change of the file, made on an unknown content.
+   */
+  private static FileChange createChange(String urlPathPart, final byte[] content) {
+    return new FileChange(urlPathPart, null) {
+      @Override
+      InputStream openContent() {
+        return new ByteArrayInputStream(content);
+      }
+    };
+  }
+
+  /**
+   * @param request A request with a JSON body.
+   *
+   * @return The body of the request.
+   */
+  private static JsonNode parse(Request request) throws IOException {
+    return GithubUtil.mapper.readTree(new String(request.body, "UTF-8"));
+  }
+
+  /**
+   * Waits for a latch in the stand-in server, at most 10 seconds.
+   *
+   * @param latch The latch.
+   */
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubContentCache}.
+ */
+public class GithubContentCacheTest {
+
+  /**
+   * Restores the default limits.
+   */
+  @After
+  public void tearDown() {
+    GithubContentCache.configure(GithubContentCache.DEFAULT_MAX_BYTES, GithubContentCache.DEFAULT_MAX_ENTRY_BYTES);
+  }
+
+  /**
+   * A file is cached with the ETag it was read with.
+   */
+  @Test
+  public void testFileIsCachedWithItsETag() {
+    byte[] content = createContent(100);
+    GithubContentCache.put("/owner/repo/main/a.dita", "\"a\"", content);
+
+    GithubContentCache.CachedContent cached = GithubContentCache.get("/owner/repo/main/a.dita");
+    assertNotNull(cached);
+    assertEquals("\"a\"", cached.etag);
+    assertArrayEquals(content, cached.content);
+
+    GithubContentCache.invalidate("/owner/repo/main/a.dita");
+    assertNull(GithubContentCache.get("/owner/repo/main/a.dita"));
+  }
+
+  /**
+   * The files of a branch read without an ETag cannot be revalidated, so they are not cached.
+   * The files of a commit never change, so they are cached without one.
+   */
+  @Test
+  public void testFileWithoutETagIsCachedOnlyForCommits() {
+    GithubContentCache.put("/owner/repo/main/a.dita", null, createContent(100));
+    GithubContentCache.putCommitContent("/owner/repo/0123456789abcdef0123456789abcdef01234567/a.dita",
+        createContent(100));
+
+    assertNull(GithubContentCache.get("/owner/repo/main/a.dita"));
+    GithubContentCache.CachedContent cached =
+        GithubContentCache.get("/owner/repo/0123456789abcdef0123456789abcdef01234567/a.dita");
+    assertNotNull(cached);
+    assertNull(cached.etag);
+  }
+
+  /**
+   * The files larger than the entry limit are not cached.
+   */
+  @Test
+  public void testLargeFileIsNotCached() {
+    GithubContentCache.configure(64 * 1024, 1024);
+
+    GithubContentCache.put("/owner/repo/main/large.dita", "\"large\"", createContent(1025));
+    GithubContentCache.putCommitContent("/owner/repo/0123456789abcdef0123456789abcdef01234567/large.dita",
+        createContent(1025));
+
+    assertNull(GithubContentCache.get("/owner/repo/main/large.dita"));
+    assertNull(GithubContentCache.get("/owner/repo/0123456789abcdef0123456789abcdef01234567/large.dita"));
+  }
+
+  /**
+   * A file as large as the entry limit is kept, even when it is heavier than a cache segment share of the limit.
+   */
+  @Test
+  public void testFileOfEntryLimitIsKept() {
+    GithubContentCache.configure(8 * 1024, 4 * 1024);
+
+    GithubContentCache.put("/owner/repo/main/large.dita", "\"large\"", createContent(4 * 1024));
+
+    assertNotNull(GithubContentCache.get("/owner/repo/main/large.dita"));
+  }
+
+  /**
+   * The cache does not hold more than its limit.
+   */
+  @Test
+  public void testCacheIsLimited() {
+    GithubContentCache.configure(8 * 1024, 4 * 1024);
+
+    GithubContentCache.put("/owner/repo/main/a.dita", "\"a\"", createContent(3 * 1024));
+    GithubContentCache.put("/owner/repo/main/b.dita", "\"b\"", createContent(3 * 1024));
+    GithubContentCache.put("/owner/repo/main/c.dita", "\"c\"", createContent(3 * 1024));
+
+    assertNull(GithubContentCache.get("/owner/repo/main/a.dita"));
+    assertNotNull(GithubContentCache.get("/owner/repo/main/b.dita"));
+    assertNotNull(GithubContentCache.get("/owner/repo/main/c.dita"));
+  }
+
+  /**
+   * @param length The length of the content.
+   *
+   * @return A content of the given length.
+   */
+  private static byte[] createContent(int length) {
+    byte[] content = new byte[length];
+    Arrays.fill(content, (byte) 'a');
+    return content;
+  }
+}
@@ -0,0 +1,189 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link GithubDiskBlobStore}.
+ */
+public class GithubDiskBlobStoreTest {
+
+  /**
+   * The size limit of the store used by the tests.
+   */
+  private static final long MAX_BYTES = 16 * 1024;
+
+  /**
+   * The parent of the store folder.
+   */
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * The folder of the store.
+   */
+  private File storeFolder;
+
+  /**
+   * Enables the store.
+   */
+  @Before
+  public void setUp() {
+    storeFolder = new File(temporaryFolder.getRoot(), "blobs");
+    GithubDiskBlobStore.configure(storeFolder.getPath(), MAX_BYTES);
+  }
+
+  /**
+   * Disables the store.
+   */
+  @After
+  public void tearDown() {
+    GithubDiskBlobStore.configure(null, 0);
+  }
+
+  /**
+   * A blob heavier than a cache segment share of the limit must be kept.
+   */
+  @Test
+  public void testLargeBlobIsKept() throws Exception {
+    byte[] content = createContent(8 * 1024, 'a');
+    String sha = store("\"large\"", content);
+
+    assertEquals(GithubUtil.getGitBlobSha(content), sha);
+    assertArrayEquals(content, read(sha));
+    assertEquals("\"large\"", GithubDiskBlobStore.getEtag(sha));
+  }
+
+  /**
+   * The least recently used blobs are deleted when the store is full.
+   */
+  @Test
+  public void testLeastRecentlyUsedBlobIsDeleted() throws Exception {
+    String first = store("\"1\"", createContent(6 * 1024, 'a'));
+    String second = store("\"2\"", createContent(6 * 1024, 'b'));
+    // Makes the first blob the most recently used one.
+    assertNotNull(read(first));
+    String third = store("\"3\"", createContent(6 * 1024, 'c'));
+
+    assertNotNull(read(first));
+    assertNull(GithubDiskBlobStore.open(second));
+    assertNotNull(read(third));
+    assertFalse(new File(new File(storeFolder, second.substring(0, 2)), second).exists());
+  }
+
+  /**
+   * The small blobs are written in the background.
+   */
+  @Test
+  public void testSmallBlobIsWrittenInTheBackground() throws Exception {
+    byte[] content = "<doc/>".getBytes("UTF-8");
+    String sha = GithubUtil.getGitBlobSha(content);
+    GithubDiskBlobStore.put(sha, "\"small\"", content);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (GithubDiskBlobStore.getEtag(sha) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals("\"small\"", GithubDiskBlobStore.getEtag(sha));
+    assertArrayEquals(content, read(sha));
+  }
+
+  /**
+   * The blobs stored by a previous run are found again.
+   */
+  @Test
+  public void testBlobsAreIndexedOnRestart() throws Exception {
+    byte[] content = createContent(1024, 'a');
+    String sha = store("\"restart\"", content);
+
+    GithubDiskBlobStore.configure(storeFolder.getPath(), MAX_BYTES);
+
+    assertArrayEquals(content, read(sha));
+  }
+
+  /**
+   * Only the owner of the process can access the stored blobs.
+   */
+  @Test
+  public void testBlobsAreOnlyAccessibleToTheOwner() throws Exception {
+    assumeTrue(storeFolder.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+    String sha = store("\"private\"", createContent(1024, 'a'));
+
+    File blobFile = new File(new File(storeFolder, sha.substring(0, 2)), sha);
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(storeFolder.toPath())));
+    assertEquals("rwx------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(blobFile.getParentFile().toPath())));
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(blobFile.toPath())));
+    assertEquals("rw-------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(blobFile.getPath() + ".etag").toPath())));
+  }
+
+  /**
+   * Nothing is stored when no folder is configured.
+   */
+  @Test
+  public void testStoreIsDisabledByDefault() throws Exception {
+    GithubDiskBlobStore.configure(null, MAX_BYTES);
+
+    assertNull(store("\"disabled\"", createContent(1024, 'a')));
+  }
+
+  /**
+   * Stores a blob the way a file read from GitHub is stored.
+   *
+   * @param etag The ETag of the response.
+   * @param content The content of the file.
+   *
+   * @return The sha of the stored blob.
+   */
+  private static String store(String etag, byte[] content) throws IOException {
+    return GithubDiskBlobStore.putStream(etag, Arrays.copyOf(content, 100),
+        new ByteArrayInputStream(content, 100, content.length - 100));
+  }
+
+  /**
+   * @param sha The sha of a stored blob.
+   *
+   * @return The content of the blob.
+   */
+  private static byte[] read(String sha) throws IOException {
+    InputStream in = GithubDiskBlobStore.open(sha);
+    assertNotNull(in);
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param length The length of the content.
+   * @param fill The character of the content.
+   *
+   * @return The content of a file.
+   */
+  private static byte[] createContent(int length, char fill) {
+    byte[] content = new byte[length];
+    Arrays.fill(content, (byte) fill);
+    return content;
+  }
+}
@@ -0,0 +1,167 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Tests for {@link GithubGraphqlReader}, against a stand-in GraphQL endpoint.
+ */
+public class GithubGraphqlReaderTest {
+
+  /**
+   * The sha of the commit the files are read from.
+   */
+  private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+  /**
+   * The path of the stand-in GraphQL endpoint.
+   */
+  private static final String GRAPHQL_PATH = "/graphql";
+
+  /**
+   * The files read by the tests.
+   */
+  private static final List<String> FILES = Arrays.asList(
+      "/owner/repo/main/topics/a%20b.dita", "/owner/repo/main/missing.dita", "/owner/repo/main/image.png");
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server and points the reader to its GraphQL endpoint.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubGraphqlReader.configure(server.getUrl() + GRAPHQL_PATH);
+    GithubRateLimitGovernor.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubGraphqlReader.configure(null);
+    GithubRateLimitGovernor.invalidateAll();
+  }
+
+  /**
+   * The text files are read with a single request, the missing files are reported
+   * and the binary files are left to the REST API.
+   */
+  @Test
+  public void testFilesAreReadInABatch() throws Exception {
+    final byte[] topic = "<topic id=\"a\"/>".getBytes("UTF-8");
+    server.on("POST", GRAPHQL_PATH, new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        JsonNode variables = GithubUtil.mapper.readTree(new String(requestBody, "UTF-8")).path("variables");
+        assertEquals("owner", variables.path("owner").getTextValue());
+        assertEquals("repo", variables.path("name").getTextValue());
+        assertEquals(SHA + ":topics/a b.dita", variables.path("e0").getTextValue());
+        GithubStandInServer.send(exchange, 200, "{\"data\":{\"repository\":{" +
+            "\"f0\":{\"oid\":\"" + GithubUtil.getGitBlobSha(topic) + "\",\"text\":\"<topic id=\\\"a\\\"/>\"," +
+            "\"isBinary\":false,\"isTruncated\":false}," +
+            "\"f1\":null," +
+            "\"f2\":{\"oid\":\"1111111111111111111111111111111111111111\",\"text\":null," +
+            "\"isBinary\":true,\"isTruncated\":false}}}}");
+      }
+    });
+
+    Map<String, byte[]> contents = GithubGraphqlReader.readFiles(SHA, FILES, "token");
+
+    assertEquals(2, contents.size());
+    assertArrayEquals(topic, contents.get(FILES.get(0)));
+    assertTrue(contents.containsKey(FILES.get(1)));
+    assertNull(contents.get(FILES.get(1)));
+    assertFalse(contents.containsKey(FILES.get(2)));
+    assertEquals(1, server.getRequests("POST", GRAPHQL_PATH).size());
+  }
+
+  /**
+   * A text which GitHub did not return unchanged is left to the REST API.
+   */
+  @Test
+  public void testChangedTextIsNotUsed() throws Exception {
+    server.on("POST", GRAPHQL_PATH, 200, "{\"data\":{\"repository\":{" +
+        "\"f0\":{\"oid\":\"1111111111111111111111111111111111111111\",\"text\":\"<topic/>\"," +
+        "\"isBinary\":false,\"isTruncated\":false}}}}");
+
+    Map<String, byte[]> contents = GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "token");
+
+    assertTrue(contents.isEmpty());
+  }
+
+  /**
+   * When the rate limit of a token is exhausted, the API is still used with the other tokens.
+   */
+  @Test
+  public void testRateLimitIsKeptByToken() throws Exception {
+    server.on("POST", GRAPHQL_PATH, new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        if ("token limited".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+          GithubStandInServer.send(exchange, 403, "{\"message\":\"secondary rate limit\"}", "Retry-After", "60");
+        } else {
+          GithubStandInServer.send(exchange, 200, "{\"data\":{\"repository\":{\"f0\":null}}}");
+        }
+      }
+    });
+
+    assertTrue(GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "limited").isEmpty());
+
+    assertFalse(GithubGraphqlReader.isAvailable("limited"));
+    assertTrue(GithubGraphqlReader.isAvailable("other"));
+    assertEquals(1, GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "other").size());
+    GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "limited");
+    assertEquals(2, server.getRequests("POST", GRAPHQL_PATH).size());
+  }
+
+  /**
+   * A rate limit reported as an error of a successful response is kept for the token, 
+   * without limiting its REST requests.
+   */
+  @Test
+  public void testRateLimitErrorIsKeptByToken() throws Exception {
+    server.on("POST", GRAPHQL_PATH, 200, "{\"data\":null,\"errors\":[" +
+        "{\"type\":\"RATE_LIMITED\",\"message\":\"API rate limit exceeded for user.\"}]}");
+
+    assertTrue(GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "limited").isEmpty());
+
+    assertFalse(GithubGraphqlReader.isAvailable("limited"));
+    assertTrue(GithubGraphqlReader.isAvailable("other"));
+    assertFalse(GithubRateLimitGovernor.isExhausted("limited", GithubRateLimitGovernor.CORE_RESOURCE));
+    GithubGraphqlReader.readFiles(SHA, FILES.subList(0, 1), "limited");
+    assertEquals(1, server.getRequests("POST", GRAPHQL_PATH).size());
+  }
+
+  /**
+   * A deployment without the GraphQL API is not asked again.
+   */
+  @Test
+  public void testMissingApiIsNotUsed() throws Exception {
+    assertTrue(GithubGraphqlReader.readFiles(SHA, FILES, "token").isEmpty());
+
+    assertFalse(GithubGraphqlReader.isAvailable("token"));
+    assertFalse(GithubGraphqlReader.isAvailable("other"));
+    GithubGraphqlReader.readFiles(SHA, FILES, "other");
+    assertEquals(1, server.getRequests("POST", GRAPHQL_PATH).size());
+  }
+}
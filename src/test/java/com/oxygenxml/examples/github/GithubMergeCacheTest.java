@@ -0,0 +1,73 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ro.sync.merge.MergeResult.ResultType;
+
+/**
+ * Tests for {@link GithubMergeCache}.
+ */
+public class GithubMergeCacheTest {
+
+  /**
+   * Restores the default limit.
+   */
+  @After
+  public void tearDown() {
+    GithubMergeCache.configure(GithubMergeCache.DEFAULT_MAX_CHARS);
+  }
+
+  /**
+   * The same documents give the same key, moving text from a document to the next one gives another key.
+   */
+  @Test
+  public void testKeyDependsOnEveryDocument() {
+    String key = GithubMergeCache.getKey("<a/>", "<b/>", "<c/>");
+
+    assertEquals(key, GithubMergeCache.getKey("<a/>", "<b/>", "<c/>"));
+    assertEquals(64, key.length());
+    assertFalse(key.equals(GithubMergeCache.getKey("<a/><b/>", "", "<c/>")));
+    assertFalse(key.equals(GithubMergeCache.getKey("<a/>", "<c/>", "<b/>")));
+  }
+
+  /**
+   * The successful merges are cached, the failed ones are not.
+   */
+  @Test
+  public void testOnlySuccessfulMergesAreCached() {
+    GithubMergeCache.put("clean", "<merged/>", ResultType.CLEAN);
+    GithubMergeCache.put("conflicts", "<merged/>", ResultType.WITH_CONFLICTS);
+    GithubMergeCache.put("failed", "<merged/>", ResultType.FAILED);
+    GithubMergeCache.put("missing", null, ResultType.CLEAN);
+
+    GithubMergeCache.CachedMerge merge = GithubMergeCache.get("clean");
+    assertNotNull(merge);
+    assertEquals("<merged/>", merge.merged);
+    assertEquals(ResultType.CLEAN, merge.resultType);
+    assertEquals(ResultType.WITH_CONFLICTS, GithubMergeCache.get("conflicts").resultType);
+    assertNull(GithubMergeCache.get("failed"));
+    assertNull(GithubMergeCache.get("missing"));
+  }
+
+  /**
+   * A merged document heavier than a cache segment share of the limit is kept.
+   */
+  @Test
+  public void testLargeMergeIsKept() {
+    GithubMergeCache.configure(8 * 1024);
+    char[] merged = new char[6 * 1024];
+    Arrays.fill(merged, 'a');
+
+    GithubMergeCache.put("large", new String(merged), ResultType.CLEAN);
+
+    assertNotNull(GithubMergeCache.get("large"));
+  }
+}
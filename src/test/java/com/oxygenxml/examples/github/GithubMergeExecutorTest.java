@@ -0,0 +1,203 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.sync.exml.workspace.api.PluginWorkspace;
+import ro.sync.exml.workspace.api.PluginWorkspaceProvider;
+import ro.sync.exml.workspace.api.util.XMLUtilAccess;
+
+/**
+ * Tests for {@link GithubMergeExecutor}, with a stand-in for the merge of the editor.
+ */
+public class GithubMergeExecutorTest {
+
+  /**
+   * The number of characters of a document of which three fit in the memory budget of the tests, but not six.
+   */
+  static final int HALF_BUDGET_CHARS = 14000;
+
+  /**
+   * Lets the blocked merges finish.
+   */
+  private CountDownLatch unblock;
+
+  /**
+   * The threads waiting for merges in the background.
+   */
+  private ExecutorService callers;
+
+  /**
+   * Configures a budget of 1 MB and a short queue timeout.
+   */
+  @Before
+  public void setUp() {
+    GithubMergeExecutor.configure(2, 1, 200);
+    unblock = new CountDownLatch(1);
+    callers = Executors.newCachedThreadPool();
+  }
+
+  /**
+   * Restores the default configuration.
+   */
+  @After
+  public void tearDown() {
+    unblock.countDown();
+    callers.shutdown();
+    GithubMergeExecutor.configure(GithubMergeExecutor.getDefaultThreads(),
+        GithubMergeExecutor.getDefaultMemoryBudgetMb(), GithubMergeExecutor.DEFAULT_QUEUE_TIMEOUT_MS);
+    PluginWorkspaceProvider.setPluginWorkspace(null);
+  }
+
+  /**
+   * The documents which would not fit in the budget even alone are rejected at once,
+   * without asking the client to retry.
+   */
+  @Test
+  public void testTooLargeMergeIsRejected() throws Exception {
+    setMerger(new Callable<Object>() {
+      public Object call() {
+        fail("The merge should not run.");
+        return null;
+      }
+    });
+    String document = createDocument(3 * HALF_BUDGET_CHARS);
+
+    long start = System.currentTimeMillis();
+    try {
+      GithubMergeExecutor.merge(document, document, document);
+      fail("The merge should be rejected.");
+    } catch (MergeRejectedException e) {
+      assertEquals(-1, e.getRetryAfterSeconds());
+    }
+    assertTrue(System.currentTimeMillis() - start < 200);
+  }
+
+  /**
+   * A merge which does not fit next to the running ones waits for them, for a limited time.
+   */
+  @Test
+  public void testMergeIsRejectedAfterTheQueueTimeout() throws Exception {
+    Future<?> running = startBlockedMerge();
+
+    String document = createDocument(HALF_BUDGET_CHARS);
+    long start = System.currentTimeMillis();
+    try {
+      GithubMergeExecutor.merge(document, document, document);
+      fail("The merge should be rejected.");
+    } catch (MergeRejectedException e) {
+      assertTrue(e.getRetryAfterSeconds() > 0);
+    }
+    assertTrue(System.currentTimeMillis() - start >= 200);
+
+    unblock.countDown();
+    running.get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * The memory of a merge which failed is given back.
+   */
+  @Test
+  public void testMemoryIsReleasedAfterAFailedMerge() throws Exception {
+    setMerger(new Callable<Object>() {
+      public Object call() {
+        throw new IllegalStateException("The merge failed.");
+      }
+    });
+    String document = createDocument(HALF_BUDGET_CHARS);
+    try {
+      GithubMergeExecutor.merge(document, document, document);
+      fail("The failure should be reported.");
+    } catch (ExecutionException e) {
+      assertEquals("The merge failed.", e.getCause().getMessage());
+    }
+
+    setMerger(new Callable<Object>() {
+      public Object call() {
+        return null;
+      }
+    });
+    // Would not be admitted if the memory of the failed merge was still taken.
+    GithubMergeExecutor.merge(document, document, document);
+  }
+
+  /**
+   * Starts a merge of half the memory budget, which runs until the test lets it finish.
+   *
+   * @return The future of the merge, once it is running.
+   */
+  private Future<?> startBlockedMerge() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    setMerger(new Callable<Object>() {
+      public Object call() throws InterruptedException {
+        started.countDown();
+        unblock.await();
+        return null;
+      }
+    });
+    final String document = createDocument(HALF_BUDGET_CHARS);
+    Future<?> running = callers.submit(new Callable<Object>() {
+      public Object call() throws Exception {
+        return GithubMergeExecutor.merge(document, document, document);
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    return running;
+  }
+
+  /**
+   * Replaces the merge of the editor.
+   *
+   * @param merger Called instead of the merge, its result is returned as the merge result.
+   */
+  static void setMerger(final Callable<Object> merger) {
+    final XMLUtilAccess xmlUtilAccess = (XMLUtilAccess) Proxy.newProxyInstance(
+        GithubMergeExecutorTest.class.getClassLoader(), new Class<?>[] {XMLUtilAccess.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            if ("threeWayAutoMerge".equals(method.getName())) {
+              return merger.call();
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    PluginWorkspaceProvider.setPluginWorkspace((PluginWorkspace) Proxy.newProxyInstance(
+        GithubMergeExecutorTest.class.getClassLoader(), new Class<?>[] {PluginWorkspace.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getXMLUtilAccess".equals(method.getName())) {
+              return xmlUtilAccess;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        }));
+  }
+
+  /**
+   * @param length The number of characters of the document.
+   *
+   * @return A document of the given length.
+   */
+  static String createDocument(int length) {
+    char[] text = new char[length];
+    Arrays.fill(text, 'a');
+    return new String(text);
+  }
+}
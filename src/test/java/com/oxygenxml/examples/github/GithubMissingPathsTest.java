@@ -0,0 +1,100 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubMissingPaths}.
+ */
+public class GithubMissingPathsTest {
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubRepositories.invalidateAll();
+    GithubMissingPaths.configure(GithubMissingPaths.DEFAULT_TTL_SECONDS);
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubRepositories.invalidateAll();
+    GithubMissingPaths.configure(GithubMissingPaths.DEFAULT_TTL_SECONDS);
+  }
+
+  /**
+   * A missing path is remembered until it is invalidated.
+   */
+  @Test
+  public void testMissingPathIsRemembered() {
+    GithubMissingPaths.put("/owner/repo/main/catalog.xml", null);
+
+    assertTrue(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", null));
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/other.xml", null));
+
+    GithubMissingPaths.invalidate("/owner/repo/main/catalog.xml");
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", null));
+  }
+
+  /**
+   * The missing paths of a folder are forgotten together.
+   */
+  @Test
+  public void testFolderIsInvalidated() {
+    GithubMissingPaths.put("/owner/repo/main/topics/a.dita", null);
+    GithubMissingPaths.put("/owner/repo/main/topics/images/b.png", null);
+    GithubMissingPaths.put("/owner/repo/main/c.dita", null);
+
+    GithubMissingPaths.invalidateFolder("/owner/repo/main/topics/");
+
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/topics/a.dita", null));
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/topics/images/b.png", null));
+    assertTrue(GithubMissingPaths.isMissing("/owner/repo/main/c.dita", null));
+  }
+
+  /**
+   * The paths missing from a private repository are remembered for each user.
+   */
+  @Test
+  public void testPrivatePathIsRememberedByToken() {
+    server.on("GET", GithubStandInServer.API_PATH + "/repos/owner/repo", 200, 
+        "{\"full_name\":\"owner/repo\",\"private\":true}");
+
+    GithubMissingPaths.put("/owner/repo/main/catalog.xml", "first");
+
+    assertTrue(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", "first"));
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", "second"));
+    
+    GithubMissingPaths.invalidate("/owner/repo/main/catalog.xml");
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", "first"));
+  }
+
+  /**
+   * Nothing is remembered when the cache is disabled.
+   */
+  @Test
+  public void testCacheCanBeDisabled() {
+    GithubMissingPaths.configure(0);
+
+    GithubMissingPaths.put("/owner/repo/main/catalog.xml", null);
+
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/catalog.xml", null));
+  }
+}
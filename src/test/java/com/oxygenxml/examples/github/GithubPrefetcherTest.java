@@ -0,0 +1,146 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubPrefetcher}.
+ */
+public class GithubPrefetcherTest {
+
+  /**
+   * The path of the map url.
+   */
+  private static final String MAP_PATH = "/owner/repo/main/maps/guide.ditamap";
+
+  /**
+   * The API path of the contents of the repository.
+   */
+  private static final String CONTENTS_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/contents";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubContentCache.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubContentCache.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * The relative references of a map are resolved against it.
+   */
+  @Test
+  public void testRelativeReferencesAreResolved() {
+    assertEquals("/owner/repo/main/maps/intro.dita", GithubPrefetcher.resolve(MAP_PATH, "intro.dita"));
+    assertEquals("/owner/repo/main/topics/a%20b.dita", GithubPrefetcher.resolve(MAP_PATH, "../topics/a%20b.dita"));
+    assertEquals("/owner/repo/main/maps/intro.dita", GithubPrefetcher.resolve(MAP_PATH, " intro.dita#topic/p "));
+    assertEquals("/owner/repo/main/maps/a&b.dita", GithubPrefetcher.resolve(MAP_PATH, "a&amp;b.dita"));
+  }
+
+  /**
+   * The references outside the branch of the map are not resolved.
+   */
+  @Test
+  public void testExternalReferencesAreNotResolved() {
+    assertNull(GithubPrefetcher.resolve(MAP_PATH, "http://example.com/topic.dita"));
+    assertNull(GithubPrefetcher.resolve(MAP_PATH, "/topics/topic.dita"));
+    assertNull(GithubPrefetcher.resolve(MAP_PATH, "../../other/topic.dita"));
+    assertNull(GithubPrefetcher.resolve(MAP_PATH, "#local"));
+    assertNull(GithubPrefetcher.resolve(MAP_PATH, ""));
+  }
+
+  /**
+   * Only the DITA maps are prefetched.
+   */
+  @Test
+  public void testMapsAreRecognized() {
+    assertTrue(GithubPrefetcher.isMap(MAP_PATH));
+    assertTrue(GithubPrefetcher.isMap("/owner/repo/main/Book.BOOKMAP"));
+    assertFalse(GithubPrefetcher.isMap("/owner/repo/main/topic.dita"));
+  }
+
+  /**
+   * The files referenced by a map are read into the cache once.
+   */
+  @Test
+  public void testReferencedFilesArePrefetched() throws Exception {
+    server.on("GET", CONTENTS_PATH + "/maps/intro.dita", 200, "<topic id='intro'/>", "ETag", "\"intro\"");
+    server.on("GET", CONTENTS_PATH + "/topics/install.dita", 200, "<topic id='install'/>", "ETag", "\"install\"");
+    String map = "<map>\n" +
+        "  <topicref href=\"intro.dita\"/>\n" +
+        "  <topicref href='../topics/install.dita#install'/>\n" +
+        "  <topicref href=\"intro.dita\" conref=\"http://example.com/map.ditamap\"/>\n" +
+        "</map>";
+
+    GithubPrefetcher.prefetchMap(MAP_PATH, null, map.getBytes("UTF-8"), null);
+    // A map opened again shortly after is not prefetched again.
+    GithubPrefetcher.prefetchMap(MAP_PATH, null, map.getBytes("UTF-8"), null);
+
+    assertNotNull(waitForContent("/owner/repo/main/maps/intro.dita"));
+    assertNotNull(waitForContent("/owner/repo/main/topics/install.dita"));
+    assertEquals(1, server.getRequests("GET", CONTENTS_PATH + "/maps/intro.dita").size());
+    assertEquals(1, server.getRequests("GET", CONTENTS_PATH + "/topics/install.dita").size());
+  }
+
+  /**
+   * The prefetch does not take the problems with the saves of the user, they are left for the editor to report.
+   */
+  @Test
+  public void testPrefetchLeavesSaveFailures() throws Exception {
+    server.on("GET", CONTENTS_PATH + "/maps/failed.dita", 200, "<topic id='failed'/>", "ETag", "\"failed\"");
+    String failure = "Your changes to /owner/repo/main/maps/other.dita could not be committed to GitHub: 404";
+    GithubSaveJournal.recordFailure("token-prefetch", failure);
+    try {
+      GithubPrefetcher.prefetchMap(MAP_PATH, null, 
+          "<map><topicref href='failed.dita'/></map>".getBytes("UTF-8"), "token-prefetch");
+
+      assertNotNull(waitForContent("/owner/repo/main/maps/failed.dita"));
+      assertEquals(failure, GithubSaveJournal.takeFailure("token-prefetch"));
+    } finally {
+      GithubSaveJournal.takeFailure("token-prefetch");
+    }
+  }
+
+  /**
+   * @param key The key of a file in the content cache.
+   *
+   * @return The cached file, <code>null</code> if it was not cached in time.
+   */
+  private static GithubContentCache.CachedContent waitForContent(String key) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    GithubContentCache.CachedContent content = GithubContentCache.get(key);
+    while (content == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      content = GithubContentCache.get(key);
+    }
+    return content;
+  }
+}
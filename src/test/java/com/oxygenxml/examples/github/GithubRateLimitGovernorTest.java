@@ -0,0 +1,210 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oxygenxml.examples.github.GithubRateLimitGovernor.Priority;
+
+/**
+ * Tests for {@link GithubRateLimitGovernor}.
+ */
+public class GithubRateLimitGovernorTest {
+
+  /**
+   * The API path requested by the tests.
+   */
+  private static final String PATH = GithubStandInServer.API_PATH + "/repos/owner/repo";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubRateLimitGovernor.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server and restores the default limits.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubRateLimitGovernor.invalidateAll();
+    GithubRateLimitGovernor.configure(
+        GithubRateLimitGovernor.DEFAULT_RESERVE_PERCENT, GithubRateLimitGovernor.DEFAULT_MAX_WAIT_MS);
+  }
+
+  /**
+   * The low priority requests are refused when only the reserve of the budget is left,
+   * the high priority ones are still made.
+   */
+  @Test
+  public void testLowPriorityRequestsKeepOutOfTheReserve() throws Exception {
+    GithubRateLimitGovernor.configure(10, GithubRateLimitGovernor.DEFAULT_MAX_WAIT_MS);
+    onRemaining(10);
+    assertEquals(200, request("token", Priority.HIGH));
+
+    try {
+      request("token", Priority.LOW);
+      fail("The low priority request should be refused.");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+    assertEquals(200, request("token", Priority.HIGH));
+    // The budget of the other tokens is not known yet.
+    assertEquals(200, request("other", Priority.LOW));
+    assertEquals(3, server.getRequests("GET", PATH).size());
+  }
+
+  /**
+   * No request is made when the budget is exhausted, until it is reset.
+   */
+  @Test
+  public void testExhaustedBudgetRefusesRequests() throws Exception {
+    long resetAt = onRemaining(0);
+    assertEquals(200, request("token", Priority.HIGH));
+
+    try {
+      request("token", Priority.HIGH);
+      fail("The request should be refused.");
+    } catch (RateLimitExceededException e) {
+      assertEquals(resetAt, e.getRetryAt());
+    }
+    assertEquals(1, server.getRequests("GET", PATH).size());
+  }
+
+  /**
+   * When GitHub asks us to back off, the high priority requests wait, the low priority ones are refused.
+   */
+  @Test
+  public void testBackoffIsWaitedByHighPriorityRequests() throws Exception {
+    server.on("GET", PATH, 429, "{\"message\":\"secondary rate limit\"}", "Retry-After", "1");
+    try {
+      request("token", Priority.HIGH);
+      fail("The rejected request should be reported.");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+    server.on("GET", PATH, 200, "{}");
+
+    try {
+      request("token", Priority.LOW);
+      fail("The low priority request should be refused.");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+    long start = System.currentTimeMillis();
+    assertEquals(200, request("token", Priority.HIGH));
+    assertTrue(System.currentTimeMillis() - start >= 500);
+    assertEquals(2, server.getRequests("GET", PATH).size());
+  }
+
+  /**
+   * A backoff longer than the configured wait is not waited for.
+   */
+  @Test
+  public void testLongBackoffIsNotWaited() throws Exception {
+    GithubRateLimitGovernor.configure(GithubRateLimitGovernor.DEFAULT_RESERVE_PERCENT, 500);
+    server.on("GET", PATH, 403, "{\"message\":\"secondary rate limit\"}", "Retry-After", "60");
+    try {
+      request("token", Priority.HIGH);
+      fail("The rejected request should be reported.");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+
+    long start = System.currentTimeMillis();
+    try {
+      request("token", Priority.HIGH);
+      fail("The request should be refused.");
+    } catch (RateLimitExceededException e) {
+      assertTrue(System.currentTimeMillis() - start < 500);
+    }
+    assertEquals(1, server.getRequests("GET", PATH).size());
+  }
+
+  /**
+   * The requests sent and not yet answered count as used, until they get a response or fail.
+   */
+  @Test
+  public void testInFlightRequestsAreCounted() throws Exception {
+    GithubRateLimitGovernor.configure(0, GithubRateLimitGovernor.DEFAULT_MAX_WAIT_MS);
+    onRemaining(2);
+    assertEquals(200, request("token", Priority.HIGH));
+
+    HttpURLConnection first = open("token");
+    HttpURLConnection second = open("token");
+    GithubRateLimitGovernor.beforeSend(first);
+    GithubRateLimitGovernor.beforeSend(second);
+    // Charged only once.
+    GithubRateLimitGovernor.beforeSend(second);
+    try {
+      GithubRateLimitGovernor.beforeSend(open("token"));
+      fail("The request should be refused while two requests are in flight.");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+
+    GithubRateLimitGovernor.onFailure(first);
+    HttpURLConnection third = open("token");
+    GithubRateLimitGovernor.beforeSend(third);
+
+    GithubRateLimitGovernor.onFailure(second);
+    GithubRateLimitGovernor.onFailure(third);
+    assertEquals(1, server.getRequests("GET", PATH).size());
+  }
+
+  /**
+   * Answers the requests with a budget of 100 requests, reset in an hour.
+   *
+   * @param remaining The number of remaining requests.
+   *
+   * @return The time when the budget is reset, in milliseconds since the epoch.
+   */
+  private long onRemaining(long remaining) {
+    long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+    server.on("GET", PATH, 200, "{}", "X-RateLimit-Limit", "100",
+        "X-RateLimit-Remaining", String.valueOf(remaining), "X-RateLimit-Reset", String.valueOf(reset));
+    return TimeUnit.SECONDS.toMillis(reset);
+  }
+
+  /**
+   * @param accessToken The access token of the request.
+   *
+   * @return A governed connection to the stand-in server, not yet connected.
+   */
+  private HttpURLConnection open(String accessToken) throws IOException {
+    return GithubHttpClient.open(new URL(server.getUrl() + PATH), accessToken, Priority.HIGH);
+  }
+
+  /**
+   * Makes a request to the stand-in server.
+   *
+   * @param accessToken The access token of the request.
+   * @param priority The priority of the request.
+   *
+   * @return The response code.
+   */
+  private int request(String accessToken, Priority priority) throws IOException {
+    HttpURLConnection connection = GithubHttpClient.open(new URL(server.getUrl() + PATH), accessToken, priority);
+    int responseCode = GithubHttpClient.getResponseCode(connection);
+    GithubHttpClient.release(connection);
+    return responseCode;
+  }
+}
@@ -0,0 +1,168 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oxygenxml.examples.github.GithubStandInServer.Request;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Tests for {@link GithubRefResolver}.
+ */
+public class GithubRefResolverTest {
+
+  /**
+   * The sha of the head commit of the branch.
+   */
+  private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+  /**
+   * The API path which resolves the branch.
+   */
+  private static final String COMMIT_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/commits/main";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubRefResolver.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubRefResolver.configure(GithubRefResolver.DEFAULT_TTL_MS);
+    GithubRefResolver.invalidateAll();
+  }
+
+  /**
+   * A resolved branch is not resolved again before the TTL.
+   */
+  @Test
+  public void testBranchIsResolvedOnceWithinTtl() {
+    GithubRefResolver.configure(60000);
+    server.on("GET", COMMIT_PATH, 200, SHA, "ETag", "\"head\"");
+
+    assertEquals(SHA, GithubRefResolver.resolve("owner", "repo", "main", null));
+    assertEquals(SHA, GithubRefResolver.resolve("owner", "repo", "main", null));
+
+    assertEquals(1, server.getRequests("GET", COMMIT_PATH).size());
+  }
+
+  /**
+   * After the TTL, the branch is resolved again with a conditional request.
+   */
+  @Test
+  public void testBranchIsRevalidatedWithETag() {
+    GithubRefResolver.configure(0);
+    server.on("GET", COMMIT_PATH, new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        if ("\"head\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          GithubStandInServer.send(exchange, 304, null, "ETag", "\"head\"");
+        } else {
+          GithubStandInServer.send(exchange, 200, SHA, "ETag", "\"head\"");
+        }
+      }
+    });
+
+    assertEquals(SHA, GithubRefResolver.resolve("owner", "repo", "main", null));
+    assertEquals(SHA, GithubRefResolver.resolve("owner", "repo", "main", null));
+
+    List<Request> requests = server.getRequests("GET", COMMIT_PATH);
+    assertEquals(2, requests.size());
+    assertNull(requests.get(0).ifNoneMatch);
+    assertEquals("\"head\"", requests.get(1).ifNoneMatch);
+  }
+
+  /**
+   * The concurrent resolutions of a branch make a single request.
+   */
+  @Test
+  public void testConcurrentResolutionsAreSingleFlight() throws Exception {
+    GithubRefResolver.configure(60000);
+    final CountDownLatch requestReceived = new CountDownLatch(1);
+    final CountDownLatch responseAllowed = new CountDownLatch(1);
+    server.on("GET", COMMIT_PATH, new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        requestReceived.countDown();
+        try {
+          responseAllowed.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        GithubStandInServer.send(exchange, 200, SHA, "ETag", "\"head\"");
+      }
+    });
+
+    ExecutorService callers = Executors.newFixedThreadPool(8);
+    try {
+      Callable<String> resolve = new Callable<String>() {
+        public String call() {
+          return GithubRefResolver.resolve("owner", "repo", "main", null);
+        }
+      };
+      Future<?>[] results = new Future<?>[8];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = callers.submit(resolve);
+      }
+      assertTrue(requestReceived.await(10, TimeUnit.SECONDS));
+      // Lets the other callers join the resolution in progress.
+      Thread.sleep(200);
+      responseAllowed.countDown();
+
+      for (Future<?> result : results) {
+        assertEquals(SHA, result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      callers.shutdownNow();
+    }
+    assertEquals(1, server.getRequests("GET", COMMIT_PATH).size());
+  }
+
+  /**
+   * An invalidated branch is resolved again.
+   */
+  @Test
+  public void testInvalidatedBranchIsResolvedAgain() {
+    GithubRefResolver.configure(60000);
+    server.on("GET", COMMIT_PATH, 200, SHA, "ETag", "\"head\"");
+
+    GithubRefResolver.resolve("owner", "repo", "main", null);
+    GithubRefResolver.invalidate("owner", "repo", "main");
+    GithubRefResolver.resolve("owner", "repo", "main", null);
+
+    assertEquals(2, server.getRequests("GET", COMMIT_PATH).size());
+  }
+
+  /**
+   * A branch which does not exist is not resolved.
+   */
+  @Test
+  public void testMissingBranchIsNotResolved() {
+    assertNull(GithubRefResolver.resolve("owner", "repo", "missing", null));
+  }
+}
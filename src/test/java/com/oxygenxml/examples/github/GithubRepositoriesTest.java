@@ -0,0 +1,101 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubRepositories}.
+ */
+public class GithubRepositoriesTest {
+
+  /**
+   * The API path of the repository.
+   */
+  private static final String REPO_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubRepositories.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubRepositories.invalidateAll();
+  }
+
+  /**
+   * A public repository is looked up once for all the users.
+   */
+  @Test
+  public void testPublicRepositoryIsRemembered() throws IOException {
+    server.on("GET", REPO_PATH, 200, "{\"full_name\":\"owner/repo\",\"private\":false}");
+
+    assertTrue(GithubRepositories.isPublic("owner", "repo", "first"));
+    assertTrue(GithubRepositories.isPublic("owner", "repo", "second"));
+    assertTrue(GithubRepositories.hasAccess("owner", "repo", "third"));
+
+    assertEquals(1, server.getRequests("GET", REPO_PATH).size());
+  }
+
+  /**
+   * A private repository is looked up once, and its access is checked for every user.
+   */
+  @Test
+  public void testPrivateRepositoryIsRemembered() throws IOException {
+    server.on("GET", REPO_PATH, 200, "{\"full_name\":\"owner/repo\",\"private\":true}");
+
+    assertFalse(GithubRepositories.isPublic("owner", "repo", "first"));
+    assertFalse(GithubRepositories.isPublic("owner", "repo", "second"));
+    assertTrue(GithubRepositories.hasAccess("owner", "repo", "first"));
+    assertEquals(1, server.getRequests("GET", REPO_PATH).size());
+
+    assertTrue(GithubRepositories.hasAccess("owner", "repo", "second"));
+    assertEquals(2, server.getRequests("GET", REPO_PATH).size());
+  }
+
+  /**
+   * A repository which the token cannot see is not looked up again for a while.
+   */
+  @Test
+  public void testHiddenRepositoryIsRemembered() throws IOException {
+    assertFalse(GithubRepositories.isPublic("owner", "repo", "first"));
+    assertFalse(GithubRepositories.isPublic("owner", "repo", "first"));
+    assertFalse(GithubRepositories.hasAccess("owner", "repo", "first"));
+
+    assertEquals(1, server.getRequests("GET", REPO_PATH).size());
+  }
+
+  /**
+   * A repository hidden from a token may be visible to another one.
+   */
+  @Test
+  public void testHiddenRepositoryIsRememberedByToken() throws IOException {
+    assertFalse(GithubRepositories.hasAccess("owner", "repo", "first"));
+    server.on("GET", REPO_PATH, 200, "{\"full_name\":\"owner/repo\",\"private\":true}");
+
+    assertTrue(GithubRepositories.hasAccess("owner", "repo", "second"));
+    assertFalse(GithubRepositories.hasAccess("owner", "repo", "first"));
+
+    assertEquals(2, server.getRequests("GET", REPO_PATH).size());
+  }
+}
@@ -0,0 +1,333 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.oxygenxml.examples.github.GithubStandInServer.Request;
+import com.sun.net.httpserver.HttpExchange;
+
+import ro.sync.ecss.extensions.api.webapp.plugin.UserActionRequiredException;
+
+/**
+ * Tests for {@link GithubSaveJournal}.
+ */
+public class GithubSaveJournalTest {
+
+  /**
+   * The API path of the contents of the repository.
+   */
+  private static final String CONTENTS_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/contents";
+
+  /**
+   * The response to a successful save.
+   */
+  private static final String SAVED = "{\"content\":{\"sha\":\"s2\"},\"commit\":{\"sha\":\"c2\"}}";
+
+  /**
+   * The parent of the journal folder.
+   */
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * The folder of the journal.
+   */
+  private File journalFolder;
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    journalFolder = new File(temporaryFolder.getRoot(), "journal");
+    GithubBlobShas.invalidateAll();
+  }
+
+  /**
+   * Disables the journal and stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    GithubSaveJournal.configure(null, GithubSaveJournal.DEFAULT_FLUSH_DELAY_MS);
+    server.stop();
+    GithubBlobShas.invalidateAll();
+  }
+
+  /**
+   * A journaled save is read from the journal until it is committed, then it is deleted.
+   */
+  @Test
+  public void testSaveIsCommittedInTheBackground() throws Exception {
+    server.on("PUT", CONTENTS_PATH + "/a.dita", 201, SAVED);
+    GithubSaveJournal.configure(journalFolder, 10);
+    if (isPosix()) {
+      assertEquals("rwx------",
+          PosixFilePermissions.toString(Files.getPosixFilePermissions(journalFolder.toPath())));
+    }
+
+    append("/owner/repo/main/a.dita", "token-commit", "<topic id='a'/>");
+
+    List<Request> puts = waitForRequests("PUT", CONTENTS_PATH + "/a.dita", 1);
+    assertEquals(1, puts.size());
+    assertTrue(new String(puts.get(0).body, "UTF-8").contains("\"branch\":\"main\""));
+    waitForEmptyJournal();
+    assertNull(GithubSaveJournal.openPendingContent("/owner/repo/main/a.dita", "token-commit"));
+    assertEquals("s2", GithubBlobShas.get("/owner/repo/main/a.dita"));
+  }
+
+  /**
+   * The saves left in the journal are committed again, the invalid ones are kept aside.
+   */
+  @Test
+  public void testSavesLeftAreReplayed() throws Exception {
+    server.on("PUT", CONTENTS_PATH + "/a.dita", 201, SAVED);
+    assertTrue(journalFolder.mkdirs());
+    write(new File(journalFolder, "00000000000000000001.entry"),
+        "{\"url\":\"/owner/repo/main/a.dita\",\"token\":\"token-replay\",\"sha\":\"s1\"}\n<topic id='a'/>");
+    write(new File(journalFolder, "00000000000000000002.entry"), "{\"url\":\"/owner\"}\n<topic/>");
+    write(new File(journalFolder, "00000000000000000003.entry.tmp"), "{\"url\":\"/owner/repo/main/b.dita\"}\n");
+
+    GithubSaveJournal.configure(journalFolder, 10);
+
+    List<Request> puts = waitForRequests("PUT", CONTENTS_PATH + "/a.dita", 1);
+    String body = new String(puts.get(0).body, "UTF-8");
+    assertTrue(body, body.contains("\"sha\":\"s1\""));
+    assertEquals("token token-replay", puts.get(0).authorization);
+    assertTrue(new File(journalFolder, "00000000000000000002.entry.failed").isFile());
+    assertFalse(new File(journalFolder, "00000000000000000003.entry.tmp").exists());
+    waitForFiles(1);
+  }
+
+  /**
+   * A save over a file which changed on GitHub since it was opened is not committed, and not tried again.
+   */
+  @Test
+  public void testConflictIsReported() throws Exception {
+    server.on("PUT", CONTENTS_PATH + "/a.dita", 409, "{\"message\":\"a.dita does not match s1\"}");
+    GithubBlobShas.put("/owner/repo/main/a.dita", "s1");
+    GithubSaveJournal.configure(journalFolder, 10);
+
+    append("/owner/repo/main/a.dita", "token-conflict", "<topic id='a'/>");
+
+    String failure = waitForFailure("token-conflict");
+    assertTrue(failure, failure.contains("/owner/repo/main/a.dita"));
+    assertTrue(failure, failure.contains("changed on GitHub"));
+    List<Request> puts = server.getRequests("PUT", CONTENTS_PATH + "/a.dita");
+    assertEquals(1, puts.size());
+    assertTrue(new String(puts.get(0).body, "UTF-8").contains("\"sha\":\"s1\""));
+
+    File[] files = journalFolder.listFiles();
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().endsWith(".entry.failed"));
+    if (isPosix()) {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(files[0].toPath())));
+    }
+  }
+
+  /**
+   * A save made while a previous one could not be committed is kept, and the previous problem is reported once.
+   */
+  @Test
+  public void testSaveIsKeptWhenPreviousFailureIsReported() throws Exception {
+    server.on("PUT", CONTENTS_PATH + "/a.dita", 201, SAVED);
+    GithubSaveJournal.configure(journalFolder, 10);
+    GithubSaveJournal.recordFailure("token-report", 
+        "Your changes to /owner/repo/main/b.dita could not be committed to GitHub: 404");
+
+    URL url = new URL(GithubUrlStreamHandler.getApiUrlString("/owner/repo/main/a.dita"));
+    GithubUrlConnection connection = new GithubUrlConnection(
+        GithubHttpClient.open(url, "token-report"), "token-report", "/owner/repo/main/a.dita");
+    OutputStream out = connection.getOutputStream();
+    out.write("<topic id='a'/>".getBytes("UTF-8"));
+    try {
+      out.close();
+      fail("The previous failure was not reported");
+    } catch (UserActionRequiredException e) {
+      // Expected.
+    }
+
+    assertNull(GithubSaveJournal.takeFailure("token-report"));
+    List<Request> puts = waitForRequests("PUT", CONTENTS_PATH + "/a.dita", 1);
+    assertEquals("token token-report", puts.get(0).authorization);
+    waitForEmptyJournal();
+  }
+
+  /**
+   * A save which GitHub rejects is not tried again.
+   */
+  @Test
+  public void testRejectedSaveIsNotRetried() throws Exception {
+    GithubSaveJournal.configure(journalFolder, 10);
+
+    append("/owner/repo/main/missing.dita", "token-rejected", "<topic/>");
+
+    assertNotNull(waitForFailure("token-rejected"));
+    assertEquals(1, server.getRequests("PUT", CONTENTS_PATH + "/missing.dita").size());
+  }
+
+  /**
+   * A save which failed because of GitHub is tried again.
+   */
+  @Test
+  public void testFailedSaveIsRetried() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    server.on("PUT", CONTENTS_PATH + "/a.dita", new GithubStandInServer.Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        if (attempts.incrementAndGet() == 1) {
+          GithubStandInServer.send(exchange, 502, "{\"message\":\"Server Error\"}");
+        } else {
+          GithubStandInServer.send(exchange, 201, SAVED);
+        }
+      }
+    });
+    GithubSaveJournal.configure(journalFolder, 10);
+
+    append("/owner/repo/main/a.dita", "token-retry", "<topic id='a'/>");
+
+    assertEquals(2, waitForRequests("PUT", CONTENTS_PATH + "/a.dita", 2).size());
+    waitForEmptyJournal();
+    assertNull(GithubSaveJournal.takeFailure("token-retry"));
+  }
+
+  /**
+   * The saves of a user who exceeded the rate limit do not delay the saves of the others.
+   */
+  @Test
+  public void testRateLimitedSaveDoesNotDelayOthers() throws Exception {
+    server.on("PUT", CONTENTS_PATH + "/limited.dita", 403, "{\"message\":\"secondary rate limit\"}",
+        "Retry-After", "60");
+    server.on("PUT", CONTENTS_PATH + "/other.dita", 201, SAVED);
+    GithubSaveJournal.configure(journalFolder, 10);
+
+    append("/owner/repo/main/limited.dita", "token-limited", "<topic id='limited'/>");
+    waitForRequests("PUT", CONTENTS_PATH + "/limited.dita", 1);
+    append("/owner/repo/main/other.dita", "token-other", "<topic id='other'/>");
+
+    waitForRequests("PUT", CONTENTS_PATH + "/other.dita", 1);
+    waitForFiles(1);
+    assertEquals(1, server.getRequests("PUT", CONTENTS_PATH + "/limited.dita").size());
+    assertArrayEquals("<topic id='limited'/>".getBytes("UTF-8"), IOUtils.toByteArray(
+        GithubSaveJournal.openPendingContent("/owner/repo/main/limited.dita", "token-limited")));
+    assertNull(GithubSaveJournal.takeFailure("token-limited"));
+  }
+
+  /**
+   * Writes a save to the journal.
+   *
+   * @param urlPathPart The path of the file url.
+   * @param accessToken The access token of the author.
+   * @param content The saved content.
+   */
+  private static void append(String urlPathPart, String accessToken, String content) throws IOException {
+    GithubSaveJournal.append(urlPathPart, accessToken, new ByteArrayInputStream(content.getBytes("UTF-8")));
+  }
+
+  /**
+   * Waits for requests to the stand-in server, at most 10 seconds.
+   *
+   * @param method The method of the requests.
+   * @param path The path of the requests.
+   * @param count The number of requests to wait for.
+   *
+   * @return The requests received.
+   */
+  private List<Request> waitForRequests(String method, String path, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    List<Request> requests = server.getRequests(method, path);
+    while (requests.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      requests = server.getRequests(method, path);
+    }
+    assertEquals(count, requests.size());
+    return requests;
+  }
+
+  /**
+   * Waits for the problem with the saves of a user, at most 10 seconds.
+   *
+   * @param accessToken The access token of the user.
+   *
+   * @return The problem.
+   */
+  private static String waitForFailure(String accessToken) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    String failure = GithubSaveJournal.takeFailure(accessToken);
+    while (failure == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      failure = GithubSaveJournal.takeFailure(accessToken);
+    }
+    assertNotNull(failure);
+    return failure;
+  }
+
+  /**
+   * Waits until the committed saves are deleted from the journal, at most 10 seconds.
+   */
+  private void waitForEmptyJournal() throws InterruptedException {
+    waitForFiles(0);
+  }
+
+  /**
+   * Waits until the journal folder holds a number of files, at most 10 seconds.
+   *
+   * @param count The number of files.
+   */
+  private void waitForFiles(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (journalFolder.listFiles().length != count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, journalFolder.listFiles().length);
+  }
+
+  /**
+   * @param file A file.
+   * @param content The content of the file.
+   */
+  private static void write(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      InputStream in = new ByteArrayInputStream(content.getBytes("UTF-8"));
+      IOUtils.copy(in, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the file system of the journal supports POSIX permissions.
+   */
+  private boolean isPosix() {
+    return temporaryFolder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+}
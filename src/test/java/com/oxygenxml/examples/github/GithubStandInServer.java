@@ -0,0 +1,230 @@
+package com.oxygenxml.examples.github;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local server which stands in for the GitHub API in the tests. The plugin is pointed to it
+ * while it runs, as if it was a GitHub Enterprise deployment.
+ *
+ * The requests without a registered responder are answered with 404.
+ */
+class GithubStandInServer {
+
+  /**
+   * The path of the REST API on a GitHub Enterprise deployment.
+   */
+  static final String API_PATH = "/api/v3";
+
+  /**
+   * Answers a request.
+   */
+  interface Responder {
+    /**
+     * Answers a request.
+     *
+     * @param exchange The request and response.
+     * @param requestBody The body of the request.
+     *
+     * @throws IOException If the response could not be sent.
+     */
+    void respond(HttpExchange exchange, byte[] requestBody) throws IOException;
+  }
+
+  /**
+   * A request received by the server.
+   */
+  static class Request {
+    /**
+     * The method of the request.
+     */
+    final String method;
+    /**
+     * The path of the request, without the query.
+     */
+    final String path;
+    /**
+     * The value of the If-None-Match header, <code>null</code> if missing.
+     */
+    final String ifNoneMatch;
+    /**
+     * The value of the Authorization header, <code>null</code> if missing.
+     */
+    final String authorization;
+    /**
+     * The body of the request.
+     */
+    final byte[] body;
+
+    /**
+     * Constructor.
+     *
+     * @param exchange The request.
+     * @param body The body of the request.
+     */
+    Request(HttpExchange exchange, byte[] body) {
+      this.method = exchange.getRequestMethod();
+      this.path = exchange.getRequestURI().getRawPath();
+      this.ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+      this.authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      this.body = body;
+    }
+  }
+
+  /**
+   * The HTTP server.
+   */
+  private final HttpServer server;
+
+  /**
+   * The threads of the server.
+   */
+  private final ExecutorService threads = Executors.newCachedThreadPool();
+
+  /**
+   * A map of &lt;method and path, responder&gt;.
+   */
+  private final Map<String, Responder> responders = new ConcurrentHashMap<String, Responder>();
+
+  /**
+   * The requests received, in the order in which they were received.
+   */
+  private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+  /**
+   * Starts the server and points the plugin to it.
+   *
+   * @throws IOException If the server could not be started.
+   */
+  GithubStandInServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("localhost"), 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] body;
+        try {
+          body = IOUtils.toByteArray(in);
+        } finally {
+          in.close();
+        }
+        requests.add(new Request(exchange, body));
+        Responder responder = responders.get(
+            exchange.getRequestMethod() + " " + exchange.getRequestURI().getRawPath());
+        try {
+          if (responder != null) {
+            responder.respond(exchange, body);
+          } else {
+            send(exchange, 404, "{\"message\":\"Not Found\"}");
+          }
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.setExecutor(threads);
+    server.start();
+    GitHubOauthServlet.apiUrl = getUrl();
+  }
+
+  /**
+   * @return The url of the server.
+   */
+  String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Registers the responder of the requests made with a method to a path.
+   *
+   * @param method The method of the requests.
+   * @param path The path of the requests, without the query.
+   * @param responder The responder.
+   */
+  void on(String method, String path, Responder responder) {
+    responders.put(method + " " + path, responder);
+  }
+
+  /**
+   * Registers a fixed response to the requests made with a method to a path.
+   *
+   * @param method The method of the requests.
+   * @param path The path of the requests, without the query.
+   * @param code The response code.
+   * @param body The response body.
+   * @param headers The names and values of the response headers.
+   */
+  void on(String method, String path, final int code, final String body, final String... headers) {
+    on(method, path, new Responder() {
+      public void respond(HttpExchange exchange, byte[] requestBody) throws IOException {
+        send(exchange, code, body, headers);
+      }
+    });
+  }
+
+  /**
+   * @param method The method of the requests.
+   * @param path The path of the requests, without the query.
+   *
+   * @return The requests received with the method for the path.
+   */
+  List<Request> getRequests(String method, String path) {
+    List<Request> matchingRequests = new ArrayList<Request>();
+    synchronized (requests) {
+      for (Request request : requests) {
+        if (request.method.equals(method) && request.path.equals(path)) {
+          matchingRequests.add(request);
+        }
+      }
+    }
+    return matchingRequests;
+  }
+
+  /**
+   * Stops the server and points the plugin back to GitHub.
+   */
+  void stop() {
+    GitHubOauthServlet.apiUrl = null;
+    server.stop(0);
+    threads.shutdownNow();
+  }
+
+  /**
+   * Sends a response.
+   *
+   * @param exchange The request and response.
+   * @param code The response code.
+   * @param body The response body, <code>null</code> for none.
+   * @param headers The names and values of the response headers.
+   *
+   * @throws IOException If the response could not be sent.
+   */
+  static void send(HttpExchange exchange, int code, String body, String... headers) throws IOException {
+    for (int i = 0; i + 1 < headers.length; i += 2) {
+      exchange.getResponseHeaders().add(headers[i], headers[i + 1]);
+    }
+    byte[] bytes = body != null ? body.getBytes("UTF-8") : new byte[0];
+    // The responses without body must not announce one.
+    exchange.sendResponseHeaders(code, code == 304 || code == 204 || bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+  }
+}
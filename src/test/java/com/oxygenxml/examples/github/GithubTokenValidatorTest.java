@@ -0,0 +1,116 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubTokenValidator}.
+ */
+public class GithubTokenValidatorTest {
+
+  /**
+   * The API path used to check the tokens.
+   */
+  private static final String USER_PATH = GithubStandInServer.API_PATH + "/user";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubTokenValidator.configure(GithubTokenValidator.DEFAULT_TTL_SECONDS, 
+        GithubTokenValidator.DEFAULT_MAX_AGE_SECONDS);
+  }
+
+  /**
+   * Stops the stand-in server and forgets the checked tokens.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubTokenValidator.configure(GithubTokenValidator.DEFAULT_TTL_SECONDS, 
+        GithubTokenValidator.DEFAULT_MAX_AGE_SECONDS);
+  }
+
+  /**
+   * A valid token is checked once, then answered from the cache.
+   */
+  @Test
+  public void testValidTokenIsRemembered() throws Exception {
+    server.on("GET", USER_PATH, 200, "{\"login\":\"octocat\"}");
+
+    assertTrue(GithubTokenValidator.isValid("token-valid"));
+    assertTrue(GithubTokenValidator.isValid("token-valid"));
+
+    assertEquals(1, server.getRequests("GET", USER_PATH).size());
+    assertEquals("token token-valid", server.getRequests("GET", USER_PATH).get(0).authorization);
+  }
+
+  /**
+   * An invalid token is not remembered, so that it is checked again if the user logs in with it.
+   */
+  @Test
+  public void testInvalidTokenIsNotRemembered() throws Exception {
+    server.on("GET", USER_PATH, 401, "{\"message\":\"Bad credentials\"}");
+
+    assertFalse(GithubTokenValidator.isValid("token-invalid"));
+    assertFalse(GithubTokenValidator.isValid("token-invalid"));
+
+    assertEquals(2, server.getRequests("GET", USER_PATH).size());
+  }
+
+  /**
+   * A token which could not be checked because of the rate limit is not considered valid, 
+   * and it is checked again on the next request.
+   */
+  @Test
+  public void testRateLimitedTokenIsNotRemembered() throws Exception {
+    server.on("GET", USER_PATH, 403, "{\"message\":\"secondary rate limit\"}", "Retry-After", "0");
+
+    try {
+      GithubTokenValidator.isValid("token-limited");
+      fail("The token should not have been checked");
+    } catch (RateLimitExceededException e) {
+      // Expected.
+    }
+
+    server.on("GET", USER_PATH, 200, "{\"login\":\"octocat\"}");
+    assertTrue(GithubTokenValidator.isValid("token-limited"));
+    assertEquals(2, server.getRequests("GET", USER_PATH).size());
+  }
+
+  /**
+   * A valid token stays valid when its background check fails.
+   */
+  @Test
+  public void testFailedRefreshKeepsToken() throws Exception {
+    GithubTokenValidator.configure(1, GithubTokenValidator.DEFAULT_MAX_AGE_SECONDS);
+    server.on("GET", USER_PATH, 200, "{\"login\":\"octocat\"}");
+    assertTrue(GithubTokenValidator.isValid("token-refresh"));
+
+    server.on("GET", USER_PATH, 502, "{\"message\":\"Server Error\"}");
+    Thread.sleep(1100);
+    assertTrue(GithubTokenValidator.isValid("token-refresh"));
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (server.getRequests("GET", USER_PATH).size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, server.getRequests("GET", USER_PATH).size());
+    assertTrue(GithubTokenValidator.isValid("token-refresh"));
+  }
+}
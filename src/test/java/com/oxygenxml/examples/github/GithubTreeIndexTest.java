@@ -0,0 +1,131 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.sync.net.protocol.FolderEntryDescriptor;
+
+/**
+ * Tests for {@link GithubTreeIndex}.
+ */
+public class GithubTreeIndexTest {
+
+  /**
+   * The sha of the indexed commit.
+   */
+  private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+  /**
+   * The API path of the recursive tree of the commit.
+   */
+  private static final String TREE_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/git/trees/" + SHA;
+
+  /**
+   * The size limit of the indexes used by the tests.
+   */
+  private static final long MAX_ENTRIES = 100000;
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubTreeIndex.configure(MAX_ENTRIES);
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubTreeIndex.configure(GithubTreeIndex.DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * An index heavier than a cache segment share of the limit is kept and reused.
+   */
+  @Test
+  public void testLargeIndexIsCached() {
+    int fileCount = 20000;
+    server.on("GET", TREE_PATH, 200, createTree(fileCount, false));
+
+    List<FolderEntryDescriptor> entries = GithubTreeIndex.listFolder(
+        "/owner/repo/" + SHA + "/topics", "/owner/repo/main/topics", null);
+    assertNotNull(entries);
+    assertEquals(fileCount, entries.size());
+    assertNotNull(GithubTreeIndex.listFolder("/owner/repo/" + SHA + "/", "/owner/repo/main/", null));
+
+    assertEquals(1, server.getRequests("GET", TREE_PATH).size());
+  }
+
+  /**
+   * The files are listed with their encoded names and the folders with a trailing slash.
+   */
+  @Test
+  public void testFolderIsListed() {
+    server.on("GET", TREE_PATH, 200, createTree(1, false));
+
+    List<FolderEntryDescriptor> entries = GithubTreeIndex.listFolder("/owner/repo/" + SHA, "/owner/repo/main", null);
+
+    assertEquals(2, entries.size());
+    assertEquals("read%20me.md", entries.get(0).getAbsolutePath());
+    assertEquals("topics/", entries.get(1).getAbsolutePath());
+  }
+
+  /**
+   * The truncated trees are not indexed, and not requested again.
+   */
+  @Test
+  public void testTruncatedTreeIsNotIndexed() {
+    server.on("GET", TREE_PATH, 200, createTree(1, true));
+
+    assertNull(GithubTreeIndex.listFolder("/owner/repo/" + SHA + "/topics", "/owner/repo/main/topics", null));
+    assertNull(GithubTreeIndex.listFolder("/owner/repo/" + SHA + "/topics", "/owner/repo/main/topics", null));
+
+    assertEquals(1, server.getRequests("GET", TREE_PATH).size());
+  }
+
+  /**
+   * The folders which are not in the commit are not listed.
+   */
+  @Test
+  public void testMissingFolderIsNotListed() {
+    server.on("GET", TREE_PATH, 200, createTree(1, false));
+
+    assertNull(GithubTreeIndex.listFolder("/owner/repo/" + SHA + "/missing", "/owner/repo/main/missing", null));
+  }
+
+  /**
+   * @param fileCount The number of files in the "topics" folder.
+   * @param truncated <code>true</code> if GitHub truncated the tree.
+   *
+   * @return The recursive tree of the commit, as returned by the Git Trees API.
+   */
+  private static String createTree(int fileCount, boolean truncated) {
+    StringBuilder tree = new StringBuilder("{\"sha\":\"").append(SHA).append("\",\"tree\":[");
+    tree.append("{\"path\":\"read me.md\",\"mode\":\"100644\",\"type\":\"blob\",")
+        .append("\"sha\":\"1111111111111111111111111111111111111111\"},");
+    tree.append("{\"path\":\"topics\",\"mode\":\"040000\",\"type\":\"tree\",")
+        .append("\"sha\":\"2222222222222222222222222222222222222222\"}");
+    for (int i = 0; i < fileCount; i++) {
+      tree.append(",{\"path\":\"topics/topic").append(i).append(".dita\",\"mode\":\"100644\",\"type\":\"blob\",")
+          .append("\"sha\":\"3333333333333333333333333333333333333333\"}");
+    }
+    return tree.append("],\"truncated\":").append(truncated).append("}").toString();
+  }
+}
@@ -0,0 +1,158 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.sync.net.protocol.FolderEntryDescriptor;
+
+/**
+ * Tests for the folder listing of {@link GithubUrlConnection}.
+ */
+public class GithubUrlConnectionTest {
+
+  /**
+   * The url path of the listed folder.
+   */
+  private static final String FOLDER = "/owner/repo/main/topics";
+
+  /**
+   * The Contents API path of the listed folder.
+   */
+  private static final String CONTENTS_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/contents/topics";
+
+  /**
+   * The Git Trees API path of the listed folder.
+   */
+  private static final String TREE_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/git/trees/main:topics";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * Stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    server.stop();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * The files and folders of a tree are listed, the other entries are skipped, and the shas of the files
+   * are remembered.
+   */
+  @Test
+  public void testTreeEntriesAreParsed() throws Exception {
+    String tree = "{\"sha\":\"t1\",\"url\":\"https://api.github.com/repos/owner/repo/git/trees/t1\",\"tree\":[" +
+        "{\"path\":\"a b.dita\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"s1\",\"size\":12," +
+        "\"url\":\"https://api.github.com/repos/owner/repo/git/blobs/s1\"}," +
+        "{\"path\":\"images\",\"mode\":\"040000\",\"type\":\"tree\",\"sha\":\"t2\"}," +
+        "{\"path\":\"library\",\"mode\":\"160000\",\"type\":\"commit\",\"sha\":\"c1\"}]," +
+        "\"truncated\":false}";
+
+    List<FolderEntryDescriptor> entries = GithubUrlConnection.parseTreeEntries(
+        new ByteArrayInputStream(tree.getBytes("UTF-8")), FOLDER);
+
+    assertEquals(2, entries.size());
+    assertEquals("a%20b.dita", entries.get(0).getAbsolutePath());
+    assertEquals("images/", entries.get(1).getAbsolutePath());
+    assertEquals("s1", GithubBlobShas.get(FOLDER + "/a%20b.dita"));
+  }
+
+  /**
+   * A folder which the Contents API truncated is listed again with the Git Trees API.
+   */
+  @Test
+  public void testTruncatedFolderIsListedFromTree() throws Exception {
+    server.on("GET", CONTENTS_PATH, 200, createContentsListing(1000));
+    server.on("GET", TREE_PATH, 200, createTreeListing(1500));
+
+    List<FolderEntryDescriptor> entries = listFolder();
+
+    assertEquals(1500, entries.size());
+    assertEquals("topic1499.dita", entries.get(1499).getAbsolutePath());
+    assertEquals("s1499", GithubBlobShas.get(FOLDER + "/topic1499.dita"));
+    assertEquals(1, server.getRequests("GET", TREE_PATH).size());
+  }
+
+  /**
+   * A folder which the Contents API listed entirely is not listed again.
+   */
+  @Test
+  public void testSmallFolderIsNotListedFromTree() throws Exception {
+    server.on("GET", CONTENTS_PATH, 200, createContentsListing(999));
+
+    assertEquals(999, listFolder().size());
+    assertEquals(0, server.getRequests("GET", TREE_PATH).size());
+  }
+
+  /**
+   * When the tree cannot be read, the entries of the Contents API are kept.
+   */
+  @Test
+  public void testContentsEntriesAreKeptWhenTheTreeFails() throws Exception {
+    server.on("GET", CONTENTS_PATH, 200, createContentsListing(1000));
+    server.on("GET", TREE_PATH, 502, "{\"message\":\"Server Error\"}");
+
+    assertEquals(1000, listFolder().size());
+  }
+
+  /**
+   * @return The entries of the folder, listed through the stand-in server.
+   */
+  private static List<FolderEntryDescriptor> listFolder() throws IOException {
+    GithubUrlConnection connection = new GithubUrlConnection(
+        GithubHttpClient.open(new URL(GithubUrlStreamHandler.getApiUrlString(FOLDER)), null), null, FOLDER);
+    return connection.listFolder();
+  }
+
+  /**
+   * @param count The number of files.
+   *
+   * @return A Contents API listing of a folder with the given number of files.
+   */
+  private static String createContentsListing(int count) {
+    StringBuilder listing = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      listing.append(i == 0 ? "" : ",").append("{\"name\":\"topic").append(i).append(".dita\",")
+          .append("\"path\":\"topics/topic").append(i).append(".dita\",\"sha\":\"s").append(i)
+          .append("\",\"type\":\"file\"}");
+    }
+    return listing.append("]").toString();
+  }
+
+  /**
+   * @param count The number of files.
+   *
+   * @return A Git Trees API listing of a folder with the given number of files.
+   */
+  private static String createTreeListing(int count) {
+    StringBuilder listing = new StringBuilder("{\"sha\":\"t1\",\"tree\":[");
+    for (int i = 0; i < count; i++) {
+      listing.append(i == 0 ? "" : ",").append("{\"path\":\"topic").append(i).append(".dita\",")
+          .append("\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"s").append(i).append("\"}");
+    }
+    return listing.append("],\"truncated\":false}").toString();
+  }
+}
@@ -0,0 +1,255 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GithubWebhookServlet}, with payloads recorded from GitHub.
+ */
+public class GithubWebhookServletTest {
+
+  /**
+   * The secret of the webhooks.
+   */
+  private static final String SECRET = "It's a Secret to Everybody";
+
+  /**
+   * The SHA-256 signature of push.json, with the secret.
+   */
+  private static final String PUSH_SHA256 = "sha256=9bb2cf6168db270e0c2084ca5e96540c7d3fc7ba310c0003b0b930bc2ae68b77";
+
+  /**
+   * The SHA-1 signature of push.json, with the secret.
+   */
+  private static final String PUSH_SHA1 = "sha1=793e162725e049c45ad2f8ac2211bedc257a6414";
+
+  /**
+   * The SHA-256 signature of create.json, with the secret.
+   */
+  private static final String CREATE_SHA256 = "sha256=436214f55a5ccb60470b15eb394b764d5ee259b90f7a63e04984687e5ab1f838";
+
+  /**
+   * The SHA-1 signature of delete.json, with the secret.
+   */
+  private static final String DELETE_SHA1 = "sha1=920c521fb8eb290f0c0da1ff69b4b7edafaf9c50";
+
+  /**
+   * The API path which resolves the main branch.
+   */
+  private static final String COMMIT_PATH = GithubStandInServer.API_PATH + "/repos/owner/repo/commits/main";
+
+  /**
+   * The stand-in GitHub server.
+   */
+  private GithubStandInServer server;
+
+  /**
+   * Enables the webhooks and starts the stand-in server.
+   */
+  @Before
+  public void setUp() throws IOException {
+    server = new GithubStandInServer();
+    GithubWebhookServlet.configure(SECRET);
+    GithubRefResolver.configure(60000);
+    GithubRefResolver.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * Disables the webhooks and stops the stand-in server.
+   */
+  @After
+  public void tearDown() {
+    GithubWebhookServlet.configure(null);
+    server.stop();
+    GithubRefResolver.configure(GithubRefResolver.DEFAULT_TTL_MS);
+    GithubRefResolver.invalidateAll();
+    GithubBlobShas.invalidateAll();
+    GithubMissingPaths.invalidateAll();
+  }
+
+  /**
+   * The example signature of the GitHub documentation is verified.
+   */
+  @Test
+  public void testDocumentedSignatureIsVerified() throws Exception {
+    byte[] body = "Hello, World!".getBytes("UTF-8");
+    String signature = "sha256=757107ea0eb2509fc211221cce984b8a37570b6d7586c22c46f4379c8b043e17";
+
+    assertTrue(GithubWebhookServlet.isSigned(body, SECRET, signature, "HmacSHA256", "sha256="));
+    assertTrue(GithubWebhookServlet.isSigned(body, SECRET, signature.toUpperCase().replace("SHA256=", "sha256="),
+        "HmacSHA256", "sha256="));
+    assertFalse(GithubWebhookServlet.isSigned(body, "other secret", signature, "HmacSHA256", "sha256="));
+    assertFalse(GithubWebhookServlet.isSigned("Hello, World?".getBytes("UTF-8"), SECRET, signature,
+        "HmacSHA256", "sha256="));
+    assertFalse(GithubWebhookServlet.isSigned(body, SECRET, signature.substring("sha256=".length()),
+        "HmacSHA256", "sha256="));
+    assertFalse(GithubWebhookServlet.isSigned(body, SECRET, null, "HmacSHA256", "sha256="));
+  }
+
+  /**
+   * The recorded payloads are verified with both signature headers.
+   */
+  @Test
+  public void testRecordedSignaturesAreVerified() throws Exception {
+    byte[] push = readPayload("push.json");
+
+    assertTrue(GithubWebhookServlet.isSigned(push, SECRET, PUSH_SHA256, "HmacSHA256", "sha256="));
+    assertTrue(GithubWebhookServlet.isSigned(push, SECRET, PUSH_SHA1, "HmacSHA1", "sha1="));
+    assertFalse(GithubWebhookServlet.isSigned(push, SECRET, PUSH_SHA1, "HmacSHA256", "sha256="));
+    assertFalse(GithubWebhookServlet.isSigned(readPayload("delete.json"), SECRET, PUSH_SHA256,
+        "HmacSHA256", "sha256="));
+  }
+
+  /**
+   * The webhooks which are not signed with the secret are rejected, and nothing is forgotten.
+   */
+  @Test
+  public void testUnsignedWebhookIsRejected() throws Exception {
+    GithubBlobShas.put("/owner/repo/main/maps/guide.ditamap", "s1");
+
+    assertEquals(HttpServletResponse.SC_UNAUTHORIZED,
+        post("push", "push.json", "X-Hub-Signature-256", "sha256=" + PUSH_SHA1.substring("sha1=".length())));
+    assertEquals(HttpServletResponse.SC_UNAUTHORIZED, post("push", "push.json", "X-Hub-Signature", PUSH_SHA256));
+
+    assertEquals("s1", GithubBlobShas.get("/owner/repo/main/maps/guide.ditamap"));
+  }
+
+  /**
+   * A push forgets the head commit of the branch, the shas of the files it changed and the missing paths.
+   */
+  @Test
+  public void testPushForgetsChangedFiles() throws Exception {
+    server.on("GET", COMMIT_PATH, 200, "0123456789abcdef0123456789abcdef01234567", "ETag", "\"head\"");
+    GithubRefResolver.resolve("owner", "repo", "main", null);
+    GithubBlobShas.put("/owner/repo/main/topics/install%20guide.dita", "s1");
+    GithubBlobShas.put("/owner/repo/main/maps/guide.ditamap", "s2");
+    GithubBlobShas.put("/owner/repo/main/topics/other.dita", "s3");
+    GithubBlobShas.put("/owner/repo/other/maps/guide.ditamap", "s4");
+    GithubMissingPaths.put("/owner/repo/main/topics/upgrade.dita", null);
+
+    assertEquals(HttpServletResponse.SC_NO_CONTENT, post("push", "push.json", "X-Hub-Signature-256", PUSH_SHA256));
+
+    assertNull(GithubBlobShas.get("/owner/repo/main/topics/install%20guide.dita"));
+    assertNull(GithubBlobShas.get("/owner/repo/main/maps/guide.ditamap"));
+    assertEquals("s3", GithubBlobShas.get("/owner/repo/main/topics/other.dita"));
+    assertEquals("s4", GithubBlobShas.get("/owner/repo/other/maps/guide.ditamap"));
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/main/topics/upgrade.dita", null));
+    GithubRefResolver.resolve("owner", "repo", "main", null);
+    assertEquals(2, server.getRequests("GET", COMMIT_PATH).size());
+  }
+
+  /**
+   * The creation of a branch forgets that its paths were missing.
+   */
+  @Test
+  public void testCreateForgetsBranch() throws Exception {
+    GithubMissingPaths.put("/owner/repo/feature%2Freview/topics/a.dita", null);
+    GithubMissingPaths.put("/owner/repo/main/topics/a.dita", null);
+
+    assertEquals(HttpServletResponse.SC_NO_CONTENT,
+        post("create", "create.json", "X-Hub-Signature-256", CREATE_SHA256));
+
+    assertFalse(GithubMissingPaths.isMissing("/owner/repo/feature%2Freview/topics/a.dita", null));
+    assertTrue(GithubMissingPaths.isMissing("/owner/repo/main/topics/a.dita", null));
+  }
+
+  /**
+   * The deletion of a branch forgets the shas of its files.
+   */
+  @Test
+  public void testDeleteForgetsBranch() throws Exception {
+    GithubBlobShas.put("/owner/repo/feature%2Freview/topics/a.dita", "s1");
+    GithubBlobShas.put("/owner/repo/main/topics/a.dita", "s2");
+
+    assertEquals(HttpServletResponse.SC_NO_CONTENT, post("delete", "delete.json", "X-Hub-Signature", DELETE_SHA1));
+
+    assertNull(GithubBlobShas.get("/owner/repo/feature%2Freview/topics/a.dita"));
+    assertEquals("s2", GithubBlobShas.get("/owner/repo/main/topics/a.dita"));
+  }
+
+  /**
+   * Posts a recorded payload to the servlet.
+   *
+   * @param event The name of the event.
+   * @param payload The name of the payload resource.
+   * @param signatureHeader The name of the signature header.
+   * @param signature The value of the signature header.
+   *
+   * @return The response status.
+   */
+  private static int post(String event, String payload, String signatureHeader, String signature) throws Exception {
+    final byte[] body = readPayload(payload);
+    final Map<String, String> headers = new HashMap<String, String>();
+    headers.put("X-GitHub-Event", event);
+    headers.put(signatureHeader, signature);
+    HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+        GithubWebhookServletTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getHeader".equals(method.getName())) {
+              return headers.get(args[0]);
+            } else if ("getInputStream".equals(method.getName())) {
+              final InputStream in = new ByteArrayInputStream(body);
+              return new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                  return in.read();
+                }
+              };
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    final int[] status = new int[1];
+    HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+        GithubWebhookServletTest.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("sendError".equals(method.getName()) || "setStatus".equals(method.getName())) {
+              status[0] = (Integer) args[0];
+              return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+
+    new GithubWebhookServlet().doPost(request, response);
+    return status[0];
+  }
+
+  /**
+   * @param name The name of a recorded payload.
+   *
+   * @return The payload.
+   */
+  private static byte[] readPayload(String name) throws IOException {
+    InputStream in = GithubWebhookServletTest.class.getResourceAsStream(name);
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link InMemoryTokenStore}.
+ */
+public class InMemoryTokenStoreTest {
+
+  /**
+   * The tokens are kept for each session until they are invalidated.
+   */
+  @Test
+  public void testTokensAreKeptPerSession() {
+    InMemoryTokenStore store = new InMemoryTokenStore();
+    store.put("session-a", "token-a");
+    store.put("session-b", "token-b");
+
+    assertEquals("token-a", store.getIfPresent("session-a"));
+    assertEquals("token-b", store.getIfPresent("session-b"));
+    assertNull(store.getIfPresent("session-c"));
+
+    store.invalidate("session-a");
+    assertNull(store.getIfPresent("session-a"));
+    assertEquals("token-b", store.getIfPresent("session-b"));
+
+    store.invalidateAll();
+    assertNull(store.getIfPresent("session-b"));
+  }
+
+  /**
+   * The tokens of the sessions which are not used are discarded.
+   */
+  @Test
+  public void testIdleTokensAreDiscarded() throws Exception {
+    InMemoryTokenStore store = new InMemoryTokenStore(10, 1, 1);
+    store.put("session-a", "token-a");
+
+    Thread.sleep(1100);
+
+    assertNull(store.getIfPresent("session-a"));
+  }
+}
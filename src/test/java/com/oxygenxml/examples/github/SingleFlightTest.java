@@ -0,0 +1,159 @@
+package com.oxygenxml.examples.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+  /**
+   * The number of concurrent callers.
+   */
+  private static final int CALLERS = 8;
+
+  /**
+   * The calls under test.
+   */
+  private SingleFlight<String, String> singleFlight;
+
+  /**
+   * The threads of the callers.
+   */
+  private ExecutorService callers;
+
+  /**
+   * Creates the calls under test.
+   */
+  @Before
+  public void setUp() {
+    singleFlight = new SingleFlight<String, String>();
+    callers = Executors.newFixedThreadPool(CALLERS);
+  }
+
+  /**
+   * Stops the callers.
+   */
+  @After
+  public void tearDown() {
+    callers.shutdownNow();
+  }
+
+  /**
+   * The concurrent calls with the same key are executed once and share the result.
+   */
+  @Test
+  public void testConcurrentCallsAreExecutedOnce() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch finishAllowed = new CountDownLatch(1);
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<String> call = new Callable<String>() {
+      public String call() throws InterruptedException {
+        executions.incrementAndGet();
+        started.countDown();
+        finishAllowed.await(10, TimeUnit.SECONDS);
+        return "result";
+      }
+    };
+
+    List<Future<String>> results = executeConcurrently("key", call, started);
+    finishAllowed.countDown();
+
+    for (Future<String> result : results) {
+      assertEquals("result", result.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, executions.get());
+  }
+
+  /**
+   * The exception of a call is thrown to all the callers which waited for it.
+   */
+  @Test
+  public void testFailureIsShared() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch finishAllowed = new CountDownLatch(1);
+    final IOException failure = new IOException("404 Not Found");
+    Callable<String> call = new Callable<String>() {
+      public String call() throws Exception {
+        started.countDown();
+        finishAllowed.await(10, TimeUnit.SECONDS);
+        throw failure;
+      }
+    };
+
+    List<Future<String>> results = executeConcurrently("key", call, started);
+    finishAllowed.countDown();
+
+    for (Future<String> result : results) {
+      try {
+        result.get(10, TimeUnit.SECONDS);
+        fail("The failure was not thrown");
+      } catch (ExecutionException e) {
+        assertSame(failure, e.getCause());
+      }
+    }
+  }
+
+  /**
+   * A call which ended is not shared with the later callers, and the calls with other keys are not shared.
+   */
+  @Test
+  public void testEndedCallsAreNotShared() throws Exception {
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<String> call = new Callable<String>() {
+      public String call() {
+        return "result" + executions.incrementAndGet();
+      }
+    };
+
+    assertEquals("result1", singleFlight.execute("key", call));
+    assertEquals("result2", singleFlight.execute("key", call));
+    assertEquals("result3", singleFlight.execute("other", call));
+  }
+
+  /**
+   * Executes a call from several threads, once the first one started it.
+   *
+   * @param key The key of the call.
+   * @param call The call.
+   * @param started Counted down when the call is executed.
+   *
+   * @return The results of the callers.
+   */
+  private List<Future<String>> executeConcurrently(final String key, final Callable<String> call,
+      CountDownLatch started) throws InterruptedException {
+    Callable<String> caller = new Callable<String>() {
+      public String call() throws IOException {
+        return singleFlight.execute(key, call);
+      }
+    };
+    List<Future<String>> results = new ArrayList<Future<String>>();
+    results.add(callers.submit(caller));
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    for (int i = 1; i < CALLERS; i++) {
+      results.add(callers.submit(caller));
+    }
+    // Lets the other callers join the call in progress.
+    Thread.sleep(200);
+    return results;
+  }
+}
@@ -244,6 +244,8 @@
 
       var that = this;
       var repoPath = '/repos/' + user + '/' + repo;
+      this.user = user;
+      this.name = repo;
 
       var currentTree = {
         'branch': null,
@@ -396,7 +396,7 @@
               });
             });
           } else {
-            self.startMergingCommit_(self.repo, ctx, latestFile.content, cb);
+            self.startMergingCommit_(self.repo, ctx, latestFile, cb);
           }
         } else {
           // If the file doesn't exist on the different branch we can just create it without merging anything
@@ -422,7 +422,7 @@
           } else {
             // Committing on a different branch is an action which the user has to confirm
             // Getting the head so we can show the user a diff, so he can make an informed decision
-            self.startMergingCommit_(self.repo, ctx, latestFile.content, cb, true);
+            self.startMergingCommit_(self.repo, ctx, latestFile, cb, true);
           }
         }
       });
@@ -433,20 +433,32 @@
    * Starts a commit, which merges with the latest content before it starts, defined by the given context
    * @param {Github.Repository} repo The repo to commit on
    * @param {{branch: string, message: string, content: string}} ctx The commit context
-   * @param {string} latestContent The latest contents of the opened file taken from github
+   * @param {{sha: string, content: string}} latestFile The latest version of the opened file taken from github
    * @param {function} cb The method to call on result
    * @param {boolean} differentBranch If true it means this commit is done on a branch different from the current
    * open documents branch.
+   * @param {boolean=} sendDocuments If true the ancestor and the latest version are sent to the server, instead of
+   * being referenced by their blob sha.
    * @private
    */
-  CommitAction.prototype.startMergingCommit_ = function (repo, ctx, latestContent, cb, differentBranch) {
+  CommitAction.prototype.startMergingCommit_ = function (repo, ctx, latestFile, cb, differentBranch, sendDocuments) {
     var self = this;
 
-    var mergingComponents = {
-      ancestor: initialDocument, // The current document in the state it was when we initially opened it
-      left: ctx.content, // Left is the current document with our changes
-      right: latestContent // Right is the latest version of the document from GitHub
-    };
+    var mergingComponents;
+    if (sendDocuments) {
+      mergingComponents = {
+        ancestor: initialDocument, // The current document in the state it was when we initially opened it
+        left: ctx.content, // Left is the current document with our changes
+        right: latestFile.content // Right is the latest version of the document from GitHub
+      };
+    } else {
+      // Only our changes are uploaded, the server reads the other versions from GitHub.
+      mergingComponents = {
+        ancestor: {owner: repo.user, repo: repo.name, sha: documentSha},
+        left: ctx.content,
+        right: {owner: repo.user, repo: repo.name, sha: latestFile.sha}
+      };
+    }
 
     var xhr = new XMLHttpRequest();
     xhr.onreadystatechange = function () {
@@ -477,6 +489,9 @@
             });
           });
         }
+      } else if (xhr.readyState == 4 && xhr.status == 404 && !sendDocuments) {
+        // The server could not read the referenced versions, so we send them.
+        self.startMergingCommit_(repo, ctx, latestFile, cb, differentBranch, true);
       } else if (xhr.readyState == 4 && xhr.status >= 100) {
         // If the merge failed, just commit without auto-merging and have the user choose what to do to solve the conflicts
         repo.createCommit(ctx.branch, self.filePath, ctx.content, ctx.message, function (err, commit) {
@@ -498,7 +513,7 @@
       }
     };
     xhr.open('POST', '../plugins-dispatcher/github-oauth/github/github_commit_merge');
-    xhr.send(JSON.stringify(mergingComponents));
+    sendJson(xhr, JSON.stringify(mergingComponents));
   };
 
   /**
@@ -1086,7 +1101,7 @@
           errorReporter.showError(COMMIT_STATUS_TITLE, msg, sync.api.Dialog.ButtonConfiguration.OK);
         });
       } else {
-        self.startMergingCommit_(repo, self.ctx, latestFile.content, function (err) {
+        self.startMergingCommit_(repo, self.ctx, latestFile, function (err) {
           self.handleErrors(err, repo);
         }, true);
       }
@@ -1740,6 +1755,25 @@
     xhrRequest.send();
   }
 
+  /**
+   * Sends a JSON request body, gzipped if the browser can compress it and the body is large enough.
+   * @param {XMLHttpRequest} xhr The opened request.
+   * @param {string} body The JSON request body.
+   */
+  function sendJson(xhr, body) {
+    if (body.length >= 1024 && window.CompressionStream && window.Response && Blob.prototype.stream) {
+      var gzippedBody = new Blob([body]).stream().pipeThrough(new CompressionStream('gzip'));
+      new Response(gzippedBody).blob().then(function (gzippedBlob) {
+        xhr.setRequestHeader('Content-Encoding', 'gzip');
+        xhr.send(gzippedBlob);
+      }, function () {
+        xhr.send(body);
+      });
+    } else {
+      xhr.send(body);
+    }
+  }
+
   /**
    * Returns an object representing the file location
    * @param {string} url The url of the file.